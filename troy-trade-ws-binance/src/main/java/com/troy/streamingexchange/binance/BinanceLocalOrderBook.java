@@ -0,0 +1,237 @@
+package com.troy.streamingexchange.binance;
+
+import com.troy.streamingexchange.binance.dto.DepthBinanceWebSocketTransaction;
+import com.troy.streamingexchange.binance.dto.marketdata.BinanceOrderbook;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
+import com.troy.trade.ws.orderbook.LocalOrderBook;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 币安本地盘口（增量深度 + REST快照）
+ * 按币安维护本地盘口的流程：
+ * 1、订阅 symbol@depth@100ms，未同步时收到的增量先缓存；
+ * 2、REST获取深度快照（limit=1000）；
+ * 3、丢弃 u <= lastUpdateId 的增量，应用的增量须满足 U <= 上一个u+1 <= u；
+ * 4、不满足（丢包、重连）时清空盘口，重新获取快照
+ * 快照在IO调度线程获取，增量在连接的IO线程应用，由this同步
+ */
+class BinanceLocalOrderBook {
+    private static final Logger LOG = LoggerFactory.getLogger(BinanceLocalOrderBook.class);
+
+    private static final String SNAPSHOT_URL = "https://api.binance.com/api/v3/depth?symbol=%s&limit=%d";
+    //快照档数，也是本地盘口保留的最大档数
+    private static final int MAX_DEPTH = 1000;
+    private static final int SNAPSHOT_TIMEOUT = 5000;
+    //快照失败后的重试间隔（毫秒）
+    private static final long SNAPSHOT_RETRY_INTERVAL = 3000L;
+    //等待快照期间最多缓存的增量数，超过时丢弃最早的（快照到达后会因缺口重新获取）
+    private static final int MAX_BUFFERED = 600;
+
+    private final String symbol;
+    private final Callable<BinanceOrderbook> snapshotLoader;
+    private final Scheduler scheduler;
+    private final LocalOrderBook book = new LocalOrderBook();
+    /**
+     * 等待快照期间缓存的增量
+     */
+    private final Deque<DepthBinanceWebSocketTransaction> buffer = new ArrayDeque<>();
+    /**
+     * 已应用的最后一个updateId
+     */
+    private long lastUpdateId;
+    private boolean synced;
+    private boolean snapshotting;
+    private long nextSnapshotTime;
+
+    /**
+     * 缺口（重新获取快照）次数
+     */
+    private final AtomicLong gaps = new AtomicLong();
+
+    /**
+     * @param symbol 交易对，如：BTCUSDT
+     */
+    BinanceLocalOrderBook(String symbol) {
+        this.symbol = symbol;
+        this.snapshotLoader = this::fetchSnapshot;
+        this.scheduler = Schedulers.io();
+    }
+
+    /**
+     * @param symbol 交易对，如：BTCUSDT
+     * @param snapshotLoader 快照获取
+     * @param scheduler 获取快照的调度器
+     */
+    BinanceLocalOrderBook(String symbol, Callable<BinanceOrderbook> snapshotLoader, Scheduler scheduler) {
+        this.symbol = symbol;
+        this.snapshotLoader = snapshotLoader;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 处理一条增量
+     * @param diff
+     * @return 盘口是否已同步（可推送）
+     */
+    synchronized boolean onDiff(DepthBinanceWebSocketTransaction diff) {
+        if (!synced) {
+            buffer.addLast(diff);
+            if (buffer.size() > MAX_BUFFERED) {
+                buffer.pollFirst();
+            }
+            requestSnapshot();
+            return false;
+        }
+        if (diff.getLastUpdateId() <= lastUpdateId) {
+            return false;
+        }
+        if (diff.getFirstUpdateId() > lastUpdateId + 1) {
+            LOG.warn("币安 盘口增量缺口，重新获取快照 symbol:{},lastUpdateId:{},U:{},累计次数:{}",
+                    symbol, lastUpdateId, diff.getFirstUpdateId(), gaps.incrementAndGet());
+            synced = false;
+            book.clear();
+            buffer.addLast(diff);
+            requestSnapshot();
+            return false;
+        }
+        try {
+            apply(diff);
+        } catch (ArithmeticException e) {
+            invalidate(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 前N档，最优价在前
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    synchronized OrderBook toOrderBook(int depth, CurrencyPair currencyPair) {
+        return book.toOrderBook(depth, currencyPair);
+    }
+
+    /**
+     * 前N档，前端盘口格式（带累计数量，卖盘 高->低），见{@link LocalOrderBook#toDepthOrderBook}
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    synchronized OrderBook toDepthOrderBook(int depth, CurrencyPair currencyPair) {
+        return book.toDepthOrderBook(depth, currencyPair);
+    }
+
+    long getGaps() {
+        return gaps.get();
+    }
+
+    private void requestSnapshot() {
+        if (snapshotting || System.currentTimeMillis() < nextSnapshotTime) {
+            return;
+        }
+        snapshotting = true;
+        Single.fromCallable(snapshotLoader)
+                .subscribeOn(scheduler)
+                .subscribe(this::onSnapshot, throwable -> {
+                    LOG.error("币安 获取盘口快照异常 symbol:{}", symbol, throwable);
+                    synchronized (this) {
+                        snapshotting = false;
+                        nextSnapshotTime = System.currentTimeMillis() + SNAPSHOT_RETRY_INTERVAL;
+                    }
+                });
+    }
+
+    private synchronized void onSnapshot(BinanceOrderbook snapshot) {
+        snapshotting = false;
+        while (!buffer.isEmpty() && buffer.peekFirst().getLastUpdateId() <= snapshot.lastUpdateId) {
+            buffer.pollFirst();
+        }
+        DepthBinanceWebSocketTransaction first = buffer.peekFirst();
+        if (first != null && first.getFirstUpdateId() > snapshot.lastUpdateId + 1) {//快照早于缓存的增量，稍后由下一条增量触发重新获取
+            LOG.info("币安 盘口快照过旧，重新获取 symbol:{},lastUpdateId:{},U:{}", symbol, snapshot.lastUpdateId, first.getFirstUpdateId());
+            nextSnapshotTime = System.currentTimeMillis() + SNAPSHOT_RETRY_INTERVAL;
+            return;
+        }
+        try {
+            book.clear();
+            snapshot.bids.forEach((price, size) -> book.update(OrderTypeEnum.BID, price, size));
+            snapshot.asks.forEach((price, size) -> book.update(OrderTypeEnum.ASK, price, size));
+            lastUpdateId = snapshot.lastUpdateId;
+            synced = true;
+            while (!buffer.isEmpty()) {
+                DepthBinanceWebSocketTransaction diff = buffer.pollFirst();
+                if (diff.getFirstUpdateId() > lastUpdateId + 1) {
+                    LOG.warn("币安 缓存增量不连续，重新获取快照 symbol:{},lastUpdateId:{},U:{}", symbol, lastUpdateId, diff.getFirstUpdateId());
+                    synced = false;
+                    book.clear();
+                    buffer.clear();
+                    requestSnapshot();
+                    return;
+                }
+                apply(diff);
+            }
+        } catch (ArithmeticException e) {
+            invalidate(e);
+            return;
+        }
+        LOG.info("币安 本地盘口同步完成 symbol:{},lastUpdateId:{}", symbol, lastUpdateId);
+    }
+
+    /**
+     * 数值无法与已有档位用同一定点小数位数精确表示（见{@link LocalOrderBook}）：不推送舍入后的盘口，
+     * 清空后隔一段时间重新获取快照
+     * @param e
+     */
+    private void invalidate(ArithmeticException e) {
+        LOG.error("币安 盘口数值无法用定点精确表示，重新获取快照 symbol:{},异常信息:{}", symbol, e.getMessage());
+        synced = false;
+        book.clear();
+        buffer.clear();
+        nextSnapshotTime = System.currentTimeMillis() + SNAPSHOT_RETRY_INTERVAL;
+    }
+
+    private void apply(DepthBinanceWebSocketTransaction diff) {
+        BinanceOrderbook orderbook = diff.getOrderBook();
+        for (Map.Entry<BigDecimal, BigDecimal> level : orderbook.bids.entrySet()) {
+            book.update(OrderTypeEnum.BID, level.getKey(), level.getValue());
+        }
+        for (Map.Entry<BigDecimal, BigDecimal> level : orderbook.asks.entrySet()) {
+            book.update(OrderTypeEnum.ASK, level.getKey(), level.getValue());
+        }
+        book.getBids().truncate(MAX_DEPTH);
+        book.getAsks().truncate(MAX_DEPTH);
+        book.setTimestamp(diff.getEventTime().getTime());
+        lastUpdateId = diff.getLastUpdateId();
+    }
+
+    private BinanceOrderbook fetchSnapshot() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(String.format(SNAPSHOT_URL, symbol, MAX_DEPTH)).openConnection();
+        connection.setConnectTimeout(SNAPSHOT_TIMEOUT);
+        connection.setReadTimeout(SNAPSHOT_TIMEOUT);
+        try (InputStream in = connection.getInputStream()) {
+            return StreamingObjectMapper.get().readValue(in, BinanceOrderbook.class);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
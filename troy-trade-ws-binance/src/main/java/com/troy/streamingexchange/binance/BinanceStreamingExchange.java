@@ -1,63 +1,44 @@
 package com.troy.streamingexchange.binance;
 
-import com.troy.trade.ws.dto.currency.CurrencyPair;
 import com.troy.trade.ws.streamingexchange.core.ProductSubscription;
 import com.troy.trade.ws.streamingexchange.core.StreamingExchange;
 import com.troy.trade.ws.streamingexchange.core.StreamingMarketDataService;
 import io.reactivex.Completable;
 
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
 public class BinanceStreamingExchange implements StreamingExchange {
-    private static final String API_BASE_URI = "wss://stream.binance.com:9443/";
+    private static final String API_URI = "wss://stream.binance.com:9443/stream";
+    //每个连接最多订阅的流数（币安上限1024），超过时新建连接
+    private static final int MAX_STREAMS_PER_CONNECTION = Integer.getInteger("troy.binance.maxStreamsPerConnection", 200);
 
-    private BinanceStreamingService streamingService;
+    private final BinanceStreamingServicePool servicePool = new BinanceStreamingServicePool(API_URI, MAX_STREAMS_PER_CONNECTION);
     private BinanceStreamingMarketDataService streamingMarketDataService;
 
     public BinanceStreamingExchange() { }
 
     @Override
     public void initServices() {
-
+        streamingMarketDataService = new BinanceStreamingMarketDataService(servicePool);
     }
 
     /**
-     * Binance streaming API expects connections to multiple channels to be defined at connection time. To define the channels for this
-     * connection pass a `ProductSubscription` in at connection time.
+     * 建立组合流连接，交易对的流在获取行情时按需订阅，无需在连接时指定
      *
-     * @param args A single `ProductSubscription` to define the subscriptions required to be available during this connection.
+     * @param args 忽略
      * @return
      */
     @Override
     public Completable connect(ProductSubscription... args) {
-        if (args == null || args.length == 0) {
-            throw new IllegalArgumentException("Subscriptions must be made at connection time");
-        }
-        if (streamingService != null) {
-            throw new UnsupportedOperationException("Exchange only handles a single connection - disconnect the current connection.");
-        }
-
-        ProductSubscription subscriptions = args[0];
-
-        streamingService = createStreamingService(subscriptions);
-        streamingMarketDataService = new BinanceStreamingMarketDataService(streamingService);
-        return streamingService.connect()
-                .doOnComplete(() -> streamingMarketDataService.openSubscriptions(subscriptions));
+        return servicePool.connect();
     }
 
     @Override
     public Completable disconnect() {
-        BinanceStreamingService service = streamingService;
-        streamingService = null;
-        streamingMarketDataService = null;
-        return service.disconnect();
+        return servicePool.disconnect();
     }
 
     @Override
     public boolean isAlive() {
-        return streamingService!= null && streamingService.isSocketOpen();
+        return servicePool.isAlive();
     }
 
     @Override
@@ -65,34 +46,7 @@ public class BinanceStreamingExchange implements StreamingExchange {
         return streamingMarketDataService;
     }
 
-    private BinanceStreamingService createStreamingService(ProductSubscription subscription) {
-        String path = API_BASE_URI + "stream?streams=" + buildSubscriptionStreams(subscription);
-        return new BinanceStreamingService(path, subscription);
-    }
-
-    public static String buildSubscriptionStreams(ProductSubscription subscription) {
-        String event = "depth20";
-        if(subscription.getIsRobot()){
-            event = "depth20";
-        }
-        return Stream.of(buildSubscriptionStrings(subscription.getTicker(), "ticker"),
-                buildSubscriptionStrings(subscription.getOrderBook(), event),
-                buildSubscriptionStrings(subscription.getTrades(), "trade"))
-                    .filter(s -> !s.isEmpty())
-                    .collect(Collectors.joining("/"));
-    }
-
-    private static String buildSubscriptionStrings(List<CurrencyPair> currencyPairs, String subscriptionType) {
-        return subscriptionStrings(currencyPairs).map( s -> s + "@" + subscriptionType).collect(Collectors.joining("/"));
-    }
-
-    private static Stream<String> subscriptionStrings(List<CurrencyPair> currencyPairs) {
-        return currencyPairs.stream()
-                .map(pair -> String.join("", pair.toString().split("/")).toLowerCase());
-    }
-
     @Override
-    public void useCompressedMessages(boolean compressedMessages) { streamingService.useCompressedMessages(compressedMessages); }
+    public void useCompressedMessages(boolean compressedMessages) { servicePool.useCompressedMessages(compressedMessages); }
 
 }
-
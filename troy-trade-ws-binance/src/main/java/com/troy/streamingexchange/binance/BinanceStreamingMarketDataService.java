@@ -1,27 +1,22 @@
 package com.troy.streamingexchange.binance;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.Lists;
 import com.troy.streamingexchange.binance.dto.*;
-import com.troy.streamingexchange.binance.dto.marketdata.BinanceOrderbook;
 import com.troy.streamingexchange.binance.dto.marketdata.BinanceTicker24h;
 import com.troy.trade.ws.dto.*;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
-import com.troy.trade.ws.enums.OrderTypeEnum;
 import com.troy.trade.ws.exceptions.ExchangeException;
-import com.troy.trade.ws.streamingexchange.core.ProductSubscription;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import com.troy.trade.ws.streamingexchange.core.StreamingMarketDataService;
 import io.reactivex.Observable;
-import io.reactivex.functions.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.troy.streamingexchange.binance.dto.BaseBinanceWebSocketTransaction.BinanceWebSocketTypes.*;
 
@@ -33,77 +28,37 @@ public class BinanceStreamingMarketDataService implements StreamingMarketDataSer
      */
     private final static int MAX_DEPTH_SIZE = 30;
 
-    private final BinanceStreamingService service;
-    private final Map<CurrencyPair, OrderBook> orderbooks = new HashMap<>();
+    /**
+     * 盘口增量深度流
+     */
+    static final String DEPTH_STREAM = "depth@100ms";
 
-    private final Map<CurrencyPair, Observable<BinanceTicker24h>> tickerSubscriptions = new HashMap<>();
-    private final Map<CurrencyPair, Observable<OrderBook>> orderbookSubscriptions = new HashMap<>();
-    private final Map<CurrencyPair, Observable<BinanceRawTrade>> tradeSubscriptions = new HashMap<>();
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final BinanceStreamingServicePool servicePool;
 
+    /**
+     * 各交易对的共享被观察者，首个订阅者订阅时向交易所订阅流，最后一个订阅者退出时退订
+     */
+    private final Map<CurrencyPair, Observable<BinanceTicker24h>> tickerSubscriptions = new ConcurrentHashMap<>();
+    private final Map<CurrencyPair, Observable<OrderBook>> orderbookSubscriptions = new ConcurrentHashMap<>();
+    private final Map<CurrencyPair, Observable<BinanceRawTrade>> tradeSubscriptions = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = StreamingObjectMapper.get();
 
-    public BinanceStreamingMarketDataService(BinanceStreamingService service) {
-        this.service = service;
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    BinanceStreamingMarketDataService(BinanceStreamingServicePool servicePool) {
+        this.servicePool = servicePool;
     }
 
     @Override
     public Observable<OrderBook> getOrderBook(CurrencyPair currencyPair, Object... args) {
-        if (!service.getProductSubscription().getOrderBook().contains(currencyPair)) {
-            throw new UnsupportedOperationException("Binance exchange only supports up front subscriptions - subscribe at connect time");
-        }
-        Observable<OrderBook> orderBookbservable = orderbookSubscriptions.get(currencyPair);
-
-        return orderBookbservable.map(orderBook -> {
-            OrderBook orderBookNew = adaptOrderBook(orderBook, currencyPair);
-            return orderBookNew;
-        });
-    }
-
-    private OrderBook adaptOrderBook(OrderBook orderBook, CurrencyPair currencyPair) {
-        List<LimitOrder> asks = new ArrayList<>();
-        List<LimitOrder> bids = new ArrayList<>();
-        int i = 0;
-        //卖盘原始返回 价格:低-高
-        BigDecimal askCumulativeAmount = BigDecimal.ZERO;
-        for (LimitOrder item : orderBook.getAsks()) {
-            i++;
-            askCumulativeAmount = item.getOriginalAmount().add(askCumulativeAmount);
-            LimitOrder limitOrder = new LimitOrder(OrderTypeEnum.ASK, item.getOriginalAmount(), askCumulativeAmount, currencyPair, String.valueOf(i), null, item.getLimitPrice());
-            asks.add(limitOrder);
-        }
-        if (orderBook.getAsks().size() > MAX_DEPTH_SIZE) {
-            asks = asks.subList(0, MAX_DEPTH_SIZE);
-        }
-        //适应前端显示（卖盘高-低）
-        Collections.reverse(asks);
-        int j = 0;
-        //买盘原始返回 价格:高-低
-        BigDecimal bidCumulativeAmount = BigDecimal.ZERO;
-        for (LimitOrder item : orderBook.getBids()) {
-            j++;
-            bidCumulativeAmount = item.getOriginalAmount().add(bidCumulativeAmount);
-            LimitOrder limitOrder = new LimitOrder(OrderTypeEnum.BID, item.getOriginalAmount(), bidCumulativeAmount, currencyPair, String.valueOf(j), null, item.getLimitPrice());
-            bids.add(limitOrder);
-        }
-        if (orderBook.getBids().size() > MAX_DEPTH_SIZE) {
-            bids = bids.subList(0, MAX_DEPTH_SIZE);
-        }
-        return new OrderBook(new Date(), asks, bids);
+        return orderbookSubscriptions.computeIfAbsent(currencyPair, this::orderBookStream);
     }
 
     public Observable<BinanceTicker24h> getRawTicker(CurrencyPair currencyPair, Object... args) {
-        if (!service.getProductSubscription().getTicker().contains(currencyPair)) {
-            throw new UnsupportedOperationException("Binance exchange only supports up front subscriptions - subscribe at connect time");
-        }
-        return tickerSubscriptions.get(currencyPair);
+        return tickerSubscriptions.computeIfAbsent(currencyPair, this::rawTickerStream);
     }
 
     public Observable<BinanceRawTrade> getRawTrades(CurrencyPair currencyPair, Object... args) {
-        if (!service.getProductSubscription().getTrades().contains(currencyPair)) {
-            throw new UnsupportedOperationException("Binance exchange only supports up front subscriptions - subscribe at connect time");
-        }
-        return tradeSubscriptions.get(currencyPair);
+        return tradeSubscriptions.computeIfAbsent(currencyPair, this::rawTradeStream);
     }
 
     @Override
@@ -141,194 +96,74 @@ public class BinanceStreamingMarketDataService implements StreamingMarketDataSer
     }
 
     /**
-     * Registers subsriptions with the streaming service for the given products.
-     * <p>
-     * As we receive messages as soon as the connection is open, we need to register subscribers to handle these before the
-     * first messages arrive.
+     * 订阅交易对的流：分配所在连接并发送SUBSCRIBE，取消订阅时发送UNSUBSCRIBE并释放
      */
-    public void openSubscriptions(ProductSubscription productSubscription) {
-        productSubscription.getTicker()
-                .forEach(currencyPair ->
-                        tickerSubscriptions.put(currencyPair, triggerObservableBody(rawTickerStream(currencyPair).share())));
-        if(productSubscription.getIsRobot()){
-            productSubscription.getOrderBook()
-                    .forEach(currencyPair ->
-                            orderbookSubscriptions.put(currencyPair, triggerObservableBody(orderBookStream20(currencyPair).share())));
-        }else{
-            productSubscription.getOrderBook()
-                    .forEach(currencyPair ->
-                            orderbookSubscriptions.put(currencyPair, triggerObservableBody(orderBookStream20100ms(currencyPair).share())));
-        }
-        productSubscription.getTrades()
-                .forEach(currencyPair ->
-                        tradeSubscriptions.put(currencyPair, triggerObservableBody(rawTradeStream(currencyPair).share())));
+    private Observable<JsonNode> subscribeStream(CurrencyPair currencyPair, String subscriptionType) {
+        String stream = channelFromCurrency(currencyPair, subscriptionType);
+        return Observable.defer(() -> servicePool.acquire(stream).subscribeChannel(stream))
+                .doFinally(() -> servicePool.release(stream));
     }
 
     private Observable<BinanceTicker24h> rawTickerStream(CurrencyPair currencyPair) {
-        return service.subscribeChannel(channelFromCurrency(currencyPair, "ticker"))
-                .map((JsonNode s) -> tickerTransaction(s.toString()))
+        return subscribeStream(currencyPair, "ticker")
+                .map((JsonNode s) -> tickerTransaction(s))
                 .filter(transaction ->
                         transaction.getData().getCurrencyPair().equals(currencyPair) &&
                                 transaction.getData().getEventType() == TICKER_24_HR)
-                .map(transaction -> transaction.getData().getTicker());
-    }
-
-    private Observable<OrderBook> orderBookStream20100ms(CurrencyPair currencyPair) {
-        return service.subscribeChannel(channelFromCurrency(currencyPair, "depth20"))
-                .map((JsonNode s) -> depth20Transaction(s.toString()))
-                .map(transaction -> {
-                    PartialDepthBinanceWebSocketTransaction depth = transaction.getData();
-
-                    OrderBook currentOrderBook = new OrderBook(null, new ArrayList<>(), new ArrayList<>());
-                    orderbooks.put(currencyPair,currentOrderBook);
-
-                    BinanceOrderbook ob = depth.getOrderBook();
-                    ob.bids.forEach((key, value) -> currentOrderBook.update(new OrderBookUpdate(
-                            OrderTypeEnum.BID,
-                            null,
-                            currencyPair,
-                            key,
-                            null,
-                            value)));
-                    ob.asks.forEach((key, value) -> currentOrderBook.update(new OrderBookUpdate(
-                            OrderTypeEnum.ASK,
-                            null,
-                            currencyPair,
-                            key,
-                            null,
-                            value)));
-                    return currentOrderBook;
-                });
+                .map(transaction -> transaction.getData().getTicker())
+                .share();
     }
 
+    /**
+     * 增量深度维护的本地盘口，每次更新推送前{@link #MAX_DEPTH_SIZE}档（前端盘口格式），见{@link BinanceLocalOrderBook}
+     * 每次重新订阅流时新建本地盘口
+     */
     private Observable<OrderBook> orderBookStream(CurrencyPair currencyPair) {
-        return service.subscribeChannel(channelFromCurrency(currencyPair, "depth"))
-                .map((JsonNode s) -> depthTransaction(s.toString()))
-                .filter(transaction ->
-                        transaction.getData().getCurrencyPair().equals(currencyPair) &&
-                                transaction.getData().getEventType() == DEPTH_UPDATE)
-                .map(transaction -> {
-                    DepthBinanceWebSocketTransaction depth = transaction.getData();
-
-//                    OrderBook currentOrderBook = orderbooks.computeIfAbsent(currencyPair, orderBook ->
-//                            new OrderBook(null, new ArrayList<>(), new ArrayList<>()));
-
-                    BinanceOrderbook ob = depth.getOrderBook();
-                    List<LimitOrder> asksList = Lists.newArrayList();
-                    List<LimitOrder> bidsList = Lists.newArrayList();
-                    ob.bids.forEach((key, value) -> bidsList.add(new LimitOrder(
-                            OrderTypeEnum.BID,
-                            value,
-                            currencyPair,
-                            null,
-                            depth.getEventTime(),
-                            key
-                    )));
-                    ob.asks.forEach((key, value) -> asksList.add(new LimitOrder(
-                            OrderTypeEnum.ASK,
-                            value,
-                            currencyPair,
-                            null,
-                            depth.getEventTime(),
-                            key)));
-                    OrderBook orderBook = new OrderBook(new Date(),asksList,bidsList);
-//                    ob.bids.forEach((key, value) -> currentOrderBook.update(new OrderBookUpdate(
-//                            OrderType.BID,
-//                            value,
-//                            currencyPair,
-//                            key,
-//                            depth.getEventTime(),
-//                            value)));
-//                    ob.asks.forEach((key, value) -> currentOrderBook.update(new OrderBookUpdate(
-//                            OrderType.ASK,
-//                            value,
-//                            currencyPair,
-//                            key,
-//                            depth.getEventTime(),
-//                            value)));
-                    return orderBook;
-                });
-    }
-
-    private Observable<OrderBook> orderBookStream20(CurrencyPair currencyPair) {
-        return service.subscribeChannel(channelFromCurrency(currencyPair, "depth20"))
-                .map((JsonNode s) -> depth20Transaction(s.toString()))
-                .map(transaction -> {
-                    PartialDepthBinanceWebSocketTransaction depth = transaction.getData();
-
-                    OrderBook currentOrderBook = new OrderBook(null, new ArrayList<>(), new ArrayList<>());
-                    orderbooks.put(currencyPair,currentOrderBook);
-
-                    BinanceOrderbook ob = depth.getOrderBook();
-                    ob.bids.forEach((key, value) -> currentOrderBook.update(new OrderBookUpdate(
-                            OrderTypeEnum.BID,
-                            null,
-                            currencyPair,
-                            key,
-                            null,
-                            value)));
-                    ob.asks.forEach((key, value) -> currentOrderBook.update(new OrderBookUpdate(
-                            OrderTypeEnum.ASK,
-                            null,
-                            currencyPair,
-                            key,
-                            null,
-                            value)));
-                    return currentOrderBook;
-                });
+        String symbol = String.join("", currencyPair.toString().split("/")).toUpperCase();
+        return Observable.defer(() -> {
+            BinanceLocalOrderBook localOrderBook = new BinanceLocalOrderBook(symbol);
+            return subscribeStream(currencyPair, DEPTH_STREAM)
+                    .map((JsonNode s) -> depthTransaction(s))
+                    .filter(transaction ->
+                            transaction.getData().getCurrencyPair().equals(currencyPair) &&
+                                    transaction.getData().getEventType() == DEPTH_UPDATE &&
+                                    localOrderBook.onDiff(transaction.getData()))
+                    .map(transaction -> localOrderBook.toDepthOrderBook(MAX_DEPTH_SIZE, currencyPair));
+        }).share();
     }
 
     private Observable<BinanceRawTrade> rawTradeStream(CurrencyPair currencyPair) {
-        return service.subscribeChannel(channelFromCurrency(currencyPair, "trade"))
-                .map((JsonNode s) -> tradeTransaction(s.toString()))
+        return subscribeStream(currencyPair, "trade")
+                .map((JsonNode s) -> tradeTransaction(s))
                 .filter(transaction ->
                         transaction.getData().getCurrencyPair().equals(currencyPair) &&
                                 transaction.getData().getEventType() == TRADE
                 )
-                .map(transaction -> transaction.getData().getRawTrade());
-    }
-
-    /**
-     * Force observable to execute its body, this way we get `BinanceStreamingService` to register the observables emitter
-     * ready for our message arrivals.
-     */
-    private <T> Observable<T> triggerObservableBody(Observable<T> observable) {
-        Consumer<T> NOOP = whatever -> {
-        };
-        observable.subscribe(NOOP);
-        return observable;
+                .map(transaction -> transaction.getData().getRawTrade())
+                .share();
     }
 
-    private BinanceWebsocketTransaction<TickerBinanceWebsocketTransaction> tickerTransaction(String s) {
+    private BinanceWebsocketTransaction<TickerBinanceWebsocketTransaction> tickerTransaction(JsonNode s) {
         try {
-            return mapper.readValue(s, new TypeReference<BinanceWebsocketTransaction<TickerBinanceWebsocketTransaction>>() {
+            return mapper.readValue(mapper.treeAsTokens(s), new TypeReference<BinanceWebsocketTransaction<TickerBinanceWebsocketTransaction>>() {
             });
         } catch (IOException e) {
             throw new ExchangeException("Unable to parse ticker transaction", e);
         }
     }
 
-    private BinanceWebsocketTransaction<DepthBinanceWebSocketTransaction> depthTransaction(String s) {
-        try {
-            return mapper.readValue(s, new TypeReference<BinanceWebsocketTransaction<DepthBinanceWebSocketTransaction>>() {
-            });
-        } catch (IOException e) {
-            throw new ExchangeException("Unable to parse order book transaction", e);
-        }
-    }
-
-    private BinanceWebsocketTransaction<PartialDepthBinanceWebSocketTransaction> depth20Transaction(String s) {
+    private BinanceWebsocketTransaction<DepthBinanceWebSocketTransaction> depthTransaction(JsonNode s) {
         try {
-            return mapper.readValue(s, new TypeReference<BinanceWebsocketTransaction<PartialDepthBinanceWebSocketTransaction>>() {
+            return mapper.readValue(mapper.treeAsTokens(s), new TypeReference<BinanceWebsocketTransaction<DepthBinanceWebSocketTransaction>>() {
             });
         } catch (IOException e) {
             throw new ExchangeException("Unable to parse order book transaction", e);
         }
     }
 
-    private BinanceWebsocketTransaction<TradeBinanceWebsocketTransaction> tradeTransaction(String s) {
+    private BinanceWebsocketTransaction<TradeBinanceWebsocketTransaction> tradeTransaction(JsonNode s) {
         try {
-            return mapper.readValue(s, new TypeReference<BinanceWebsocketTransaction<TradeBinanceWebsocketTransaction>>() {
+            return mapper.readValue(mapper.treeAsTokens(s), new TypeReference<BinanceWebsocketTransaction<TradeBinanceWebsocketTransaction>>() {
             });
         } catch (IOException e) {
             throw new ExchangeException("Unable to parse trade transaction", e);
@@ -1,33 +1,64 @@
 package com.troy.streamingexchange.binance;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.troy.streamingexchange.binance.dto.BinanceSubscriptionMessage;
 import com.troy.trade.ws.netty.JsonNettyStreamingService;
-import com.troy.trade.ws.streamingexchange.core.ProductSubscription;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
+import io.reactivex.Completable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 币安组合流连接（/stream），通过SUBSCRIBE/UNSUBSCRIBE请求按需订阅、退订流
+ */
 public class BinanceStreamingService extends JsonNettyStreamingService {
     private static final Logger LOG = LoggerFactory.getLogger(BinanceStreamingService.class);
 
-    private ProductSubscription productSubscription;
+    //币安每个连接每秒最多接收5条消息，超过会断开连接，请求之间的最小间隔（毫秒）
+    private static final long REQUEST_INTERVAL = 250L;
+    //一次请求最多的流数
+    private static final int MAX_STREAMS_PER_REQUEST = 50;
 
-    public BinanceStreamingService(String baseUri, ProductSubscription productSubscription) {
-        super(baseUri, Integer.MAX_VALUE);
-        this.productSubscription = productSubscription;
-    }
+    private final ObjectMapper mapper = StreamingObjectMapper.get();
+    private final AtomicLong requestId = new AtomicLong();
+    /**
+     * 待发送的订阅/退订请求，按{@link #REQUEST_INTERVAL}间隔发送，排队期间相邻的同类请求合并
+     */
+    private final Deque<BinanceSubscriptionMessage> pendingRequests = new ArrayDeque<>();
+    private boolean sending;
 
-    @Override
-    public void messageHandler(String message) {
-        super.messageHandler(message);
+    public BinanceStreamingService(String baseUri) {
+        super(baseUri, Integer.MAX_VALUE);
     }
 
     @Override
     protected void handleMessage(JsonNode message) {
+        if (!message.has("stream")) {//订阅、退订请求的应答
+            handleResponse(message);
+            return;
+        }
         super.handleMessage(message);
     }
 
+    private void handleResponse(JsonNode message) {
+        JsonNode error = message.get("error");
+        if (error != null) {
+            LOG.warn("币安 订阅请求失败 id:{},error:{}", message.path("id").asText(), error);
+        } else {
+            LOG.debug("币安 订阅请求成功 id:{}", message.path("id").asText());
+        }
+    }
+
     @Override
     protected String getChannelNameFromMessage(JsonNode message) throws IOException {
         return message.get("stream").asText();
@@ -35,28 +66,89 @@ public class BinanceStreamingService extends JsonNettyStreamingService {
 
     @Override
     public String getSubscribeMessage(String channelName, Object... args) throws IOException {
-        // No op. Disconnecting from the web socket will cancel subscriptions.
-        return null;
+        return request(BinanceSubscriptionMessage.SUBSCRIBE, Collections.singletonList(channelName));
     }
 
     @Override
     public String getUnsubscribeMessage(String channelName) throws IOException {
-        // No op. Disconnecting from the web socket will cancel subscriptions.
-        return null;
+        return request(BinanceSubscriptionMessage.UNSUBSCRIBE, Collections.singletonList(channelName));
     }
 
     @Override
-    public void sendMessage(String message) {
-        // Subscriptions are made upon connection - no messages are sent.
+    public String getBatchSubscribeMessage(List<String> channelNames, List<Object[]> args) throws IOException {
+        return request(BinanceSubscriptionMessage.SUBSCRIBE, channelNames);
+    }
+
+    @Override
+    protected int getResubscribeBatchSize() {
+        return MAX_STREAMS_PER_REQUEST;
+    }
+
+    @Override
+    protected long getResubscribeInterval() {
+        return REQUEST_INTERVAL;
+    }
+
+    /**
+     * 盘口频道持续有推送，长时间静默视为失效，由看门狗退订后重新订阅
+     */
+    @Override
+    protected long getChannelStaleTimeout(String channelName) {
+        return channelName.contains("@depth") ? DEPTH_STALE_TIMEOUT : 0L;
     }
 
     /**
-     * The available subscriptions for this streaming service.
-     * @return The subscriptions for the currently open connection.
+     * 订阅、退订请求排队发送，见{@link #pendingRequests}
      */
-    public ProductSubscription getProductSubscription() {
-        return productSubscription;
+    @Override
+    public void sendMessage(String message) {
+        if (message == null) {
+            return;
+        }
+        BinanceSubscriptionMessage request;
+        try {
+            request = mapper.readValue(message, BinanceSubscriptionMessage.class);
+        } catch (IOException e) {
+            super.sendMessage(message);
+            return;
+        }
+        synchronized (pendingRequests) {
+            BinanceSubscriptionMessage last = pendingRequests.peekLast();
+            if (last != null && last.getMethod().equals(request.getMethod())
+                    && last.getParams().size() + request.getParams().size() <= MAX_STREAMS_PER_REQUEST) {
+                List<String> params = new ArrayList<>(last.getParams());
+                params.addAll(request.getParams());
+                pendingRequests.pollLast();
+                pendingRequests.addLast(new BinanceSubscriptionMessage(last.getMethod(), params, last.getId()));
+            } else {
+                pendingRequests.addLast(request);
+            }
+            if (sending) {
+                return;
+            }
+            sending = true;
+        }
+        sendNext();
     }
 
+    private void sendNext() {
+        BinanceSubscriptionMessage request;
+        synchronized (pendingRequests) {
+            request = pendingRequests.pollFirst();
+            if (request == null) {
+                sending = false;
+                return;
+            }
+        }
+        try {
+            super.sendMessage(mapper.writeValueAsString(request));
+        } catch (IOException e) {
+            LOG.error("币安 订阅请求序列化异常 method:{},params:{}", request.getMethod(), request.getParams(), e);
+        }
+        Completable.timer(REQUEST_INTERVAL, TimeUnit.MILLISECONDS).subscribe(this::sendNext);
+    }
 
+    private String request(String method, List<String> streams) throws IOException {
+        return mapper.writeValueAsString(new BinanceSubscriptionMessage(method, streams, requestId.incrementAndGet()));
+    }
 }
@@ -0,0 +1,193 @@
+package com.troy.streamingexchange.binance;
+
+import io.reactivex.Completable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 币安组合流连接组
+ * 每个连接最多订阅maxStreams个流，新订阅的流分配到第一个未满的连接，全部已满时新建连接；
+ * 非首个连接上的流全部退订后断开该连接
+ */
+class BinanceStreamingServicePool {
+    private static final Logger LOG = LoggerFactory.getLogger(BinanceStreamingServicePool.class);
+
+    /**
+     * 新建连接的超时（毫秒）
+     */
+    private static final long CONNECT_TIMEOUT = 10000L;
+
+    private final String uri;
+    private final int maxStreams;
+    /**
+     * <连接,连接上订阅的流>，按建立顺序
+     */
+    private final Map<BinanceStreamingService, Set<String>> services = new LinkedHashMap<>();
+    /**
+     * <流,所在连接>
+     */
+    private final Map<String, BinanceStreamingService> streams = new HashMap<>();
+    private boolean compressedMessages = true;
+    /**
+     * 连接组断开的次数，锁外新建的连接建立后据此判断连接组是否已断开
+     */
+    private long generation;
+
+    /**
+     * @param uri 组合流地址
+     * @param maxStreams 每个连接最多订阅的流数
+     */
+    BinanceStreamingServicePool(String uri, int maxStreams) {
+        this.uri = uri;
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * 建立首个连接
+     */
+    synchronized Completable connect() {
+        if (!services.isEmpty()) {
+            return Completable.complete();
+        }
+        return newService().connect();
+    }
+
+    /**
+     * 分配流所在的连接，已满时新建连接（阻塞至连接建立，最多{@link #CONNECT_TIMEOUT}毫秒）
+     * 新建连接在锁外进行，建立成功后才加入连接组，期间其他流的分配、释放不受影响
+     * @param stream 流名称，如：btcusdt@trade
+     * @return
+     */
+    BinanceStreamingService acquire(String stream) {
+        BinanceStreamingService service;
+        long expectedGeneration;
+        synchronized (this) {
+            service = assign(stream);
+            if (service != null) {
+                return service;
+            }
+            expectedGeneration = generation;
+            service = createService();
+            LOG.info("币安 连接已满，新建连接 连接数:{},流:{}", services.size(), stream);
+        }
+        boolean connected;
+        try {
+            connected = service.connect().blockingAwait(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            close(service);
+            throw e;
+        }
+        if (!connected) {
+            close(service);
+            throw new IllegalStateException("币安 新建连接超时 流:" + stream);
+        }
+        synchronized (this) {
+            if (generation != expectedGeneration) {//连接期间整个连接组已断开
+                close(service);
+                throw new IllegalStateException("币安 连接组已断开 流:" + stream);
+            }
+            BinanceStreamingService assigned = assign(stream);
+            if (assigned != null) {//连接期间其他连接已有空位（流已退订或并发新建的连接）
+                close(service);
+                return assigned;
+            }
+            services.put(service, new HashSet<>());
+            services.get(service).add(stream);
+            streams.put(stream, service);
+            return service;
+        }
+    }
+
+    /**
+     * 释放流，非首个连接上已无流时断开该连接
+     * @param stream 流名称
+     */
+    synchronized void release(String stream) {
+        BinanceStreamingService service = streams.remove(stream);
+        if (service == null) {
+            return;
+        }
+        Set<String> serviceStreams = services.get(service);
+        serviceStreams.remove(stream);
+        if (serviceStreams.isEmpty() && services.keySet().iterator().next() != service) {
+            services.remove(service);
+            LOG.info("币安 连接已无订阅，断开连接 剩余连接数:{}", services.size());
+            service.disconnect().subscribe(() -> { },
+                    throwable -> LOG.error("币安 断开空闲连接异常", throwable));
+        }
+    }
+
+    synchronized Completable disconnect() {
+        generation++;
+        List<Completable> disconnects = new ArrayList<>(services.size());
+        for (BinanceStreamingService service : services.keySet()) {
+            disconnects.add(service.disconnect());
+        }
+        services.clear();
+        streams.clear();
+        return Completable.merge(disconnects);
+    }
+
+    synchronized boolean isAlive() {
+        if (services.isEmpty()) {
+            return false;
+        }
+        for (BinanceStreamingService service : services.keySet()) {
+            if (!service.isSocketOpen()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized void useCompressedMessages(boolean compressedMessages) {
+        this.compressedMessages = compressedMessages;
+        services.keySet().forEach(service -> service.useCompressedMessages(compressedMessages));
+    }
+
+    /**
+     * 将流分配到已订阅该流或未满的连接
+     * @param stream
+     * @return 全部已满时返回null
+     */
+    private BinanceStreamingService assign(String stream) {
+        BinanceStreamingService service = streams.get(stream);
+        if (service != null) {
+            return service;
+        }
+        for (Map.Entry<BinanceStreamingService, Set<String>> entry : services.entrySet()) {
+            if (entry.getValue().size() < maxStreams) {
+                entry.getValue().add(stream);
+                streams.put(stream, entry.getKey());
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private BinanceStreamingService newService() {
+        BinanceStreamingService service = createService();
+        services.put(service, new HashSet<>());
+        return service;
+    }
+
+    private BinanceStreamingService createService() {
+        BinanceStreamingService service = new BinanceStreamingService(uri);
+        service.useCompressedMessages(compressedMessages);
+        return service;
+    }
+
+    private static void close(BinanceStreamingService service) {
+        service.disconnect().subscribe(() -> { },
+                throwable -> LOG.error("币安 断开未使用的连接异常", throwable));
+    }
+}
@@ -0,0 +1,37 @@
+package com.troy.streamingexchange.binance.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * 组合流订阅/退订请求，如：{"method":"SUBSCRIBE","params":["btcusdt@trade"],"id":1}
+ */
+public class BinanceSubscriptionMessage {
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    public static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+
+    private final String method;
+    private final List<String> params;
+    private final long id;
+
+    public BinanceSubscriptionMessage(@JsonProperty("method") String method,
+                                      @JsonProperty("params") List<String> params,
+                                      @JsonProperty("id") long id) {
+        this.method = method;
+        this.params = params;
+        this.id = id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public List<String> getParams() {
+        return params;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
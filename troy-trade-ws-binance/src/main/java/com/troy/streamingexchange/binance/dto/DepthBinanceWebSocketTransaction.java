@@ -7,20 +7,34 @@ import java.util.List;
 
 public class DepthBinanceWebSocketTransaction extends ProductBinanceWebSocketTransaction {
 
+    /**
+     * 本次增量的第一个updateId（U），最后一个为{@link BinanceOrderbook#lastUpdateId}（u）
+     */
+    private final long firstUpdateId;
     private final BinanceOrderbook orderBook;
 
     public DepthBinanceWebSocketTransaction(
             @JsonProperty("e") String eventType,
             @JsonProperty("E") String eventTime,
             @JsonProperty("s") String symbol,
+            @JsonProperty("U") long firstUpdateId,
             @JsonProperty("u") long lastUpdateId,
             @JsonProperty("b") List<Object[]> _bids,
             @JsonProperty("a") List<Object[]> _asks
     ) {
         super(eventType, eventTime, symbol);
+        this.firstUpdateId = firstUpdateId;
         orderBook = new BinanceOrderbook(lastUpdateId, _bids, _asks);
     }
 
+    public long getFirstUpdateId() {
+        return firstUpdateId;
+    }
+
+    public long getLastUpdateId() {
+        return orderBook.lastUpdateId;
+    }
+
     public BinanceOrderbook getOrderBook() {
         return orderBook;
     }
@@ -0,0 +1,113 @@
+package com.troy.streamingexchange.binance;
+
+import com.troy.streamingexchange.binance.dto.DepthBinanceWebSocketTransaction;
+import com.troy.streamingexchange.binance.dto.marketdata.BinanceOrderbook;
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import io.reactivex.schedulers.Schedulers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinanceLocalOrderBookTest {
+
+    private static final CurrencyPair PAIR = new CurrencyPair("BTC", "USDT");
+
+    private final Deque<BinanceOrderbook> snapshots = new ArrayDeque<>();
+    private BinanceLocalOrderBook book;
+
+    @Before
+    public void setup() {
+        //快照同步返回，便于按顺序断言
+        book = new BinanceLocalOrderBook("BTCUSDT", snapshots::poll, Schedulers.trampoline());
+    }
+
+    @Test
+    public void bufferedDiffsAreAppliedOnTopOfSnapshot() {
+        snapshots.add(snapshot(100, level("10", "1"), level("11", "1")));
+
+        assertFalse(book.onDiff(diff(95, 99, level("10", "5"), level("11", "5"))));
+        assertTrue(book.onDiff(diff(100, 102, level("9.5", "2"), level("11", "0"))));
+
+        OrderBook orderBook = book.toOrderBook(10, PAIR);
+        assertLevels(orderBook.getBids(), "10", "1", "9.5", "2");
+        assertEquals(0, orderBook.getAsks().size());
+    }
+
+    @Test
+    public void staleDiffIsIgnored() {
+        snapshots.add(snapshot(100, level("10", "1"), level("11", "1")));
+        book.onDiff(diff(90, 95, level("10", "3"), level("11", "3")));
+
+        assertFalse(book.onDiff(diff(96, 100, level("10", "4"), level("11", "4"))));
+        assertLevels(book.toOrderBook(10, PAIR).getBids(), "10", "1");
+    }
+
+    @Test
+    public void gapTriggersResync() {
+        snapshots.add(snapshot(100, level("10", "1"), level("11", "1")));
+        book.onDiff(diff(90, 95, level("10", "3"), level("11", "3")));
+        assertTrue(book.onDiff(diff(101, 101, level("10", "2"), level("11", "2"))));
+
+        snapshots.add(snapshot(109, level("8", "1"), level("12", "1")));
+        assertFalse(book.onDiff(diff(110, 111, level("8", "7"), level("12", "7"))));
+        assertEquals(1, book.getGaps());
+
+        OrderBook orderBook = book.toOrderBook(10, PAIR);
+        assertLevels(orderBook.getBids(), "8", "7");
+        assertLevels(orderBook.getAsks(), "12", "7");
+        assertTrue(book.onDiff(diff(112, 112, level("8", "6"), level("12", "6"))));
+    }
+
+    @Test
+    public void depthOrderBookHasCumulativeAmountsAndAsksWorstFirst() {
+        snapshots.add(new BinanceOrderbook(100,
+                Arrays.asList(level("10", "1"), level("9", "2"), level("8", "3")),
+                Arrays.asList(level("11", "1.5"), level("12", "2.5"), level("13", "3"))));
+        book.onDiff(diff(101, 101, level("10", "1"), level("11", "1.5")));
+
+        OrderBook orderBook = book.toDepthOrderBook(2, PAIR);
+        List<LimitOrder> asks = orderBook.getAsks();
+        assertLevels(asks, "12", "2.5", "11", "1.5");
+        assertEquals(0, new BigDecimal("4").compareTo(asks.get(0).getCumulativeAmount()));
+        assertEquals(0, new BigDecimal("1.5").compareTo(asks.get(1).getCumulativeAmount()));
+        assertEquals("1", asks.get(1).getId());
+        List<LimitOrder> bids = orderBook.getBids();
+        assertLevels(bids, "10", "1", "9", "2");
+        assertEquals(0, new BigDecimal("3").compareTo(bids.get(1).getCumulativeAmount()));
+        assertEquals("2", bids.get(1).getId());
+    }
+
+    private static Object[] level(String price, String size) {
+        return new Object[]{price, size};
+    }
+
+    private static BinanceOrderbook snapshot(long lastUpdateId, Object[] bid, Object[] ask) {
+        return new BinanceOrderbook(lastUpdateId, Collections.singletonList(bid), Collections.singletonList(ask));
+    }
+
+    private static DepthBinanceWebSocketTransaction diff(long firstUpdateId, long lastUpdateId, Object[] bid, Object[] ask) {
+        return new DepthBinanceWebSocketTransaction("depthUpdate", "1499404630606", "BTCUSDT", firstUpdateId, lastUpdateId,
+                Collections.singletonList(bid), Collections.singletonList(ask));
+    }
+
+    private static void assertLevels(List<LimitOrder> orders, String... levels) {
+        assertEquals(levels.length / 2, orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            LimitOrder order = orders.get(i);
+            assertEquals(Arrays.toString(levels), 0, new BigDecimal(levels[i * 2]).compareTo(order.getLimitPrice()));
+            assertEquals(Arrays.toString(levels), 0, new BigDecimal(levels[i * 2 + 1]).compareTo(order.getOriginalAmount()));
+        }
+    }
+}
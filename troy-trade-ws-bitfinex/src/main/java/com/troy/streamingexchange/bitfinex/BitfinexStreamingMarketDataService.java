@@ -1,7 +1,6 @@
 package com.troy.streamingexchange.bitfinex;
 
 import com.alibaba.fastjson.JSONObject;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.troy.streamingexchange.bitfinex.dto.*;
@@ -10,6 +9,7 @@ import com.troy.trade.ws.dto.Ticker;
 import com.troy.trade.ws.dto.Trade;
 import com.troy.trade.ws.dto.Trades;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import com.troy.trade.ws.streamingexchange.core.StreamingMarketDataService;
 import io.reactivex.Observable;
 import org.slf4j.Logger;
@@ -19,56 +19,174 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BitfinexStreamingMarketDataService implements StreamingMarketDataService {
     private static final Logger LOG = LoggerFactory.getLogger(BitfinexStreamingMarketDataService.class);
 
+    //聚合盘口默认精度
+    private static final String PRECISION = "P0";
+    //校验和消息 [chanId, "cs", checksum]
+    private static final String CHECKSUM = "cs";
+    /**
+     * 同一频道连续校验失败的最大重新订阅次数，超过后不再重新订阅，避免本地算法与交易所不一致时无限重订阅，
+     * 由系统属性troy.bitfinex.checksum.maxResubscribes控制，默认3
+     */
+    private static final int MAX_CHECKSUM_RESUBSCRIBES = Integer.getInteger("troy.bitfinex.checksum.maxResubscribes", 3);
+
     private final BitfinexStreamingService service;
 
     private Map<CurrencyPair, BitfinexOrderbook> orderbooks = new HashMap<>();
+    private Map<CurrencyPair, BitfinexRawOrderbook> rawOrderbooks = new HashMap<>();
+
+    /**
+     * 盘口校验和不一致次数
+     */
+    private final AtomicLong checksumMismatches = new AtomicLong();
+    /**
+     * 各频道连续校验失败次数<channelId,次数>，校验一致后清零
+     */
+    private final Map<String, Integer> consecutiveMismatches = new HashMap<>();
 
     public BitfinexStreamingMarketDataService(BitfinexStreamingService service) {
         this.service = service;
     }
 
+    /**
+     * 盘口
+     * @param currencyPair
+     * @param args [档数（默认100）, 是否机器人模式（默认false）, 精度（默认P0，R0为原始盘口，见{@link #getRawOrderBook}）]
+     * @return 机器人模式每次推送前N档，否则首次推送全量、之后推送变化的一档
+     */
     @Override
     public Observable<OrderBook> getOrderBook(CurrencyPair currencyPair, Object... args) {
 
         String channelName = "book";
         final String depth = args.length > 0 ? args[0].toString() : "100";
         final boolean isRobot = args.length >= 2 ? Boolean.valueOf(args[1].toString()) : false;
+        final String precision = args.length >= 3 ? args[2].toString() : PRECISION;
+        if (BitfinexStreamingService.RAW_PRECISION.equals(precision)) {
+            return getRawOrderBook(currencyPair, depth);
+        }
+        final int depthSize = Integer.parseInt(depth);
         String pair = currencyPair.baseSymbol + currencyPair.counterSymbol;
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-        Observable<BitfinexWebSocketOrderbookTransaction> subscribedChannel = service.subscribeChannel(channelName,
-                new Object[]{pair, "P0", "F0", depth})
-                .map(s -> {
-                    if (s.get(1).get(0).isArray()) return mapper.readValue(s.toString(),
-                            BitfinexWebSocketSnapshotOrderbook.class);
-                    else return mapper.readValue(s.toString(), BitfinexWebSocketUpdateOrderbook.class);
+        final String channelId = service.getSubscriptionUniqueId(channelName, pair, precision);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
+
+        return service.subscribeChannel(channelName, new Object[]{pair, precision, "F0", depth})
+                .flatMap(s -> {
+                    BitfinexOrderbook orderbook = orderbooks.get(currencyPair);
+                    if (isChecksum(s)) {
+                        if (orderbook != null && orderbook.isSynced()
+                                && !verifyChecksum(channelId, orderbook.checksum(), s.get(2).asInt())) {
+                            orderbook.setSynced(false);
+                        }
+                        return Observable.<OrderBook>empty();
+                    }
+                    try {
+                        if (s.get(1).get(0).isArray()) {
+                            BitfinexOrderbook snapshot = mapper.treeToValue(s, BitfinexWebSocketSnapshotOrderbook.class)
+                                    .toBitfinexOrderBook(orderbook, isRobot);
+                            orderbooks.put(currencyPair, snapshot);
+                            if (orderbook != null && !isRobot) {//重新同步，推送相对旧盘口的变化
+                                return Observable.just(BitfinexAdapters.adaptOrderBook(snapshot.diff(orderbook, depthSize, currencyPair)));
+                            }
+                            return Observable.just(BitfinexAdapters.adaptOrderBook(snapshot.toOrderBook(depthSize, currencyPair)));
+                        }
+                        if (orderbook == null || !orderbook.isSynced()) {//等待全量
+                            return Observable.<OrderBook>empty();
+                        }
+                        mapper.treeToValue(s, BitfinexWebSocketUpdateOrderbook.class).toBitfinexOrderBook(orderbook, isRobot);
+                        return Observable.just(BitfinexAdapters.adaptOrderBook(orderbook.toOrderBook(depthSize, currencyPair)));
+                    } catch (ArithmeticException e) {//数值无法用定点精确表示，不推送舍入后的盘口，重新订阅
+                        LOG.error("Bitfinex 盘口数值无法用定点精确表示，重新订阅 channel:{},异常信息:{}", channelId, e.getMessage());
+                        if (orderbook != null) {
+                            orderbook.setSynced(false);
+                        }
+                        service.resubscribeChannel(channelId);
+                        return Observable.<OrderBook>empty();
+                    }
                 });
+    }
 
-        return subscribedChannel
-                .map(s -> {
-                    BitfinexOrderbook bitfinexOrderbook = s.toBitfinexOrderBook(orderbooks.getOrDefault(currencyPair,
-                            null),isRobot);
-                    orderbooks.put(currencyPair, bitfinexOrderbook);
-                    return BitfinexAdapters.adaptOrderBook(BitfinexAdapters.adaptOrderBook(bitfinexOrderbook.toBitfinexDepth(), currencyPair));
+    /**
+     * 原始盘口（R0，逐笔委托），供做市机器人使用，不做价格聚合，每次推送前N笔委托
+     * @param currencyPair
+     * @param depth 订阅的委托笔数（每侧）
+     * @return
+     */
+    public Observable<OrderBook> getRawOrderBook(CurrencyPair currencyPair, String depth) {
+        String channelName = "book";
+        final int depthSize = Integer.parseInt(depth);
+        String pair = currencyPair.baseSymbol + currencyPair.counterSymbol;
+        final String channelId = service.getSubscriptionUniqueId(channelName, pair, BitfinexStreamingService.RAW_PRECISION);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
+
+        return service.subscribeChannel(channelName, new Object[]{pair, BitfinexStreamingService.RAW_PRECISION, depth})
+                .flatMap(s -> {
+                    BitfinexRawOrderbook orderbook = rawOrderbooks.get(currencyPair);
+                    if (isChecksum(s)) {
+                        if (orderbook != null && orderbook.isSynced()
+                                && !verifyChecksum(channelId, orderbook.checksum(), s.get(2).asInt())) {
+                            orderbook.setSynced(false);
+                        }
+                        return Observable.<OrderBook>empty();
+                    }
+                    BitfinexWebSocketRawOrderbookTransaction transaction = s.get(1).get(0).isArray()
+                            ? mapper.treeToValue(s, BitfinexWebSocketSnapshotRawOrderbook.class)
+                            : mapper.treeToValue(s, BitfinexWebSocketUpdateRawOrderbook.class);
+                    if (transaction instanceof BitfinexWebSocketUpdateRawOrderbook && (orderbook == null || !orderbook.isSynced())) {
+                        return Observable.<OrderBook>empty();
+                    }
+                    orderbook = transaction.toBitfinexRawOrderbook(orderbook);
+                    rawOrderbooks.put(currencyPair, orderbook);
+                    return Observable.just(BitfinexAdapters.adaptOrderBook(orderbook.toOrderBook(depthSize, currencyPair)));
                 });
     }
 
+    public long getChecksumMismatches() {
+        return checksumMismatches.get();
+    }
+
+    private static boolean isChecksum(JsonNode message) {
+        return CHECKSUM.equals(message.get(1).asText());
+    }
+
+    /**
+     * 校验本地盘口，不一致时重新订阅（退订后订阅，交易所重新推送全量）；
+     * 连续{@link #MAX_CHECKSUM_RESUBSCRIBES}次重新订阅后仍不一致时不再重新订阅，保留本地盘口
+     * @return 是否一致，不再重新订阅时为true
+     */
+    private boolean verifyChecksum(String channelId, int localChecksum, int checksum) {
+        if (localChecksum == checksum) {
+            consecutiveMismatches.remove(channelId);
+            return true;
+        }
+        long total = checksumMismatches.incrementAndGet();
+        int mismatches = consecutiveMismatches.merge(channelId, 1, Integer::sum);
+        if (mismatches > MAX_CHECKSUM_RESUBSCRIBES) {
+            if (mismatches == MAX_CHECKSUM_RESUBSCRIBES + 1) {
+                LOG.error("Bitfinex 盘口校验和连续{}次重新订阅后仍不一致，不再重新订阅 channel:{},本地:{},交易所:{}",
+                        MAX_CHECKSUM_RESUBSCRIBES, channelId, localChecksum, checksum);
+            }
+            return true;
+        }
+        LOG.warn("Bitfinex 盘口校验和不一致，重新订阅 channel:{},本地:{},交易所:{},累计次数:{}",
+                channelId, localChecksum, checksum, total);
+        service.resubscribeChannel(channelId);
+        return false;
+    }
+
     @Override
     public Observable<Ticker> getTicker(CurrencyPair currencyPair, Object... args) {
         String channelName = "ticker";
 
         String pair = currencyPair.baseSymbol + currencyPair.counterSymbol;
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<BitfinexWebSocketTickerTransaction> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
-                .map(s -> mapper.readValue(s.toString(), BitfinexWebSocketTickerTransaction.class));
+                .map(s -> mapper.treeToValue(s, BitfinexWebSocketTickerTransaction.class));
 
         return subscribedChannel
                 .map(s -> BitfinexAdapters.adaptTicker(s.toBitfinexTicker(), currencyPair));
@@ -80,16 +198,15 @@ public class BitfinexStreamingMarketDataService implements StreamingMarketDataSe
         final String tradeType = args.length > 0 ? args[0].toString() : "te";
 
         String pair = currencyPair.baseSymbol + currencyPair.counterSymbol;
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<BitfinexWebSocketTradesTransaction> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
                 .filter(s -> s.get(1).asText().equals(tradeType))
                 .map(s -> {
                     if (s.get(1).asText().equals("te") || s.get(1).asText().equals("tu")) {
-                        return mapper.readValue(s.toString(), BitfinexWebsocketUpdateTrade.class);
-                    } else return mapper.readValue(s.toString(), BitfinexWebSocketSnapshotTrades.class);
+                        return mapper.treeToValue(s, BitfinexWebsocketUpdateTrade.class);
+                    } else return mapper.treeToValue(s, BitfinexWebSocketSnapshotTrades.class);
                 });
 
         return subscribedChannel
@@ -6,6 +6,7 @@ import com.troy.streamingexchange.bitfinex.dto.BitfinexWebSocketSubscriptionMess
 import com.troy.streamingexchange.bitfinex.dto.BitfinexWebSocketUnSubscriptionMessage;
 import com.troy.trade.ws.exceptions.ExchangeException;
 import com.troy.trade.ws.netty.JsonNettyStreamingService;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,9 +26,25 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
     private static final String CHANNEL_ID = "chanId";
     private static final String SUBSCRIBED = "subscribed";
     private static final String UNSUBSCRIBED = "unsubscribed";
+    private static final String CONF = "conf";
 
     private static final int SUBSCRIPTION_FAILED = 10300;
 
+    //心跳，应答为{"event":"pong"}，在事件处理中忽略
+    private static final String PING = "{\"event\":\"ping\"}";
+
+    /**
+     * 盘口校验和（OB_CHECKSUM），开启后盘口频道推送 [chanId, "cs", checksum]，
+     * 由系统属性troy.bitfinex.checksum控制，默认开启
+     */
+    private static final int OB_CHECKSUM = 131072;
+    private static final boolean CHECKSUM_ENABLED = Boolean.parseBoolean(System.getProperty("troy.bitfinex.checksum", "true"));
+
+    /**
+     * 原始盘口（逐笔委托）精度
+     */
+    static final String RAW_PRECISION = "R0";
+
     private final Map<String, String> subscribedChannels = new HashMap<>();
 
     public BitfinexStreamingService(String apiUrl) {
@@ -39,20 +56,13 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
         return null;
     }
 
+    /**
+     * 消息不是批量数组，整条消息直接处理
+     *
+     * @param jsonNode
+     */
     @Override
-    public void messageHandler(String message) {
-        LOG.debug("Received message: {}", message);
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode;
-
-        // Parse incoming message to JSON
-        try {
-            jsonNode = objectMapper.readTree(message);
-        } catch (IOException e) {
-            LOG.error("Error parsing incoming message to JSON: {}", message);
-            return;
-        }
-
+    protected void handleJsonMessage(JsonNode jsonNode) {
         handleMessage(jsonNode);
     }
 
@@ -60,7 +70,8 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
     protected void handleMessage(JsonNode message) {
         if (message.isArray()) {
             String type = message.get(1).asText();
-            if (type.equals("hb")) {
+            if (type.equals("hb")) {//频道心跳，频道仍有效
+                touchChannel(getChannel(message));
                 return;
             }
         }
@@ -75,10 +86,11 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
             } else if (event.textValue().equals(SUBSCRIBED)) {
                 String channel = message.get("channel").asText();
                 String pair = message.get("pair").asText();
+                String prec = message.path("prec").asText();
                 String channelId = message.get(CHANNEL_ID).asText();
                 try {
-                    //book-BTCUSD
-                    String subscriptionUniqueId = getSubscriptionUniqueId(channel, pair);
+                    //book-BTCUSD，原始盘口book-BTCUSD-R0
+                    String subscriptionUniqueId = getSubscriptionUniqueId(channel, pair, prec);
                     subscribedChannels.put(channelId, subscriptionUniqueId);
                     LOG.debug("Register channel {}: {}", subscriptionUniqueId, channelId);
                 } catch (Exception e) {
@@ -87,6 +99,8 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
             } else if (event.textValue().equals(UNSUBSCRIBED)) {
                 String channelId = message.get(CHANNEL_ID).asText();
                 subscribedChannels.remove(channelId);
+            } else if (event.textValue().equals(CONF)) {
+                LOG.info("Bitfinex 连接配置 status:{},flags:{}", message.path("status").asText(), message.path("flags").asInt());
             } else if (event.textValue().equals(ERROR)) {
                 if (message.get("code").asInt() == SUBSCRIPTION_FAILED) {
                     LOG.error("Error with message: " + message.get("msg"));
@@ -97,8 +111,37 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
         } else super.handleMessage(message);
     }
 
+    /**
+     * 每次连接后开启盘口校验和，配置对整个连接生效，须在订阅前发送
+     */
+    @Override
+    protected void onConnected() {
+        if (CHECKSUM_ENABLED) {
+            sendMessage("{\"event\":\"conf\",\"flags\":" + OB_CHECKSUM + "}");
+        }
+    }
+
+    @Override
+    protected String getPingMessage() {
+        return PING;
+    }
+
+    /**
+     * 盘口频道有推送或心跳（hb），长时间静默视为失效
+     */
+    @Override
+    protected long getChannelStaleTimeout(String channelName) {
+        return "book".equals(channelName) ? DEPTH_STALE_TIMEOUT : 0L;
+    }
+
+    /**
+     * 频道名-交易对，原始盘口再加 -R0，与聚合盘口区分
+     */
     @Override
     public String getSubscriptionUniqueId(String channelName, Object... args) {
+        if (args.length > 1 && RAW_PRECISION.equals(args[1])) {
+            return channelName + "-" + args[0].toString() + "-" + RAW_PRECISION;
+        }
         return channelName + "-" + args[0].toString();
     }
 
@@ -134,7 +177,7 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
         }
         if (subscribeMessage == null) throw new IOException("SubscribeMessage: Insufficient arguments");
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(subscribeMessage);
     }
 
@@ -152,7 +195,7 @@ public class BitfinexStreamingService extends JsonNettyStreamingService {
 
         BitfinexWebSocketUnSubscriptionMessage subscribeMessage =
                 new BitfinexWebSocketUnSubscriptionMessage(channelId);
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(subscribeMessage);
     }
 }
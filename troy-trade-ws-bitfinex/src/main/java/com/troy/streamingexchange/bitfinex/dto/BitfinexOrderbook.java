@@ -2,139 +2,230 @@ package com.troy.streamingexchange.bitfinex.dto;
 
 import com.troy.streamingexchange.bitfinex.dto.marketdata.BitfinexDepth;
 import com.troy.streamingexchange.bitfinex.dto.marketdata.BitfinexLevel;
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+import com.troy.trade.ws.orderbook.BookSide;
+import com.troy.trade.ws.orderbook.Decimals;
+import com.troy.trade.ws.orderbook.LocalOrderBook;
 
-import java.io.Serializable;
 import java.math.BigDecimal;
-import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
 
 import static java.math.BigDecimal.ZERO;
 
-public class BitfinexOrderbook implements Serializable {
+/**
+ * 本地盘口
+ * 档位为 [价格, 订单数, 数量]，卖盘数量为负，订单数为0表示删除该价格；
+ * 两侧保存在按价格有序的{@link BookSide}中，增删改为二分查找，读取前N档按档位序号访问，不复制整个盘口
+ */
+public class BitfinexOrderbook {
+    //校验和计算的档数
+    private static final int CHECKSUM_DEPTH = 25;
 
+    private final LocalOrderBook book = new LocalOrderBook();
     /**
-     * @Fields serialVersionUID TODO（描述变量的含义）
+     * 交易所推送的原始档位<价格,档位>，计算校验和时按原始数值拼接，与交易所的字符串一致
      */
-    private static final long serialVersionUID = 1229870442710833570L;
+    private final Map<BigDecimal, BitfinexOrderbookLevel> askLevels = new TreeMap<>();
+    private final Map<BigDecimal, BitfinexOrderbookLevel> bidLevels = new TreeMap<>();
 
-    private Map<BigDecimal, BitfinexOrderbookLevel> asks;
-    private Map<BigDecimal, BitfinexOrderbookLevel> bids;
+    /**
+     * 是否与交易所一致：收到全量后为true，校验失败后为false，直到重新订阅收到全量
+     */
+    private boolean synced = true;
+
+    /**
+     * 最近一次{@link #pushLevel}的档位（非机器人模式只推送变化的一档），{@link #updateLevel}后清空
+     */
+    private BitfinexOrderbookLevel increment;
 
     public BitfinexOrderbook(BitfinexOrderbookLevel[] levels) {
         createFromLevels(levels);
     }
 
     private void createFromLevels(BitfinexOrderbookLevel[] levels) {
-        this.asks = new HashMap<>(levels.length / 2);
-        this.bids = new HashMap<>(levels.length / 2);
-
         for (BitfinexOrderbookLevel level : levels) {
-
-            if(level.getCount().compareTo(ZERO) == 0)
+            if (level.getCount().compareTo(ZERO) == 0) {
                 continue;
-
-            if (level.getAmount().compareTo(ZERO) > 0)
-                bids.put(level.getPrice(), level);
-            else
-                asks.put(level.getPrice(),
-                        new BitfinexOrderbookLevel(
-                        level.getPrice(),
-                        level.getCount(),
-                        level.getAmount().abs()
-                ));
+            }
+            apply(level);
         }
     }
 
-    public BitfinexDepth toBitfinexDepth() {
-        SortedMap<BigDecimal, BitfinexOrderbookLevel> bitfinexLevelAsks = new TreeMap<>();
-        SortedMap<BigDecimal, BitfinexOrderbookLevel> bitfinexLevelBids = new TreeMap<>(java.util.Collections.reverseOrder());
-
-        for (Map.Entry<BigDecimal, BitfinexOrderbookLevel> level : asks.entrySet()) {
-            bitfinexLevelAsks.put(level.getValue().getPrice(), level.getValue());
-        }
+    /**
+     * 更新一档（机器人模式，推送全量）
+     * @param level
+     */
+    public void updateLevel(BitfinexOrderbookLevel level) {
+        apply(level);
+        increment = null;
+    }
 
-        for (Map.Entry<BigDecimal, BitfinexOrderbookLevel> level : bids.entrySet()) {
-            bitfinexLevelBids.put(level.getValue().getPrice(), level.getValue());
-        }
+    /**
+     * 更新一档并记为增量（非机器人模式，只推送变化的一档）
+     * @param level
+     */
+    public void pushLevel(BitfinexOrderbookLevel level) {
+        apply(level);
+        increment = level;
+    }
 
-        List<BitfinexLevel> askLevels = new ArrayList<>(asks.size());
-        List<BitfinexLevel> bidLevels = new ArrayList<>(bids.size());
-        for (Map.Entry<BigDecimal, BitfinexOrderbookLevel> level : bitfinexLevelAsks.entrySet()) {
-            askLevels.add(level.getValue().toBitfinexLevel());
-        }
-        for (Map.Entry<BigDecimal, BitfinexOrderbookLevel> level : bitfinexLevelBids.entrySet()) {
-            bidLevels.add(level.getValue().toBitfinexLevel());
+    private void apply(BitfinexOrderbookLevel level) {
+        OrderTypeEnum side = level.getAmount().compareTo(ZERO) < 0 ? OrderTypeEnum.ASK : OrderTypeEnum.BID;
+        BigDecimal amount = level.getCount().compareTo(ZERO) == 0 ? ZERO : level.getAmount().abs();
+        book.update(side, level.getPrice(), amount);
+        Map<BigDecimal, BitfinexOrderbookLevel> levels = side == OrderTypeEnum.ASK ? askLevels : bidLevels;
+        if (amount.signum() == 0) {
+            levels.remove(level.getPrice());
+        } else {
+            levels.put(level.getPrice(), level);
         }
-
-        return new BitfinexDepth(askLevels.toArray(new BitfinexLevel[askLevels.size()]),
-                bidLevels.toArray(new BitfinexLevel[bidLevels.size()]));
     }
 
-    public void updateLevel(BitfinexOrderbookLevel level) {
+    public LocalOrderBook getBook() {
+        return book;
+    }
 
+    public boolean isSynced() {
+        return synced;
+    }
 
-        Map<BigDecimal, BitfinexOrderbookLevel> side;
+    public void setSynced(boolean synced) {
+        this.synced = synced;
+    }
 
-        // Determine side and normalize negative ask amount values
-        BitfinexOrderbookLevel bidAskLevel = level;
-        if(level.getAmount().compareTo(ZERO) < 0) {
-            side = asks;
-            bidAskLevel = new BitfinexOrderbookLevel(
-                    level.getPrice(),
-                    level.getCount(),
-                    level.getAmount().abs()
-            );
-        } else {
-            side = bids;
+    /**
+     * 校验和：前25档按 买1价:买1量:卖1价:-卖1量:... 拼接（一侧不足25档时只拼另一侧），取CRC32的有符号32位值
+     * 价格、数量取交易所推送的原始数值，不经过定点换算，格式见{@link #checksumString}
+     * @return
+     */
+    public int checksum() {
+        BookSide bids = book.getBids();
+        BookSide asks = book.getAsks();
+        StringBuilder sb = new StringBuilder(CHECKSUM_DEPTH * 40);
+        for (int i = 0; i < CHECKSUM_DEPTH; i++) {
+            if (i < bids.depth()) {
+                appendLevel(sb, bidLevels.get(book.price(OrderTypeEnum.BID, i)));
+            }
+            if (i < asks.depth()) {
+                appendLevel(sb, askLevels.get(book.price(OrderTypeEnum.ASK, i)));
+            }
+        }
+        CRC32 crc32 = new CRC32();
+        if (sb.length() > 0) {
+            crc32.update(sb.substring(0, sb.length() - 1).getBytes(StandardCharsets.UTF_8));
         }
+        return (int) crc32.getValue();
+    }
 
-        boolean shouldDelete = bidAskLevel.getCount().compareTo(ZERO) == 0;
+    private static void appendLevel(StringBuilder sb, BitfinexOrderbookLevel level) {
+        sb.append(checksumString(level.getPrice())).append(':').append(checksumString(level.getAmount())).append(':');
+    }
 
-        side.remove(bidAskLevel.getPrice());
-        if (!shouldDelete) {
-            side.put(bidAskLevel.getPrice(), bidAskLevel);
+    /**
+     * 校验和中的数值格式，与交易所（JavaScript Number#toString）一致：
+     * 去掉末尾的0，绝对值小于1e-6或不小于1e21时为科学计数法，如 1e-7、-1.5e-7、1e+21，其余为普通小数
+     * @param value
+     * @return
+     */
+    static String checksumString(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        if (stripped.signum() == 0) {
+            return "0";
         }
+        int exponent = stripped.precision() - stripped.scale() - 1;
+        if (exponent >= -6 && exponent < 21) {
+            return stripped.toPlainString();
+        }
+        String digits = stripped.unscaledValue().abs().toString();
+        StringBuilder sb = new StringBuilder(digits.length() + 6);
+        if (stripped.signum() < 0) {
+            sb.append('-');
+        }
+        sb.append(digits.charAt(0));
+        if (digits.length() > 1) {
+            sb.append('.').append(digits, 1, digits.length());
+        }
+        return sb.append('e').append(exponent < 0 ? '-' : '+').append(Math.abs(exponent)).toString();
     }
 
-    public void pushLevel(BitfinexOrderbookLevel level) {
-
-        // Determine side and normalize negative ask amount values
-        bids = new HashMap<>();
-        asks = new HashMap<>();
+    /**
+     * 重新同步后相对旧盘口的变化（非机器人模式推送）：当前前N档，加上旧盘口有而当前没有的价格（数量为0）
+     * @param previous 校验失败前的盘口
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    public OrderBook diff(BitfinexOrderbook previous, int depth, CurrencyPair currencyPair) {
+        OrderBook current = book.toOrderBook(depth, currencyPair);
+        return new OrderBook(null, withRemoved(previous, OrderTypeEnum.ASK, current.getAsks(), currencyPair),
+                withRemoved(previous, OrderTypeEnum.BID, current.getBids(), currencyPair));
+    }
 
-        //when count > 0 then you have to add or update the price level
-        //when count = 0 then you have to delete the price level.
+    private List<LimitOrder> withRemoved(BitfinexOrderbook previous, OrderTypeEnum side, List<LimitOrder> current,
+                                         CurrencyPair currencyPair) {
+        BookSide previousSide = previous.book.getSide(side);
+        BookSide currentSide = book.getSide(side);
+        List<LimitOrder> orders = new ArrayList<>(current);
+        boolean sameScale = previous.book.getPriceScale() == book.getPriceScale();
+        for (int i = 0; i < previousSide.depth(); i++) {
+            boolean removed = sameScale ? currentSide.levelOf(previousSide.price(i)) < 0
+                    : !contains(currentSide, previous.book.price(side, i));
+            if (removed) {
+                orders.add(new LimitOrder(side, ZERO, currencyPair, "", null, previous.book.price(side, i)));
+            }
+        }
+        return orders;
+    }
 
-        BigDecimal amount = level.getAmount().doubleValue() != -1 ?
-                level.getAmount().abs() : level.getAmount();
-        if(level.getCount().compareTo(BigDecimal.ZERO)==0){
-            amount = BigDecimal.ZERO;
+    /**
+     * 两份盘口小数位数不同时（见{@link LocalOrderBook#rescale}）按实际价格查找
+     */
+    private boolean contains(BookSide side, BigDecimal price) {
+        try {
+            return side.levelOf(Decimals.toScaled(price, book.getPriceScale())) >= 0;
+        } catch (ArithmeticException e) {//当前位数无法表示，一定不在当前盘口中
+            return false;
         }
-        BitfinexOrderbookLevel bidAskLevel = new BitfinexOrderbookLevel(
-                level.getPrice(),
-                level.getCount(),
-                amount
-        );
-        String type = null;
-        if(level.getCount().compareTo(ZERO) > 0){
-            if(level.getAmount().compareTo(ZERO) < 0) {
-                type = "asks";
-
-            } else if(level.getAmount().compareTo(ZERO) > 0){
-                type = "bids";
-            }
+    }
 
-        }else if(level.getCount().compareTo(ZERO) == 0){
-            if(level.getAmount().compareTo(ZERO) == 1) {
-                type = "bids";
-            } else if(level.getAmount().compareTo(ZERO) == -1){
-                type = "asks";
-            }
+    /**
+     * 前N档，卖盘、买盘均为最优价在前；最近一次为{@link #pushLevel}时只含变化的一档（删除时数量为0）
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    public OrderBook toOrderBook(int depth, CurrencyPair currencyPair) {
+        if (increment == null) {
+            return book.toOrderBook(depth, currencyPair);
         }
+        OrderTypeEnum side = increment.getAmount().compareTo(ZERO) < 0 ? OrderTypeEnum.ASK : OrderTypeEnum.BID;
+        BigDecimal amount = increment.getCount().compareTo(ZERO) == 0 ? ZERO : increment.getAmount().abs();
+        List<LimitOrder> level = Collections.singletonList(
+                new LimitOrder(side, amount, currencyPair, "", null, increment.getPrice()));
+        List<LimitOrder> empty = Collections.emptyList();
+        return side == OrderTypeEnum.ASK ? new OrderBook(null, level, empty) : new OrderBook(null, empty, level);
+    }
+
+    public BitfinexDepth toBitfinexDepth() {
+        return new BitfinexDepth(toBitfinexLevels(OrderTypeEnum.ASK), toBitfinexLevels(OrderTypeEnum.BID));
+    }
 
-        if(type.equals("bids")){
-            bids.put(bidAskLevel.getPrice(), bidAskLevel);
-        }else{
-            asks.put(bidAskLevel.getPrice(), bidAskLevel);
+    private BitfinexLevel[] toBitfinexLevels(OrderTypeEnum side) {
+        // Xchange-bitfinex adapter expects the timestamp to be seconds since Epoch.
+        BigDecimal timestamp = new BigDecimal(System.currentTimeMillis() / 1000);
+        BitfinexLevel[] levels = new BitfinexLevel[book.getSide(side).depth()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new BitfinexLevel(book.price(side, i), book.size(side, i), timestamp);
         }
+        return levels;
     }
 }
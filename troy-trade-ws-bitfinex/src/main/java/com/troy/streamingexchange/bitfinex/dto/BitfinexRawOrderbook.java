@@ -0,0 +1,146 @@
+package com.troy.streamingexchange.bitfinex.dto;
+
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 原始盘口（R0，逐笔委托）
+ * 委托按 价格优先、到达顺序其次 排序，卖盘价格 低->高，买盘价格 高->低，增删改O(log n)；
+ * 同一委托价格不变时保留原排序位置，价格改变时排到新价格的末尾
+ */
+public class BitfinexRawOrderbook {
+    //校验和计算的档数
+    private static final int CHECKSUM_DEPTH = 25;
+
+    private static final Comparator<Key> ASK_ORDER = Comparator.<Key, BigDecimal>comparing(key -> key.price)
+            .thenComparingLong(key -> key.sequence);
+    private static final Comparator<Key> BID_ORDER = Comparator.<Key, BigDecimal>comparing(key -> key.price, Comparator.reverseOrder())
+            .thenComparingLong(key -> key.sequence);
+
+    private final NavigableMap<Key, BitfinexRawOrderbookLevel> asks = new TreeMap<>(ASK_ORDER);
+    private final NavigableMap<Key, BitfinexRawOrderbookLevel> bids = new TreeMap<>(BID_ORDER);
+    /**
+     * <委托ID,排序key>
+     */
+    private final Map<Long, Key> keys = new HashMap<>();
+    private long sequence;
+
+    /**
+     * 是否与交易所一致：收到全量后为true，校验失败后为false，直到重新订阅收到全量
+     */
+    private boolean synced = true;
+
+    private static final class Key {
+        final BigDecimal price;
+        final boolean bid;
+        final long sequence;
+
+        Key(BigDecimal price, boolean bid, long sequence) {
+            this.price = price;
+            this.bid = bid;
+            this.sequence = sequence;
+        }
+    }
+
+    public BitfinexRawOrderbook(BitfinexRawOrderbookLevel[] levels) {
+        for (BitfinexRawOrderbookLevel level : levels) {
+            updateLevel(level);
+        }
+    }
+
+    /**
+     * 新增、修改或删除（价格为0）一笔委托
+     * @param level
+     */
+    public void updateLevel(BitfinexRawOrderbookLevel level) {
+        Key old = keys.remove(level.getOrderId());
+        if (old != null) {
+            (old.bid ? bids : asks).remove(old);
+        }
+        if (level.getPrice().signum() == 0) {
+            return;
+        }
+        boolean bid = level.getAmount().signum() > 0;
+        Key key = old != null && old.bid == bid && old.price.compareTo(level.getPrice()) == 0
+                ? old : new Key(level.getPrice(), bid, sequence++);
+        keys.put(level.getOrderId(), key);
+        (bid ? bids : asks).put(key, level);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public void setSynced(boolean synced) {
+        this.synced = synced;
+    }
+
+    /**
+     * 校验和：前25笔按 买1委托ID:买1量:卖1委托ID:卖1量(负):... 拼接（一侧不足25笔时只拼另一侧），取CRC32的有符号32位值
+     * @return
+     */
+    public int checksum() {
+        StringBuilder sb = new StringBuilder(CHECKSUM_DEPTH * 40);
+        Iterator<BitfinexRawOrderbookLevel> bidIterator = bids.values().iterator();
+        Iterator<BitfinexRawOrderbookLevel> askIterator = asks.values().iterator();
+        for (int i = 0; i < CHECKSUM_DEPTH; i++) {
+            if (bidIterator.hasNext()) {
+                appendLevel(sb, bidIterator.next());
+            }
+            if (askIterator.hasNext()) {
+                appendLevel(sb, askIterator.next());
+            }
+        }
+        CRC32 crc32 = new CRC32();
+        if (sb.length() > 0) {
+            crc32.update(sb.substring(0, sb.length() - 1).getBytes(StandardCharsets.UTF_8));
+        }
+        return (int) crc32.getValue();
+    }
+
+    private static void appendLevel(StringBuilder sb, BitfinexRawOrderbookLevel level) {
+        sb.append(level.getOrderId()).append(':').append(BitfinexOrderbook.checksumString(level.getAmount())).append(':');
+    }
+
+    /**
+     * 前N笔委托，卖盘、买盘均为最优价在前，委托ID为LimitOrder的id
+     * @param depth 笔数
+     * @param currencyPair
+     * @return
+     */
+    public OrderBook toOrderBook(int depth, CurrencyPair currencyPair) {
+        return new OrderBook(null, toLimitOrders(asks, OrderTypeEnum.ASK, depth, currencyPair),
+                toLimitOrders(bids, OrderTypeEnum.BID, depth, currencyPair));
+    }
+
+    private static List<LimitOrder> toLimitOrders(NavigableMap<Key, BitfinexRawOrderbookLevel> side, OrderTypeEnum type,
+                                                  int depth, CurrencyPair currencyPair) {
+        List<LimitOrder> orders = new ArrayList<>(Math.min(depth, side.size()));
+        for (BitfinexRawOrderbookLevel level : side.values()) {
+            if (orders.size() >= depth) {
+                break;
+            }
+            orders.add(new LimitOrder(type, level.getAmount().abs(), currencyPair, String.valueOf(level.getOrderId()),
+                    null, level.getPrice()));
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,41 @@
+package com.troy.streamingexchange.bitfinex.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.math.BigDecimal;
+
+/**
+ * 原始盘口（R0）的一笔委托 [委托ID, 价格, 数量]，卖单数量为负，价格为0表示委托已删除
+ */
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"orderId","price","amount"})
+public class BitfinexRawOrderbookLevel {
+
+    public long orderId;
+
+    public BigDecimal price;
+
+    public BigDecimal amount;
+
+    public BitfinexRawOrderbookLevel() {
+    }
+
+    public BitfinexRawOrderbookLevel(long orderId, BigDecimal price, BigDecimal amount) {
+        this.orderId = orderId;
+        this.price = price;
+        this.amount = amount;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,18 @@
+package com.troy.streamingexchange.bitfinex.dto;
+
+public abstract class BitfinexWebSocketRawOrderbookTransaction {
+    public String channelId;
+
+    public BitfinexWebSocketRawOrderbookTransaction() {
+    }
+
+    public BitfinexWebSocketRawOrderbookTransaction(String channelId) {
+        this.channelId = channelId;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public abstract BitfinexRawOrderbook toBitfinexRawOrderbook(BitfinexRawOrderbook orderbook);
+}
@@ -0,0 +1,13 @@
+package com.troy.streamingexchange.bitfinex.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+public class BitfinexWebSocketSnapshotRawOrderbook extends BitfinexWebSocketRawOrderbookTransaction {
+    public BitfinexRawOrderbookLevel[] levels;
+
+    @Override
+    public BitfinexRawOrderbook toBitfinexRawOrderbook(BitfinexRawOrderbook orderbook) {
+        return new BitfinexRawOrderbook(levels);
+    }
+}
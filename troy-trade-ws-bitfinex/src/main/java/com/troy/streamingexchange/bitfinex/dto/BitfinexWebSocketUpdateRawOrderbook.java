@@ -0,0 +1,21 @@
+package com.troy.streamingexchange.bitfinex.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+public class BitfinexWebSocketUpdateRawOrderbook extends BitfinexWebSocketRawOrderbookTransaction {
+    public BitfinexRawOrderbookLevel level;
+
+    public BitfinexWebSocketUpdateRawOrderbook() {
+    }
+
+    public BitfinexWebSocketUpdateRawOrderbook(BitfinexRawOrderbookLevel level) {
+        this.level = level;
+    }
+
+    @Override
+    public BitfinexRawOrderbook toBitfinexRawOrderbook(BitfinexRawOrderbook orderbook) {
+        orderbook.updateLevel(level);
+        return orderbook;
+    }
+}
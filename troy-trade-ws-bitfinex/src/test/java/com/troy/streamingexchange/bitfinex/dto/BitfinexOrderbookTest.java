@@ -6,10 +6,12 @@ import com.troy.trade.ws.dto.OrderBook;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
 import org.junit.Test;
 
+import java.math.BigDecimal;
 import java.util.Date;
 
 import static java.math.BigDecimal.ONE;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
 
 public class BitfinexOrderbookTest {
 
@@ -27,4 +29,98 @@ public class BitfinexOrderbookTest {
         assertThat("The timestamp should be a value less than now, but was: " + orderBook.getTimeStamp(),
                 !orderBook.getTimeStamp().after(new Date()));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void levelsShouldStaySortedAcrossUpdates() {
+        BitfinexOrderbook orderbook = new BitfinexOrderbook(new BitfinexOrderbookLevel[]{
+                level("100", "1", "2"),
+                level("99", "1", "3"),
+                level("101", "1", "-1"),
+                level("102", "2", "-4")
+        });
+        orderbook.updateLevel(level("99.5", "1", "5"));
+        orderbook.updateLevel(level("100", "0", "1"));
+        orderbook.updateLevel(level("100.5", "1", "-6"));
+
+        OrderBook orderBook = orderbook.toOrderBook(10, new CurrencyPair("BTC", "USD"));
+        assertEquals(2, orderBook.getBids().size());
+        assertEquals(0, new BigDecimal("99.5").compareTo(orderBook.getBids().get(0).getLimitPrice()));
+        assertEquals(0, new BigDecimal("99").compareTo(orderBook.getBids().get(1).getLimitPrice()));
+        assertEquals(3, orderBook.getAsks().size());
+        assertEquals(0, new BigDecimal("100.5").compareTo(orderBook.getAsks().get(0).getLimitPrice()));
+        assertEquals(0, new BigDecimal("6").compareTo(orderBook.getAsks().get(0).getOriginalAmount()));
+        assertEquals(1, orderbook.toOrderBook(1, new CurrencyPair("BTC", "USD")).getAsks().size());
+    }
+
+    @Test
+    public void pushedLevelShouldBeTheOnlyLevelReturned() {
+        BitfinexOrderbook orderbook = new BitfinexOrderbook(new BitfinexOrderbookLevel[]{
+                level("100", "1", "2"),
+                level("101", "1", "-1")
+        });
+        orderbook.pushLevel(level("101", "0", "-1"));
+
+        OrderBook increment = orderbook.toOrderBook(10, new CurrencyPair("BTC", "USD"));
+        assertEquals(0, increment.getBids().size());
+        assertEquals(1, increment.getAsks().size());
+        assertEquals(0, BigDecimal.ZERO.compareTo(increment.getAsks().get(0).getOriginalAmount()));
+        assertEquals(0, orderbook.getBook().getAsks().depth());
+    }
+
+    @Test
+    public void checksumShouldInterleaveBidsAndNegativeAsks() {
+        BitfinexOrderbook orderbook = new BitfinexOrderbook(new BitfinexOrderbookLevel[]{
+                level("100", "1", "2"),
+                level("99", "1", "3"),
+                level("101", "1", "-1.5")
+        });
+
+        // crc32("100:2:101:-1.5:99:3")
+        assertEquals(339618321, orderbook.checksum());
+    }
+
+    @Test
+    public void checksumShouldUseReceivedValuesBeyondFixedPointScale() {
+        //数值超过8位小数，按交易所推送的原始字符串计算
+        BitfinexOrderbook orderbook = new BitfinexOrderbook(new BitfinexOrderbookLevel[]{
+                level("0.0000123451", "1", "1234.123456789"),
+                level("0.000012345", "2", "0.5"),
+                level("0.0000123461", "1", "-0.000000001"),
+                level("0.00001235", "3", "-20")
+        });
+
+        // crc32("0.0000123451:1234.123456789:0.0000123461:-1e-9:0.000012345:0.5:0.00001235:-20")
+        assertEquals(-1607901770, orderbook.checksum());
+
+        orderbook.updateLevel(level("0.0000123461", "0", "-1"));
+        // crc32("0.0000123451:1234.123456789:0.00001235:-20:0.000012345:0.5")
+        assertEquals(-756831814, orderbook.checksum());
+    }
+
+    @Test
+    public void checksumShouldUseExponentFormBelowOneMillionth() {
+        BitfinexOrderbook orderbook = new BitfinexOrderbook(new BitfinexOrderbookLevel[]{
+                level("100", "1", "2.0"),
+                level("99", "1", "0.00000015"),
+                level("101", "1", "-0.0000001")
+        });
+
+        // crc32("100:2:101:-1e-7:99:1.5e-7")
+        assertEquals(850360813, orderbook.checksum());
+    }
+
+    @Test
+    public void checksumStringShouldMatchJavaScriptNumberToString() {
+        assertEquals("0", BitfinexOrderbook.checksumString(new BigDecimal("0.000")));
+        assertEquals("1200", BitfinexOrderbook.checksumString(new BigDecimal("1200.00")));
+        assertEquals("0.000001", BitfinexOrderbook.checksumString(new BigDecimal("0.000001")));
+        assertEquals("1e-7", BitfinexOrderbook.checksumString(new BigDecimal("0.0000001")));
+        assertEquals("-1.25e-8", BitfinexOrderbook.checksumString(new BigDecimal("-1.250E-8")));
+        assertEquals("1e+21", BitfinexOrderbook.checksumString(new BigDecimal("1E+21")));
+        assertEquals("999999999999999999999", BitfinexOrderbook.checksumString(new BigDecimal("999999999999999999999")));
+    }
+
+    private static BitfinexOrderbookLevel level(String price, String count, String amount) {
+        return new BitfinexOrderbookLevel(new BigDecimal(price), new BigDecimal(count), new BigDecimal(amount));
+    }
+}
@@ -0,0 +1,73 @@
+package com.troy.streamingexchange.bitfinex.dto;
+
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitfinexRawOrderbookTest {
+
+    private static final CurrencyPair BTC_USD = new CurrencyPair("BTC", "USD");
+
+    @Test
+    public void ordersAtSamePriceShouldKeepArrivalOrder() {
+        BitfinexRawOrderbook orderbook = new BitfinexRawOrderbook(new BitfinexRawOrderbookLevel[]{
+                order(1, "100", "1"),
+                order(2, "100", "2"),
+                order(3, "101", "-1")
+        });
+        orderbook.updateLevel(order(1, "100", "3"));
+        orderbook.updateLevel(order(4, "100.5", "1"));
+
+        OrderBook orderBook = orderbook.toOrderBook(10, BTC_USD);
+        assertEquals(3, orderBook.getBids().size());
+        assertEquals("4", orderBook.getBids().get(0).getId());
+        assertEquals("1", orderBook.getBids().get(1).getId());
+        assertEquals(0, new BigDecimal("3").compareTo(orderBook.getBids().get(1).getOriginalAmount()));
+        assertEquals("2", orderBook.getBids().get(2).getId());
+        assertEquals(0, new BigDecimal("1").compareTo(orderBook.getAsks().get(0).getOriginalAmount()));
+    }
+
+    @Test
+    public void zeroPriceShouldDeleteOrder() {
+        BitfinexRawOrderbook orderbook = new BitfinexRawOrderbook(new BitfinexRawOrderbookLevel[]{
+                order(1, "100", "1"),
+                order(2, "101", "-1")
+        });
+        orderbook.updateLevel(order(2, "0", "-1"));
+
+        assertEquals(1, orderbook.size());
+        assertEquals(0, orderbook.toOrderBook(10, BTC_USD).getAsks().size());
+    }
+
+    @Test
+    public void checksumShouldUseOrderIds() {
+        BitfinexRawOrderbook orderbook = new BitfinexRawOrderbook(new BitfinexRawOrderbookLevel[]{
+                order(5, "100", "1"),
+                order(7, "101", "0.5"),
+                order(9, "102", "-2")
+        });
+
+        // crc32("7:0.5:9:-2:5:1")
+        assertEquals(-394058778, orderbook.checksum());
+    }
+
+    @Test
+    public void checksumShouldUseExponentFormBelowOneMillionth() {
+        BitfinexRawOrderbook orderbook = new BitfinexRawOrderbook(new BitfinexRawOrderbookLevel[]{
+                order(5, "100", "1"),
+                order(7, "101", "0.0000001"),
+                order(9, "102", "-2")
+        });
+
+        // crc32("7:1e-7:9:-2:5:1")
+        assertEquals(-793664555, orderbook.checksum());
+    }
+
+    private static BitfinexRawOrderbookLevel order(long orderId, String price, String amount) {
+        return new BitfinexRawOrderbookLevel(orderId, new BigDecimal(price), new BigDecimal(amount));
+    }
+}
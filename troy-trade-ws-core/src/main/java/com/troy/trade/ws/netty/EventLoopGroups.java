@@ -0,0 +1,110 @@
+package com.troy.trade.ws.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 进程内共享的Netty EventLoopGroup
+ * 所有交易所ws客户端共用一组IO线程，Linux下可用时使用epoll
+ * 配置需在首次建立连接前通过{@link #configure(int, int, boolean)}设置，未设置时读取系统属性：
+ * troy.netty.threads（0-Netty默认 2*CPU核数）、troy.netty.ioRatio、troy.netty.epoll
+ */
+public final class EventLoopGroups {
+    private static final Logger LOG = LoggerFactory.getLogger(EventLoopGroups.class);
+
+    private static int threads = Integer.getInteger("troy.netty.threads", 0);
+    private static int ioRatio = Integer.getInteger("troy.netty.ioRatio", 50);
+    private static boolean preferEpoll = Boolean.parseBoolean(System.getProperty("troy.netty.epoll", "true"));
+
+    private static volatile EventLoopGroup eventLoopGroup;
+    private static volatile boolean epoll;
+
+    private EventLoopGroups() {
+    }
+
+    /**
+     * 设置共享EventLoopGroup参数，EventLoopGroup创建后设置无效
+     * @param threads IO线程数，0-Netty默认
+     * @param ioRatio IO与任务执行时间比例（1-100）
+     * @param preferEpoll 是否优先使用epoll
+     */
+    public static synchronized void configure(int threads, int ioRatio, boolean preferEpoll) {
+        if (eventLoopGroup != null) {
+            LOG.warn("EventLoopGroup already created, configuration ignored");
+            return;
+        }
+        EventLoopGroups.threads = threads;
+        EventLoopGroups.ioRatio = ioRatio;
+        EventLoopGroups.preferEpoll = preferEpoll;
+    }
+
+    /**
+     * 获取共享EventLoopGroup，首次调用时创建
+     * @return
+     */
+    public static EventLoopGroup eventLoopGroup() {
+        EventLoopGroup group = eventLoopGroup;
+        if (group == null) {
+            synchronized (EventLoopGroups.class) {
+                group = eventLoopGroup;
+                if (group == null) {
+                    group = create();
+                    eventLoopGroup = group;
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * 与共享EventLoopGroup匹配的SocketChannel类型
+     * @return
+     */
+    public static Class<? extends SocketChannel> socketChannelClass() {
+        eventLoopGroup();
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static boolean isEpoll() {
+        return epoll;
+    }
+
+    /**
+     * 关闭共享EventLoopGroup（仅在进程退出时调用）
+     */
+    public static synchronized void shutdownGracefully() {
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+            eventLoopGroup = null;
+        }
+    }
+
+    private static EventLoopGroup create() {
+        ThreadFactory threadFactory = new DefaultThreadFactory("troy-ws-netty", true);
+        if (preferEpoll && Epoll.isAvailable()) {
+            EpollEventLoopGroup group = new EpollEventLoopGroup(threads, threadFactory);
+            group.setIoRatio(ioRatio);
+            epoll = true;
+            LOG.info("Shared EventLoopGroup created, transport: epoll, threads: {}, ioRatio: {}", group.executorCount(), ioRatio);
+            return group;
+        }
+        if (preferEpoll) {
+            LOG.info("Epoll unavailable, fallback to nio: {}", String.valueOf(Epoll.unavailabilityCause()));
+        }
+        NioEventLoopGroup group = new NioEventLoopGroup(threads, threadFactory);
+        group.setIoRatio(ioRatio);
+        epoll = false;
+        LOG.info("Shared EventLoopGroup created, transport: nio, threads: {}, ioRatio: {}", group.executorCount(), ioRatio);
+        return group;
+    }
+}
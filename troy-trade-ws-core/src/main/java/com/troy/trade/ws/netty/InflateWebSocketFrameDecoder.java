@@ -0,0 +1,150 @@
+package com.troy.trade.ws.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 二进制帧解压
+ * 火币为gzip，OKEx为raw deflate，按gzip魔数自动识别；解压结果写入池化ByteBuf，以TextWebSocketFrame向后传递，
+ * 后续直接从ByteBuf解析JSON，不再生成中间字符串
+ * 每个连接一个实例（非Sharable），复用同一个Inflater，连接关闭时释放
+ * 注：gzip尾部CRC不校验，数据完整性由TCP/TLS保证
+ */
+public class InflateWebSocketFrameDecoder extends MessageToMessageDecoder<BinaryWebSocketFrame> {
+    private static final Logger LOG = LoggerFactory.getLogger(InflateWebSocketFrameDecoder.class);
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    /**
+     * 解压后大小预估倍数（行情json压缩比一般在4-10倍）
+     */
+    private static final int INFLATE_RATIO = 4;
+
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * 非堆内存帧的输入缓冲，按需扩容后复用
+     */
+    private byte[] input = new byte[0];
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, BinaryWebSocketFrame frame, List<Object> out) throws Exception {
+        ByteBuf content = frame.content();
+        if (!frame.isFinalFragment()) {
+            LOG.info("======================not FinalFragment======================");
+        }
+        if (!content.isReadable()) {
+            return;
+        }
+        out.add(new TextWebSocketFrame(frame.isFinalFragment(), frame.rsv(), inflate(ctx.alloc(), content)));
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        inflater.end();
+        super.handlerRemoved(ctx);
+    }
+
+    /**
+     * 解压到池化ByteBuf，调用方负责释放
+     * @param alloc
+     * @param content
+     * @return
+     * @throws DataFormatException
+     */
+    private ByteBuf inflate(ByteBufAllocator alloc, ByteBuf content) throws DataFormatException {
+        int offset = content.readerIndex();
+        int length = content.readableBytes();
+        if (isGzip(content)) {
+            int headerLength = gzipHeaderLength(content);
+            offset += headerLength;
+            length -= headerLength + GZIP_TRAILER_LENGTH;
+            if (length <= 0) {
+                throw new DataFormatException("Truncated gzip frame");
+            }
+        }
+
+        inflater.reset();
+        if (content.hasArray()) {
+            inflater.setInput(content.array(), content.arrayOffset() + offset, length);
+        } else {
+            if (input.length < length) {
+                input = new byte[length];
+            }
+            content.getBytes(offset, input, 0, length);
+            inflater.setInput(input, 0, length);
+        }
+
+        ByteBuf inflated = alloc.heapBuffer(length * INFLATE_RATIO);
+        try {
+            while (!inflater.finished()) {
+                if (!inflated.isWritable()) {
+                    inflated.ensureWritable(inflated.capacity());
+                }
+                int n = inflater.inflate(inflated.array(), inflated.arrayOffset() + inflated.writerIndex(), inflated.writableBytes());
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated.writerIndex(inflated.writerIndex() + n);
+            }
+            return inflated;
+        } catch (DataFormatException e) {
+            inflated.release();
+            throw e;
+        }
+    }
+
+    private static boolean isGzip(ByteBuf content) {
+        int index = content.readerIndex();
+        return content.readableBytes() > GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH
+                && content.getUnsignedByte(index) == GZIP_MAGIC_1
+                && content.getUnsignedByte(index + 1) == GZIP_MAGIC_2;
+    }
+
+    /**
+     * gzip头长度（RFC 1952），含可选的FEXTRA、FNAME、FCOMMENT、FHCRC
+     * @param content
+     * @return
+     */
+    private static int gzipHeaderLength(ByteBuf content) {
+        int start = content.readerIndex();
+        int end = content.writerIndex();
+        int flags = content.getUnsignedByte(start + 3);
+        int index = start + GZIP_HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            index += 2 + content.getUnsignedShortLE(index);
+        }
+        if ((flags & FNAME) != 0) {
+            index = skipZeroTerminated(content, index, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            index = skipZeroTerminated(content, index, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            index += 2;
+        }
+        return index - start;
+    }
+
+    private static int skipZeroTerminated(ByteBuf content, int index, int end) {
+        int zero = content.indexOf(index, end, (byte) 0);
+        return zero < 0 ? end : zero + 1;
+    }
+}
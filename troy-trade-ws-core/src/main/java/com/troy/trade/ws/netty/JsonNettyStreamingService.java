@@ -1,8 +1,10 @@
 package com.troy.trade.ws.netty;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,17 +24,48 @@ public abstract class JsonNettyStreamingService extends NettyStreamingService<Js
     @Override
     public void messageHandler(String message) {
         LOG.debug("Received message: {}", message);
-        ObjectMapper objectMapper = new ObjectMapper();
         JsonNode jsonNode;
 
         // Parse incoming message to JSON
         try {
-            jsonNode = objectMapper.readTree(message);
+            jsonNode = StreamingObjectMapper.get().readTree(message);
         } catch (IOException e) {
             LOG.error("Error parsing incoming message to JSON: {}", message);
             return;
         }
 
+        handleJsonMessage(jsonNode);
+    }
+
+    /**
+     * 直接从帧内容解析JSON，不生成中间字符串
+     *
+     * @param content 帧内容（UTF-8）
+     */
+    @Override
+    public void messageHandler(ByteBuf content) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received message: {}", content.toString(CharsetUtil.UTF_8));
+        }
+        JsonNode jsonNode;
+
+        // Parse incoming message to JSON
+        try {
+            jsonNode = StreamingObjectMapper.get().readTree(new ByteBufInputStream(content));
+        } catch (IOException e) {
+            LOG.error("Error parsing incoming message to JSON: {}", content.toString(CharsetUtil.UTF_8));
+            return;
+        }
+
+        handleJsonMessage(jsonNode);
+    }
+
+    /**
+     * 处理已解析的消息，数组消息逐个处理
+     *
+     * @param jsonNode
+     */
+    protected void handleJsonMessage(JsonNode jsonNode) {
         // In case of array - handle every message separately.
         if (jsonNode.getNodeType().equals(JsonNodeType.ARRAY)) {
             for (JsonNode node : jsonNode) {
@@ -1,14 +1,10 @@
 package com.troy.trade.ws.netty;
 
-import com.troy.commons.utils.ApplicationContextUtil;
-import com.troy.commons.utils.DateUtils;
-import com.troy.redis.RedisUtil;
 import com.troy.trade.ws.exceptions.NotConnectedException;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
@@ -17,7 +13,10 @@ import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensio
 import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.CharsetUtil;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
@@ -25,15 +24,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.ClosedChannelException;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Netty流服务
@@ -49,16 +53,26 @@ public abstract class NettyStreamingService<T> {
 
     private static final int MAXRETRIES = 5;
 
+    //重新订阅默认每批频道数、批间隔（毫秒）
+    private static final int DEFAULT_RESUBSCRIBE_BATCH_SIZE = 10;
+    private static final long DEFAULT_RESUBSCRIBE_INTERVAL = 200L;
+
+    //盘口频道允许的最长静默（毫秒），见{@link StreamWatchdog}
+    protected static final long DEPTH_STALE_TIMEOUT = StreamWatchdog.DEPTH_STALE_TIMEOUT;
+
     /**
      * 订阅信息
      * 被观察者发射器
      * 渠道名
      * 参数
+     * 最近一条消息的时间、静默后连续重新订阅的次数（看门狗用）
      */
     private class Subscription {
         final ObservableEmitter<T> emitter;
         final String channelName;
         final Object[] args;
+        volatile long lastMessageTime = System.currentTimeMillis();
+        volatile int staleResubscribes;
 
         public Subscription(ObservableEmitter<T> emitter, String channelName, Object[] args) {
             this.emitter = emitter;
@@ -71,11 +85,18 @@ public abstract class NettyStreamingService<T> {
     private final int maxFramePayloadLength;
     private final URI uri;
     //是否是手动关闭
-    private boolean isManualDisconnect = false;
+    private volatile boolean isManualDisconnect = false;
+    //连续重连次数，连接成功后清零
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    //是否正在重连
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    //首次连接成功后才在断开时自动重连；首次连接失败（握手失败、超时）由connect的调用方处理，不留下无人管理的重连
+    private volatile boolean autoReconnect = false;
     private Channel webSocketChannel;
     private Duration retryDuration;
     private Duration connectionTimeout;
-    private final NioEventLoopGroup eventLoopGroup;
+    //进程内共享的EventLoopGroup
+    private final EventLoopGroup eventLoopGroup;
     //通道缓存 trade-req-BTC_USDT - > Subscription对象
     protected Map<String, Subscription> channels = new ConcurrentHashMap<>();
     //压缩
@@ -95,7 +116,7 @@ public abstract class NettyStreamingService<T> {
             this.retryDuration = retryDuration;
             this.connectionTimeout = connectionTimeout;
             this.uri = new URI(apiUrl);
-            this.eventLoopGroup = new NioEventLoopGroup();
+            this.eventLoopGroup = EventLoopGroups.eventLoopGroup();
         } catch (URISyntaxException e) {
             throw new IllegalArgumentException("Error parsing URI " + apiUrl, e);
         }
@@ -106,6 +127,7 @@ public abstract class NettyStreamingService<T> {
      */
     public Completable connect() {
         return Completable.create(completable -> {
+            isManualDisconnect = false;
             try {
                 LOG.info("Connecting to {}://{}:{}{}", uri.getScheme(), uri.getHost(), uri.getPort(), uri.getPath());
                 String scheme = uri.getScheme() == null ? "ws" : uri.getScheme();
@@ -144,12 +166,26 @@ public abstract class NettyStreamingService<T> {
                  */
                 final WebSocketClientHandler handler = getWebSocketClientHandler(WebSocketClientHandshakerFactory.newHandshaker(
                         uri, WebSocketVersion.V13, null, true, new DefaultHttpHeaders(), maxFramePayloadLength),
-                        this::messageHandler);
+                        new WebSocketClientHandler.WebSocketMessageHandler() {
+                            @Override
+                            public void onMessage(String message) {
+                                if (!isPong(message)) {
+                                    messageHandler(message);
+                                }
+                            }
+
+                            @Override
+                            public void onMessage(ByteBuf content) {
+                                if (!isPong(content)) {
+                                    messageHandler(content);
+                                }
+                            }
+                        });
 
                 Bootstrap b = new Bootstrap();
                 b.group(eventLoopGroup)
                         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(connectionTimeout.toMillis()))
-                        .channel(NioSocketChannel.class)
+                        .channel(EventLoopGroups.socketChannelClass())
                         .handler(new ChannelInitializer<SocketChannel>() {
                             @Override
                             protected void initChannel(SocketChannel ch) {
@@ -158,12 +194,16 @@ public abstract class NettyStreamingService<T> {
                                     p.addLast(sslCtx.newHandler(ch.alloc(), host, port));
                                 }
 
-                                List<ChannelHandler> handlers = new ArrayList<>(4);
+                                List<ChannelHandler> handlers = new ArrayList<>(5);
                                 handlers.add(new HttpClientCodec());
                                 if (compressedMessages) {
                                     handlers.add(WebSocketClientCompressionHandler.INSTANCE);
                                 }
                                 handlers.add(new HttpObjectAggregator(8192));
+                                //gzip/deflate二进制帧解压，每个连接独立实例
+                                handlers.add(new InflateWebSocketFrameDecoder());
+                                //读空闲检测，触发心跳和半开连接断开
+                                handlers.add(new IdleStateHandler(StreamWatchdog.HEARTBEAT_INTERVAL, 0L, 0L, TimeUnit.MILLISECONDS));
 
                                 handlers.add(handler);
 
@@ -175,14 +215,31 @@ public abstract class NettyStreamingService<T> {
                             }
                         });
 
-                b.connect(uri.getHost(), port).addListener((ChannelFuture future) -> {
-                    webSocketChannel = future.channel();
+                ChannelFuture connectFuture = b.connect(new InetSocketAddress(host, port));
+                //连接未完成时即记录通道，使disconnect能关闭进行中的连接
+                webSocketChannel = connectFuture.channel();
+                connectFuture.addListener((ChannelFuture future) -> {
+                    Channel channel = future.channel();
                     if (future.isSuccess()) {
+                        //握手超时：连接已建立但服务端一直不应答
+                        channel.eventLoop().schedule(() -> {
+                            if (handler.handshakeFuture().tryFailure(new TimeoutException("websocket handshake timed out"))) {
+                                channel.close();
+                            }
+                        }, connectionTimeout.toMillis(), TimeUnit.MILLISECONDS);
                         handler.handshakeFuture().addListener(f -> {
-                            if (f.isSuccess()) {
+                            if (f.isSuccess() && isManualDisconnect) {
+                                //握手期间已调用disconnect，关闭刚建立的连接
+                                channel.close();
+                                completable.onError(new ClosedChannelException());
+                            } else if (f.isSuccess()) {
                                 LOG.info("==========================connected========================");
+                                autoReconnect = true;
+                                startWatchdog(channel);
+                                onConnected();
                                 completable.onComplete();
                             } else {
+                                channel.close();
                                 completable.onError(f.cause());
                             }
                         });
@@ -199,17 +256,21 @@ public abstract class NettyStreamingService<T> {
 
     public Completable disconnect() {
         isManualDisconnect = true;
+        StreamWatchdog.unregister(this);
         return Completable.create(completable -> {
-            if (null != webSocketChannel
-                    && webSocketChannel.isOpen()) {
-                CloseWebSocketFrame closeFrame = new CloseWebSocketFrame();
-                webSocketChannel.writeAndFlush(closeFrame).addListener(future -> {
-                    channels = new ConcurrentHashMap<>();
-                    completable.onComplete();
-                });
-                webSocketChannel.close();
+            Channel channel = webSocketChannel;
+            if (null == channel || !channel.isOpen()) {
+                completable.onComplete();
+                return;
             }
-            eventLoopGroup.shutdownGracefully();
+            //连接或握手进行中时关闭通道，connect随之以失败结束，不会留下存活的连接
+            if (channel.isActive()) {
+                channel.writeAndFlush(new CloseWebSocketFrame());
+            }
+            channel.close().addListener(future -> {
+                channels = new ConcurrentHashMap<>();
+                completable.onComplete();
+            });
         });
     }
 
@@ -230,6 +291,50 @@ public abstract class NettyStreamingService<T> {
      */
     public abstract void messageHandler(String message);
 
+    /**
+     * 直接处理帧内容，默认转为字符串后交给{@link #messageHandler(String)}
+     *
+     * @param content 帧内容（UTF-8），仅在方法内有效
+     */
+    public void messageHandler(ByteBuf content) {
+        messageHandler(content.toString(CharsetUtil.UTF_8));
+    }
+
+    /**
+     * 应用层心跳消息，连接读空闲时发送
+     *
+     * @return null-发送WebSocket ping帧
+     */
+    protected String getPingMessage() {
+        return null;
+    }
+
+    /**
+     * 交易所对心跳的非JSON应答（如OKEx的"pong"），收到时直接丢弃，不进入消息处理
+     *
+     * @return null-无需过滤
+     */
+    protected String getPongMessage() {
+        return null;
+    }
+
+    /**
+     * 连接（含重连）握手成功后、重新订阅前调用，发送连接级配置（如Bitfinex的conf）
+     */
+    protected void onConnected() {
+    }
+
+    /**
+     * 频道允许的最长静默（毫秒），超过后重新订阅该频道，见{@link #checkChannels}
+     * 成交、委托等可能长时间无消息的频道不监控
+     *
+     * @param channelName 订阅时的频道名
+     * @return 0-不监控
+     */
+    protected long getChannelStaleTimeout(String channelName) {
+        return 0L;
+    }
+
     public void sendMessage(String message) {
         LOG.debug("Sending message: {}", message);
 
@@ -271,7 +376,8 @@ public abstract class NettyStreamingService<T> {
         }).doOnDispose(() -> {
             if (channels.containsKey(channelId)) {
                 Subscription subscription = channels.get(channelId);
-                if (!subscription.channelName.contains("trade_req")) {
+                //请求类频道（如火币的xxx_req）只有一次应答，无需退订
+                if (!subscription.channelName.endsWith("_req")) {
                     sendMessage(getUnsubscribeMessage(channelId));
                 }
                 channels.remove(channelId);
@@ -279,15 +385,95 @@ public abstract class NettyStreamingService<T> {
         }).share();
     }
 
+    /**
+     * 一帧订阅多个频道的消息，交易所支持时重写（如OKEx的args数组）
+     *
+     * @param channelNames 频道名
+     * @param args 各频道的订阅参数，与channelNames一一对应
+     * @return null-不支持，每个频道单独一帧
+     */
+    public String getBatchSubscribeMessage(List<String> channelNames, List<Object[]> args) throws IOException {
+        return null;
+    }
+
+    /**
+     * 重新订阅时每批的频道数，同一批一次写出（支持批量订阅时为一帧）
+     */
+    protected int getResubscribeBatchSize() {
+        return DEFAULT_RESUBSCRIBE_BATCH_SIZE;
+    }
+
+    /**
+     * 重新订阅时两批之间的间隔（毫秒），按交易所的限频设置
+     */
+    protected long getResubscribeInterval() {
+        return DEFAULT_RESUBSCRIBE_INTERVAL;
+    }
+
+    /**
+     * 重新订阅全部频道（重连后调用）
+     * 按{@link #getResubscribeBatchSize()}分批，每批一次flush，批之间间隔{@link #getResubscribeInterval()}，
+     * 由连接的IO线程定时发送，不阻塞；发送期间连接再次断开则放弃，由下一次重连重新订阅
+     */
     public void resubscribeChannels() {
-        for (String channelId : channels.keySet()) {
+        Channel channel = webSocketChannel;
+        List<Subscription> subscriptions = new ArrayList<>(channels.values());
+        if (channel == null || subscriptions.isEmpty()) {
+            return;
+        }
+        LOG.info("Resubscribing {} channels, batch size: {}, interval: {}ms", subscriptions.size(),
+                getResubscribeBatchSize(), getResubscribeInterval());
+        channel.eventLoop().execute(() -> resubscribeBatch(channel, subscriptions, 0));
+    }
+
+    private void resubscribeBatch(Channel channel, List<Subscription> subscriptions, int from) {
+        if (channel != webSocketChannel || !channel.isActive()) {
+            LOG.warn("Connection changed, resubscribe stopped at {}/{}", from, subscriptions.size());
+            return;
+        }
+        int to = Math.min(subscriptions.size(), from + Math.max(1, getResubscribeBatchSize()));
+        for (String message : getSubscribeMessages(subscriptions.subList(from, to))) {
+            channel.write(new TextWebSocketFrame(message));
+        }
+        channel.flush();
+        if (to < subscriptions.size()) {
+            channel.eventLoop().schedule(() -> resubscribeBatch(channel, subscriptions, to),
+                    getResubscribeInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 一批频道的订阅消息，支持批量订阅时合并为一帧
+     */
+    private List<String> getSubscribeMessages(List<Subscription> batch) {
+        if (batch.size() > 1) {
+            List<String> channelNames = new ArrayList<>(batch.size());
+            List<Object[]> args = new ArrayList<>(batch.size());
+            for (Subscription subscription : batch) {
+                channelNames.add(subscription.channelName);
+                args.add(subscription.args);
+            }
             try {
-                Subscription subscription = channels.get(channelId);
-                sendMessage(getSubscribeMessage(subscription.channelName, subscription.args));
+                String message = getBatchSubscribeMessage(channelNames, args);
+                if (message != null) {
+                    return Collections.singletonList(message);
+                }
             } catch (IOException e) {
-                LOG.error("Failed to reconnect channel: {}", channelId);
+                LOG.error("Failed to build batch subscribe message: {}", channelNames, e);
             }
         }
+        List<String> messages = new ArrayList<>(batch.size());
+        for (Subscription subscription : batch) {
+            try {
+                String message = getSubscribeMessage(subscription.channelName, subscription.args);
+                if (message != null) {
+                    messages.add(message);
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to reconnect channel: {}", subscription.channelName);
+            }
+        }
+        return messages;
     }
 
     protected String getChannel(T message) {
@@ -313,7 +499,13 @@ public abstract class NettyStreamingService<T> {
 
 
     protected void handleChannelMessage(String channel, T message) {
-        ObservableEmitter<T> emitter = channels.get(channel).emitter;
+        Subscription subscription = channel == null ? null : channels.get(channel);
+        if (subscription == null) {
+            LOG.debug("No subscription for channel {}.", channel);
+            return;
+        }
+        touch(subscription);
+        ObservableEmitter<T> emitter = subscription.emitter;
         if (emitter == null) {
             LOG.debug("No subscriber for channel {}.", channel);
             return;
@@ -336,6 +528,154 @@ public abstract class NettyStreamingService<T> {
         emitter.onError(t);
     }
 
+    /**
+     * 记录频道收到消息（如心跳等不交给订阅者的频道消息）
+     *
+     * @param channel 频道ID
+     */
+    protected void touchChannel(String channel) {
+        Subscription subscription = channel == null ? null : channels.get(channel);
+        if (subscription != null) {
+            touch(subscription);
+        }
+    }
+
+    private void touch(Subscription subscription) {
+        subscription.lastMessageTime = System.currentTimeMillis();
+        if (subscription.staleResubscribes != 0) {
+            subscription.staleResubscribes = 0;
+        }
+    }
+
+    private boolean isPong(String message) {
+        String pong = getPongMessage();
+        return pong != null && pong.equals(message);
+    }
+
+    private boolean isPong(ByteBuf content) {
+        String pong = getPongMessage();
+        return pong != null && content.readableBytes() == pong.length() && pong.equals(content.toString(CharsetUtil.UTF_8));
+    }
+
+    /**
+     * 连接成功后登记统计，并在连接的IO线程上定时检查频道
+     * 断线期间的静默不计入，频道从新连接开始计时
+     */
+    private void startWatchdog(Channel channel) {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : channels.values()) {
+            subscription.lastMessageTime = now;
+            subscription.staleResubscribes = 0;
+        }
+        StreamWatchdog.register(this);
+        channel.eventLoop().schedule(() -> checkChannels(channel), StreamWatchdog.CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 频道看门狗
+     * 受监控的频道静默超过{@link #getChannelStaleTimeout}时先退订再订阅该频道，
+     * 连续{@link StreamWatchdog#MAX_RESUBSCRIBES}次仍无消息则断开连接，由重连流程重新订阅全部频道
+     * 连接更换或关闭后停止
+     */
+    private void checkChannels(Channel channel) {
+        if (channel != webSocketChannel || !channel.isActive()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Subscription> entry : channels.entrySet()) {
+            Subscription subscription = entry.getValue();
+            long timeout = getChannelStaleTimeout(subscription.channelName);
+            long quiet = now - subscription.lastMessageTime;
+            if (timeout <= 0 || quiet < timeout) {
+                continue;
+            }
+            if (subscription.staleResubscribes >= StreamWatchdog.MAX_RESUBSCRIBES) {
+                LOG.warn("Channel {} silent for {}ms after {} resubscribes, reconnecting", entry.getKey(), quiet, subscription.staleResubscribes);
+                StreamWatchdog.recordReconnect();
+                channel.close();
+                return;
+            }
+            subscription.staleResubscribes++;
+            subscription.lastMessageTime = now;
+            LOG.warn("Channel {} silent for {}ms, resubscribing", entry.getKey(), quiet);
+            StreamWatchdog.recordResubscribe();
+            resubscribe(channel, entry.getKey(), subscription);
+        }
+        channel.eventLoop().schedule(() -> checkChannels(channel), StreamWatchdog.CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 重新订阅单个频道（先退订再订阅），如本地盘口校验失败后重新获取全量
+     *
+     * @param channelId 频道ID，见{@link #getSubscriptionUniqueId}
+     */
+    public void resubscribeChannel(String channelId) {
+        Channel channel = webSocketChannel;
+        Subscription subscription = channels.get(channelId);
+        if (channel == null || !channel.isActive() || subscription == null) {
+            LOG.warn("Channel {} not subscribed or connection closed, resubscribe skipped", channelId);
+            return;
+        }
+        channel.eventLoop().execute(() -> resubscribe(channel, channelId, subscription));
+    }
+
+    private void resubscribe(Channel channel, String channelId, Subscription subscription) {
+        try {
+            String unsubscribe = getUnsubscribeMessage(channelId);
+            if (unsubscribe != null) {
+                channel.write(new TextWebSocketFrame(unsubscribe));
+            }
+        } catch (IOException e) {
+            LOG.debug("Channel {} not registered, subscribe only", channelId);
+        }
+        try {
+            String subscribe = getSubscribeMessage(subscription.channelName, subscription.args);
+            if (subscribe != null) {
+                channel.write(new TextWebSocketFrame(subscribe));
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to resubscribe channel: {}", channelId, e);
+        }
+        channel.flush();
+    }
+
+    /**
+     * 受监控频道的静默时间，见{@link StreamWatchdog#staleness()}
+     */
+    void collectStaleness(long now, Map<String, Long> result) {
+        for (Map.Entry<String, Subscription> entry : channels.entrySet()) {
+            Subscription subscription = entry.getValue();
+            if (getChannelStaleTimeout(subscription.channelName) > 0) {
+                result.put(uri.getHost() + "/" + entry.getKey(), now - subscription.lastMessageTime);
+            }
+        }
+    }
+
+    /**
+     * 计划重连，退避、熔断见{@link ReconnectManager}，连接成功后重新订阅全部频道，失败则继续重连
+     */
+    private void scheduleReconnect() {
+        String host = uri.getHost();
+        ReconnectManager.schedule(host, reconnectAttempts.getAndIncrement(), () -> {
+            if (isManualDisconnect) {
+                reconnecting.set(false);
+                LOG.info("reconnect cancelled, disconnected manually");
+                return;
+            }
+            connect().subscribe(() -> {
+                ReconnectManager.onSuccess(host);
+                reconnectAttempts.set(0);
+                reconnecting.set(false);
+                LOG.warn("Resubscribing channels");
+                resubscribeChannels();
+            }, t -> {
+                LOG.warn("Problem with websocket reconnect : {}", t.getMessage());
+                ReconnectManager.onFailure(host);
+                scheduleReconnect();
+            });
+        });
+    }
+
     protected WebSocketClientExtensionHandler getWebSocketClientExtensionHandler() {
         return WebSocketClientCompressionHandler.INSTANCE;
     }
@@ -353,40 +693,17 @@ public abstract class NettyStreamingService<T> {
         public void channelInactive(ChannelHandlerContext ctx) {
             if (isManualDisconnect) {
                 isManualDisconnect = false;
+            } else if (!autoReconnect) {
+                super.channelInactive(ctx);
+                LOG.warn("Websocket closed before the first successful connect, not reconnecting");
+                ctx.close();
             } else {
                 try {
-                    String key = ctx.channel().remoteAddress().toString();
-                    RedisUtil blockvcRedisUtil = ApplicationContextUtil.getBean(RedisUtil.class);
-                    long retryCount = blockvcRedisUtil.increment("RetryWithDelay_" + key);
-                    if(blockvcRedisUtil.ttl("RetryWithDelay_" + key) == -1){
-                        blockvcRedisUtil.expire("RetryWithDelay_" + key, 5, TimeUnit.MINUTES);
-                    }
-                    if(retryCount <= 30){
-                        super.channelInactive(ctx);
+                    super.channelInactive(ctx);
+                    //握手失败等重连过程中的断开由重连流程处理
+                    if (reconnecting.compareAndSet(false, true)) {
                         LOG.info("Reopening websocket because it was closed by the host");
-        //                final Completable c = connect()
-        //                        .doOnError(t -> LOG.warn("Problem with reconnect ", t))
-        //                        .retryWhen(new RetryWithDelay(retryDuration.toMillis()))
-        //                        .doOnComplete(() -> {
-        //                            LOG.info("Resubscribing channels");
-        //                            resubscribeChannels();
-        //                        });
-        //                c.subscribe();
-                        final EventLoop eventLoop = ctx.channel().eventLoop();
-                        LOG.warn("ctx:{} reconnect starting {}", ctx, DateUtils.formatDateFull(new Date()));
-                        ScheduledFuture<?> schedule = eventLoop.schedule(() -> {
-                            Completable c = connect()
-                                    .doOnError(t -> LOG.warn("Problem with websocket reconnect : {}", t.getMessage()))
-                                    .doOnComplete(() -> {
-                                        LOG.warn("Resubscribing channels");
-                                        resubscribeChannels();
-                                    });
-                            c.subscribe();
-                        }, 10, TimeUnit.SECONDS);
-                    }else{
-                        if(blockvcRedisUtil.ttl("RetryWithDelay_" + key) > 30) {
-                            blockvcRedisUtil.expire("RetryWithDelay_" + key, 30, TimeUnit.SECONDS);
-                        }
+                        scheduleReconnect();
                     }
                 } finally {
                     // 关闭重试前的连接
@@ -395,6 +712,26 @@ public abstract class NettyStreamingService<T> {
                 }
             }
         }
+
+        /**
+         * 读空闲：第一次发送心跳，心跳后仍无任何数据则视为半开连接，断开后重连
+         */
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (!(evt instanceof IdleStateEvent) || ((IdleStateEvent) evt).state() != IdleState.READER_IDLE) {
+                super.userEventTriggered(ctx, evt);
+                return;
+            }
+            if (((IdleStateEvent) evt).isFirst()) {
+                String ping = getPingMessage();
+                LOG.debug("Connection idle, sending heartbeat {}", ping);
+                ctx.writeAndFlush(ping == null ? new PingWebSocketFrame() : new TextWebSocketFrame(ping));
+            } else {
+                LOG.warn("No data received for {}ms after heartbeat, closing connection", StreamWatchdog.HEARTBEAT_INTERVAL);
+                StreamWatchdog.recordReconnect();
+                ctx.close();
+            }
+        }
     }
 
     public boolean isSocketOpen() {
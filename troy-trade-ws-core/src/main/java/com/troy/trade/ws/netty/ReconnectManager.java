@@ -0,0 +1,146 @@
+package com.troy.trade.ws.netty;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游ws断线重连调度
+ * 按交易所主机在进程内统计重连状态（原为Redis计数，在IO线程上访问Redis）：
+ * 1、指数退避：第n次重连等待 min(maxDelay, baseDelay*2^n)，取一半固定加一半随机抖动，同时断开的连接不会同时重连；
+ * 2、同一主机的重连至少间隔spacing，交易所一次断开全部连接时依次重连；
+ * 3、熔断：同一主机连续失败failureThreshold次后暂停openDuration，期间到期的重连顺延，恢复后先由一个连接试探，成功后其余连接再重连
+ * 定时和建立连接在独立线程执行，不占用Netty IO线程
+ * 参数读取系统属性：troy.netty.reconnect.baseDelay、maxDelay、spacing、failureThreshold、openDuration（毫秒）
+ */
+public final class ReconnectManager {
+    private static final Logger LOG = LoggerFactory.getLogger(ReconnectManager.class);
+
+    private static final long BASE_DELAY = Long.getLong("troy.netty.reconnect.baseDelay", 1000L);
+    private static final long MAX_DELAY = Long.getLong("troy.netty.reconnect.maxDelay", 60000L);
+    private static final long SPACING = Long.getLong("troy.netty.reconnect.spacing", 200L);
+    private static final int FAILURE_THRESHOLD = Integer.getInteger("troy.netty.reconnect.failureThreshold", 10);
+    private static final long OPEN_DURATION = Long.getLong("troy.netty.reconnect.openDuration", 60000L);
+
+    private static final ConcurrentMap<String, HostState> HOSTS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("troy-ws-reconnect", true));
+
+    private ReconnectManager() {
+    }
+
+    /**
+     * 计划一次重连
+     * @param host 交易所主机
+     * @param attempt 本连接已重连的次数（连接成功后清零）
+     * @param reconnect 重连操作，须为异步，结果通过{@link #onSuccess}、{@link #onFailure}报告
+     */
+    public static void schedule(String host, int attempt, Runnable reconnect) {
+        long delay = state(host).nextDelay(attempt, System.currentTimeMillis());
+        LOG.warn("{} reconnect #{} scheduled in {}ms", host, attempt + 1, delay);
+        SCHEDULER.schedule(() -> run(host, reconnect), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 重连成功（握手完成）
+     * @param host
+     */
+    public static void onSuccess(String host) {
+        state(host).onSuccess();
+    }
+
+    /**
+     * 重连失败
+     * @param host
+     */
+    public static void onFailure(String host) {
+        state(host).onFailure(host, System.currentTimeMillis());
+    }
+
+    private static void run(String host, Runnable reconnect) {
+        long wait = state(host).acquire(System.currentTimeMillis());
+        if (wait > 0) {//熔断中或其他连接正在试探
+            SCHEDULER.schedule(() -> run(host, reconnect), wait + ThreadLocalRandom.current().nextLong(SPACING + 1), TimeUnit.MILLISECONDS);
+            return;
+        }
+        try {
+            reconnect.run();
+        } catch (Throwable t) {
+            LOG.error("{} reconnect error", host, t);
+        }
+    }
+
+    private static HostState state(String host) {
+        return HOSTS.computeIfAbsent(host, k -> new HostState());
+    }
+
+    /**
+     * 单个主机的重连状态，方法内只做计算，无IO
+     */
+    private static final class HostState {
+        //连续失败次数
+        private int failures;
+        //熔断结束时间
+        private long openUntil;
+        //熔断恢复后是否有连接正在试探，及试探超时时间
+        private boolean probing;
+        private long probeDeadline;
+        //下一次重连的最早时间（错开同一主机的重连）
+        private long nextSlot;
+
+        synchronized long nextDelay(int attempt, long now) {
+            long backoff = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 20));
+            long at = now + backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            if (openUntil > at) {
+                at = openUntil + ThreadLocalRandom.current().nextLong(SPACING + 1);
+            }
+            if (at < nextSlot) {
+                at = nextSlot;
+            }
+            nextSlot = at + SPACING;
+            return at - now;
+        }
+
+        /**
+         * @return 0-可以重连，否则为需要再等待的毫秒数
+         */
+        synchronized long acquire(long now) {
+            if (now < openUntil) {
+                return openUntil - now;
+            }
+            if (failures < FAILURE_THRESHOLD) {
+                return 0L;
+            }
+            //熔断恢复，只放行一个连接试探
+            if (probing && now < probeDeadline) {
+                return Math.min(probeDeadline - now, SPACING * 5);
+            }
+            probing = true;
+            probeDeadline = now + OPEN_DURATION;
+            return 0L;
+        }
+
+        synchronized void onSuccess() {
+            failures = 0;
+            openUntil = 0L;
+            probing = false;
+        }
+
+        synchronized void onFailure(String host, long now) {
+            failures++;
+            probing = false;
+            if (failures >= FAILURE_THRESHOLD) {
+                openUntil = now + OPEN_DURATION;
+                LOG.warn("{} reconnect circuit open for {}ms after {} consecutive failures", host, OPEN_DURATION, failures);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.troy.trade.ws.netty;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上游频道静默统计
+ * 已连接的流服务在此登记，统计输出各频道距最近一条消息的时间（毫秒）及看门狗的处理次数，
+ * 静默检测和处理见{@link NettyStreamingService}
+ * 参数读取系统属性：troy.netty.heartbeat.interval（读空闲多久发心跳，再空闲同样时间断开重连）、
+ * troy.netty.watchdog.interval（频道检查间隔）、troy.netty.watchdog.depthStaleTimeout（盘口频道允许的最长静默）、
+ * troy.netty.watchdog.maxResubscribes（单频道连续重新订阅多少次仍无消息则重连），均为毫秒/次数
+ */
+public final class StreamWatchdog {
+
+    static final long HEARTBEAT_INTERVAL = Long.getLong("troy.netty.heartbeat.interval", 15000L);
+    static final long CHECK_INTERVAL = Long.getLong("troy.netty.watchdog.interval", 5000L);
+    static final long DEPTH_STALE_TIMEOUT = Long.getLong("troy.netty.watchdog.depthStaleTimeout", 30000L);
+    static final int MAX_RESUBSCRIBES = Integer.getInteger("troy.netty.watchdog.maxResubscribes", 2);
+
+    private static final Set<NettyStreamingService<?>> SERVICES = ConcurrentHashMap.newKeySet();
+
+    //静默频道的重新订阅次数
+    private static final AtomicLong RESUBSCRIBES = new AtomicLong();
+    //静默导致的重连次数（含心跳超时）
+    private static final AtomicLong RECONNECTS = new AtomicLong();
+
+    private StreamWatchdog() {
+    }
+
+    static void register(NettyStreamingService<?> service) {
+        SERVICES.add(service);
+    }
+
+    static void unregister(NettyStreamingService<?> service) {
+        SERVICES.remove(service);
+    }
+
+    static void recordResubscribe() {
+        RESUBSCRIBES.incrementAndGet();
+    }
+
+    static void recordReconnect() {
+        RECONNECTS.incrementAndGet();
+    }
+
+    /**
+     * 受监控频道的静默时间
+     * @return <主机/频道ID,距最近一条消息的毫秒数>
+     */
+    public static Map<String, Long> staleness() {
+        Map<String, Long> result = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (NettyStreamingService<?> service : SERVICES) {
+            service.collectStaleness(now, result);
+        }
+        return result;
+    }
+
+    public static long getResubscribes() {
+        return RESUBSCRIBES.get();
+    }
+
+    public static long getReconnects() {
+        return RECONNECTS.get();
+    }
+}
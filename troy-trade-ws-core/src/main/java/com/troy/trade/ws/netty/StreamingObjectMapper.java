@@ -0,0 +1,22 @@
+package com.troy.trade.ws.netty;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 交易所ws消息共享的ObjectMapper
+ * ObjectMapper线程安全且创建成本高（序列化器缓存），所有交易所ws客户端共用一个预配置实例；
+ * 消息只解析一次成JsonNode，绑定DTO时通过treeToValue直接从JsonNode读取，不再 JsonNode -> String -> DTO
+ */
+public final class StreamingObjectMapper {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private StreamingObjectMapper() {
+    }
+
+    public static ObjectMapper get() {
+        return MAPPER;
+    }
+}
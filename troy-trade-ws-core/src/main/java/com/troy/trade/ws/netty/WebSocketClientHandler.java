@@ -1,7 +1,6 @@
 package com.troy.trade.ws.netty;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.websocketx.*;
@@ -9,21 +8,21 @@ import io.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.Inflater;
+import java.nio.channels.ClosedChannelException;
 
 public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object> {
     private static final Logger LOG = LoggerFactory.getLogger(WebSocketClientHandler.class);
 
     public interface WebSocketMessageHandler {
         public void onMessage(String message);
+
+        /**
+         * 直接处理帧内容（UTF-8 json），默认转为字符串
+         * @param content 帧内容，仅在回调内有效
+         */
+        default void onMessage(ByteBuf content) {
+            onMessage(content.toString(CharsetUtil.UTF_8));
+        }
     }
 
     private final WebSocketClientHandshaker handshaker;
@@ -52,6 +51,8 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         LOG.info("WebSocket Client disconnected!");
+        //握手完成前断开，连接结果为失败，避免connect一直不结束
+        handshakeFuture.tryFailure(new ClosedChannelException());
     }
 
     @Override
@@ -75,31 +76,14 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         }
 
         WebSocketFrame frame = (WebSocketFrame) msg;
-        if (frame instanceof TextWebSocketFrame) {
-            TextWebSocketFrame textFrame = (TextWebSocketFrame) frame;
-            handler.onMessage(textFrame.text());
-        } else if (frame instanceof BinaryWebSocketFrame) {
-            ByteBuf content = frame.content();
-            if (!frame.isFinalFragment()) {
-                byte[] bytes = new byte[content.readableBytes()];
-                for (int i = 0; i < content.readableBytes(); i++) {
-                    bytes[i] = content.getByte(i);
-                }
-                LOG.info("======================not FinalFragment======================");
-            }
-            if(ch.remoteAddress().toString().contains("okex")){
-                String message  = uncompress(content);
-                handler.onMessage(message);
-            }else{
-                byte[] bytes = new byte[content.readableBytes()];
-                for (int i = 0; i < content.readableBytes(); i++) {
-                    bytes[i] = content.getByte(i);
-                }
-                bytes = uncompress(bytes);
-                handler.onMessage(byteBufferToString(ByteBuffer.wrap(bytes)));
-            }
+        if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+            // 压缩的二进制帧已由InflateWebSocketFrameDecoder解压为文本帧
+            handler.onMessage(frame.content());
         } else if (frame instanceof ContinuationWebSocketFrame) {
             LOG.info("======================ContinuationWebSocketFrame======================");
+        } else if (frame instanceof PingWebSocketFrame) {
+            // 服务端心跳（如Binance），原样回复pong，否则服务端会断开连接
+            ch.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
         } else if (frame instanceof PongWebSocketFrame) {
             LOG.debug("WebSocket Client received pong");
         } else if (frame instanceof CloseWebSocketFrame) {
@@ -116,60 +100,4 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
         }
         ctx.close();
     }
-
-    public byte[] uncompress(byte[] bytes) {
-        if (bytes == null || bytes.length == 0) {
-            return null;
-        }
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-        try {
-            GZIPInputStream ungzip = new GZIPInputStream(in);
-            byte[] buffer = new byte[256];
-            int n;
-            while ((n = ungzip.read(buffer)) >= 0) {
-                out.write(buffer, 0, n);
-            }
-        } catch (IOException e) {
-            LOG.error("gzip uncompress error.", e);
-        }
-
-        return out.toByteArray();
-    }
-    // 解压函数
-    public String uncompress(ByteBuf byteBuf){
-        byte [] temp = new byte[byteBuf.readableBytes()];
-        ByteBufInputStream bis = new ByteBufInputStream(byteBuf);
-        StringBuilder appender = new StringBuilder();
-        try {
-            bis.read(temp);
-            bis.close();
-            Inflater infl = new Inflater(true);
-            infl.setInput(temp,0,temp.length);
-            byte [] result = new byte[1024];
-            while (!infl.finished()){
-                int length = infl.inflate(result);
-                appender.append(new String(result,0,length,"UTF-8"));
-            }
-            infl.end();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return appender.toString();
-    }
-
-    //buffer转String
-    public static String byteBufferToString(ByteBuffer buffer) {
-        CharBuffer charBuffer = null;
-        try {
-            Charset charset = Charset.forName("ISO-8859-1");
-            CharsetDecoder decoder = charset.newDecoder();
-            charBuffer = decoder.decode(buffer);
-            buffer.flip();
-            return charBuffer.toString();
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return null;
-        }
-    }
-}
\ No newline at end of file
+}
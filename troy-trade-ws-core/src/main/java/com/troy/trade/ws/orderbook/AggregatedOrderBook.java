@@ -0,0 +1,157 @@
+package com.troy.trade.ws.orderbook;
+
+import com.troy.trade.ws.enums.OrderTypeEnum;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 可按价格档位聚合的本地盘口
+ * 交易所只订阅一份不聚合的原始盘口，各聚合档位（如0.1、0.01）由本地计算：
+ * 买盘价格向下取整到档位，卖盘价格向上取整到档位（聚合后不会显示比实际更优的价格），同一档位数量累加；
+ * 聚合视图在首次读取时由原始盘口建立，之后随每次更新按数量变化量增量维护，更新开销与视图数成正比
+ * 非线程安全，由所属连接的IO线程更新和读取
+ */
+public class AggregatedOrderBook extends LocalOrderBook {
+
+    /**
+     * <定点档位,聚合视图>
+     */
+    private final Map<Long, LocalOrderBook> views = new HashMap<>();
+
+    public AggregatedOrderBook() {
+        super();
+    }
+
+    /**
+     * @param priceScale 价格小数位数
+     * @param sizeScale 数量小数位数
+     */
+    public AggregatedOrderBook(int priceScale, int sizeScale) {
+        super(priceScale, sizeScale);
+    }
+
+    /**
+     * 按档位聚合的盘口视图，只读
+     * @param step 价格档位，如0.1；为null、0或不超过最小价格单位时返回原始盘口
+     * @return
+     */
+    public LocalOrderBook view(BigDecimal step) {
+        if (step == null || step.stripTrailingZeros().scale() > getPriceScale()) {//比最小价格单位还细，不聚合
+            return this;
+        }
+        long scaledStep = Decimals.toScaled(step, getPriceScale());
+        if (scaledStep <= 1L) {
+            return this;
+        }
+        LocalOrderBook view = views.get(scaledStep);
+        if (view == null) {
+            view = new LocalOrderBook(getPriceScale(), getSizeScale());
+            aggregate(getAsks(), view.getAsks(), scaledStep);
+            aggregate(getBids(), view.getBids(), scaledStep);
+            view.setTimestamp(getTimestamp());
+            views.put(scaledStep, view);
+        }
+        return view;
+    }
+
+    @Override
+    public boolean update(OrderTypeEnum side, long price, long size) {
+        BookSide bookSide = getSide(side);
+        long delta = views.isEmpty() ? 0L : size - bookSide.sizeAt(price);
+        if (!super.update(side, price, size)) {
+            return false;
+        }
+        for (Map.Entry<Long, LocalOrderBook> entry : views.entrySet()) {
+            add(entry.getValue().getSide(side), price, delta, entry.getKey());
+        }
+        return true;
+    }
+
+    /**
+     * 买卖盘只保留最优的maxDepth档，截掉的档位同时从聚合视图中扣除
+     * @param maxDepth
+     */
+    public void truncate(int maxDepth) {
+        truncate(OrderTypeEnum.ASK, maxDepth);
+        truncate(OrderTypeEnum.BID, maxDepth);
+    }
+
+    private void truncate(OrderTypeEnum side, int maxDepth) {
+        BookSide bookSide = getSide(side);
+        for (Map.Entry<Long, LocalOrderBook> entry : views.entrySet()) {
+            BookSide viewSide = entry.getValue().getSide(side);
+            for (int i = Math.max(maxDepth, 0); i < bookSide.depth(); i++) {
+                add(viewSide, bookSide.price(i), -bookSide.size(i), entry.getKey());
+            }
+        }
+        bookSide.truncate(maxDepth);
+    }
+
+    /**
+     * 小数位数变化后聚合视图的定点档位失效，下次读取时重建
+     */
+    @Override
+    public void rescale(int priceScale, int sizeScale) {
+        super.rescale(priceScale, sizeScale);
+        views.clear();
+    }
+
+    @Override
+    public void setTimestamp(long timestamp) {
+        super.setTimestamp(timestamp);
+        for (LocalOrderBook view : views.values()) {
+            view.setTimestamp(timestamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (LocalOrderBook view : views.values()) {
+            view.clear();
+        }
+    }
+
+    @Override
+    public void copyFrom(LocalOrderBook other) {
+        if (other.getPriceScale() != getPriceScale() || other.getSizeScale() != getSizeScale()) {
+            views.clear();
+        }
+        super.copyFrom(other);
+        for (Map.Entry<Long, LocalOrderBook> entry : views.entrySet()) {
+            LocalOrderBook view = entry.getValue();
+            view.clear();
+            aggregate(getAsks(), view.getAsks(), entry.getKey());
+            aggregate(getBids(), view.getBids(), entry.getKey());
+            view.setTimestamp(getTimestamp());
+        }
+    }
+
+    /**
+     * 价格所在档位：买盘向下取整，卖盘向上取整
+     * @param bid
+     * @param price 定点价格
+     * @param step 定点档位
+     * @return
+     */
+    static long bucket(boolean bid, long price, long step) {
+        return bid ? Math.floorDiv(price, step) * step : -Math.floorDiv(-price, step) * step;
+    }
+
+    private static void aggregate(BookSide source, BookSide target, long step) {
+        //从最差价到最优价遍历，同一档位在target中依次累加
+        for (int i = source.depth() - 1; i >= 0; i--) {
+            add(target, source.price(i), source.size(i), step);
+        }
+    }
+
+    private static void add(BookSide side, long price, long delta, long step) {
+        if (delta == 0L) {
+            return;
+        }
+        long bucket = bucket(side.isBid(), price, step);
+        side.update(bucket, side.sizeAt(bucket) + delta);
+    }
+}
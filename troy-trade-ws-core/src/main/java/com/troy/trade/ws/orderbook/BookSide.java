@@ -0,0 +1,242 @@
+package com.troy.trade.ws.orderbook;
+
+import java.util.Arrays;
+
+/**
+ * 盘口单边（买盘或卖盘）
+ * 价格、数量为定点long，存放在两个有序基本类型数组中，数组按 最差价 -> 最优价 排列，
+ * 最优价在数组尾部：行情变动大多发生在盘口顶部，插入删除时System.arraycopy移动的元素很少；
+ * 查找为二分O(log n)，更新不创建对象（仅容量不足时扩容）
+ * 对外以档位序号访问，0为最优价，读取不复制数据
+ * 非线程安全，由所属连接的IO线程更新和读取
+ */
+public final class BookSide {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * true-买盘（价格越高越优），false-卖盘（价格越低越优）
+     */
+    private final boolean bid;
+    private long[] prices;
+    private long[] sizes;
+    private int depth;
+
+    public BookSide(boolean bid) {
+        this(bid, DEFAULT_CAPACITY);
+    }
+
+    public BookSide(boolean bid, int capacity) {
+        this.bid = bid;
+        this.prices = new long[Math.max(capacity, 1)];
+        this.sizes = new long[Math.max(capacity, 1)];
+    }
+
+    public boolean isBid() {
+        return bid;
+    }
+
+    /**
+     * 档位数
+     * @return
+     */
+    public int depth() {
+        return depth;
+    }
+
+    public boolean isEmpty() {
+        return depth == 0;
+    }
+
+    /**
+     * 第level档价格
+     * @param level 0-最优价
+     * @return
+     */
+    public long price(int level) {
+        return prices[index(level)];
+    }
+
+    /**
+     * 第level档数量
+     * @param level 0-最优价
+     * @return
+     */
+    public long size(int level) {
+        return sizes[index(level)];
+    }
+
+    /**
+     * 最优价，无挂单时返回0
+     * @return
+     */
+    public long bestPrice() {
+        return depth == 0 ? 0L : prices[depth - 1];
+    }
+
+    /**
+     * 价格所在档位
+     * @param price
+     * @return 0-最优价，不存在返回-1
+     */
+    public int levelOf(long price) {
+        int i = search(price);
+        return i < 0 ? -1 : depth - 1 - i;
+    }
+
+    /**
+     * 价格对应的数量，不存在返回0
+     * @param price
+     * @return
+     */
+    public long sizeAt(long price) {
+        int i = search(price);
+        return i < 0 ? 0L : sizes[i];
+    }
+
+    /**
+     * 更新一档，数量为0时删除该价格
+     * @param price 定点价格
+     * @param size 定点数量
+     * @return 盘口是否发生变化
+     */
+    public boolean update(long price, long size) {
+        int i = search(price);
+        if (i >= 0) {
+            if (size == 0) {
+                remove(i);
+                return true;
+            }
+            if (sizes[i] == size) {
+                return false;
+            }
+            sizes[i] = size;
+            return true;
+        }
+        if (size == 0) {
+            return false;
+        }
+        insert(-i - 1, price, size);
+        return true;
+    }
+
+    /**
+     * 只保留最优的maxDepth档
+     * @param maxDepth
+     */
+    public void truncate(int maxDepth) {
+        if (maxDepth >= depth) {
+            return;
+        }
+        int drop = depth - Math.max(maxDepth, 0);
+        System.arraycopy(prices, drop, prices, 0, depth - drop);
+        System.arraycopy(sizes, drop, sizes, 0, depth - drop);
+        depth -= drop;
+    }
+
+    public void clear() {
+        depth = 0;
+    }
+
+    /**
+     * 复制另一侧盘口的全部档位（两侧须同为买盘或卖盘）
+     * @param other
+     */
+    public void copyFrom(BookSide other) {
+        if (prices.length < other.depth) {
+            prices = new long[other.prices.length];
+            sizes = new long[other.prices.length];
+        }
+        System.arraycopy(other.prices, 0, prices, 0, other.depth);
+        System.arraycopy(other.sizes, 0, sizes, 0, other.depth);
+        depth = other.depth;
+    }
+
+    /**
+     * 改变定点值的小数位数（整体乘或除以10的n次方），顺序不变
+     * 不能精确表示时抛出异常，盘口保持不变
+     * @param priceShift 价格小数位数的变化，正数加大，负数减小
+     * @param sizeShift 数量小数位数的变化
+     * @throws ArithmeticException 超出long范围，或减小位数时有非0位被舍去
+     */
+    public void rescale(int priceShift, int sizeShift) {
+        long[] newPrices = rescale(prices, priceShift);
+        long[] newSizes = rescale(sizes, sizeShift);
+        prices = newPrices;
+        sizes = newSizes;
+    }
+
+    private long[] rescale(long[] values, int shift) {
+        if (shift == 0) {
+            return values;
+        }
+        long factor = Decimals.pow10(Math.abs(shift));
+        long[] result = new long[values.length];
+        for (int i = 0; i < depth; i++) {
+            if (shift > 0) {
+                result[i] = Math.multiplyExact(values[i], factor);
+            } else if (values[i] % factor != 0L) {
+                throw new ArithmeticException("Rescale loses precision: " + values[i] + " / " + factor);
+            } else {
+                result[i] = values[i] / factor;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 二分查找，数组按 最差价 -> 最优价 排列
+     * @param price
+     * @return 找到返回数组下标，否则返回 -(插入位置 + 1)
+     */
+    private int search(long price) {
+        int low = 0;
+        int high = depth - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midPrice = prices[mid];
+            if (midPrice == price) {
+                return mid;
+            }
+            //买盘升序（尾部最高价），卖盘降序（尾部最低价）
+            if (bid == midPrice < price) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insert(int i, long price, long size) {
+        if (depth == prices.length) {
+            int capacity = prices.length << 1;
+            prices = Arrays.copyOf(prices, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        int moved = depth - i;
+        if (moved > 0) {
+            System.arraycopy(prices, i, prices, i + 1, moved);
+            System.arraycopy(sizes, i, sizes, i + 1, moved);
+        }
+        prices[i] = price;
+        sizes[i] = size;
+        depth++;
+    }
+
+    private void remove(int i) {
+        int moved = depth - i - 1;
+        if (moved > 0) {
+            System.arraycopy(prices, i + 1, prices, i, moved);
+            System.arraycopy(sizes, i + 1, sizes, i, moved);
+        }
+        depth--;
+    }
+
+    private int index(int level) {
+        if (level < 0 || level >= depth) {
+            throw new IndexOutOfBoundsException("level: " + level + ", depth: " + depth);
+        }
+        return depth - 1 - level;
+    }
+}
@@ -0,0 +1,184 @@
+package com.troy.trade.ws.orderbook;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 定点小数工具
+ * 价格、数量以 long 存储：实际值 = 定点值 / 10^scale
+ * 转换不做任何舍入：超出小数位数的非0位、超出long范围均抛出{@link ArithmeticException}，
+ * 由调用方换用合适的小数位数（见{@link #fitScale}）或改走原有的非定点路径
+ */
+public final class Decimals {
+
+    /**
+     * 默认小数位数，long 可表示到 9.2 * 10^10
+     */
+    public static final int DEFAULT_SCALE = 8;
+
+    /**
+     * 整数位数 + 小数位数不超过18时一定在long范围内
+     */
+    public static final int MAX_DIGITS = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private Decimals() {
+    }
+
+    /**
+     * 10的n次方
+     * @param n 0-18
+     * @return
+     */
+    public static long pow10(int n) {
+        return POWERS_OF_TEN[n];
+    }
+
+    /**
+     * BigDecimal转定点值
+     * @param value
+     * @param scale 小数位数
+     * @return
+     * @throws ArithmeticException 超出小数位数的部分不为0，或超出long范围
+     */
+    public static long toScaled(BigDecimal value, int scale) {
+        return value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    /**
+     * 能精确表示value的小数位数，尽量接近当前小数位数：
+     * 小数位数不够时加大到value所需的位数，超出long范围时减小到整数部分放得下的位数
+     * @param value
+     * @param scale 当前小数位数
+     * @return
+     * @throws ArithmeticException 有效位数超过{@link #MAX_DIGITS}，任何小数位数都无法精确表示
+     */
+    public static int fitScale(BigDecimal value, int scale) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        int required = Math.max(stripped.scale(), 0);
+        int max = MAX_DIGITS - Math.max(stripped.precision() - stripped.scale(), 0);
+        if (required > max) {
+            throw new ArithmeticException("Decimal out of fixed-point range: " + value.toPlainString());
+        }
+        return Math.min(Math.max(scale, required), max);
+    }
+
+    /**
+     * 十进制字符串转定点值，不创建BigDecimal
+     * 支持 "123"、"-0.5"、"1.2300"（超出小数位数的0忽略），科学计数法交给BigDecimal解析
+     * @param value
+     * @param scale 小数位数
+     * @return
+     * @throws ArithmeticException 超出小数位数的部分不为0，或超出long范围
+     */
+    public static long parse(CharSequence value, int scale) {
+        int length = value.length();
+        if (length == 0) {
+            throw new NumberFormatException("Empty decimal");
+        }
+        int index = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            index++;
+        }
+        long result = 0;
+        int fractionDigits = -1;
+        boolean digits = false;
+        for (; index < length; index++) {
+            char c = value.charAt(index);
+            if (c == '.') {
+                if (fractionDigits >= 0) {
+                    throw new NumberFormatException("Invalid decimal: " + value);
+                }
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                if (c == 'e' || c == 'E') {
+                    return toScaled(new BigDecimal(value.toString()), scale);
+                }
+                throw new NumberFormatException("Invalid decimal: " + value);
+            }
+            digits = true;
+            if (fractionDigits >= 0) {
+                if (fractionDigits == scale) {
+                    if (c != '0') {
+                        throw new ArithmeticException("Decimal exceeds scale " + scale + ": " + value);
+                    }
+                    continue;
+                }
+                fractionDigits++;
+            }
+            result = Math.addExact(Math.multiplyExact(result, 10L), c - '0');
+        }
+        if (!digits) {
+            throw new NumberFormatException("Invalid decimal: " + value);
+        }
+        int missing = scale - Math.max(fractionDigits, 0);
+        if (missing > 0) {
+            result = Math.multiplyExact(result, POWERS_OF_TEN[missing]);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * 定点值转BigDecimal
+     * @param scaled
+     * @param scale
+     * @return
+     */
+    public static BigDecimal toBigDecimal(long scaled, int scale) {
+        return BigDecimal.valueOf(scaled, scale);
+    }
+
+    /**
+     * 定点值转字符串，去掉末尾的0，等同于 stripTrailingZeros().toPlainString()
+     * @param scaled
+     * @param scale
+     * @return
+     */
+    public static String toPlainString(long scaled, int scale) {
+        StringBuilder sb = new StringBuilder(24);
+        appendPlain(sb, scaled, scale);
+        return sb.toString();
+    }
+
+    /**
+     * 定点值追加到StringBuilder，去掉末尾的0
+     * @param sb
+     * @param scaled
+     * @param scale
+     */
+    public static void appendPlain(StringBuilder sb, long scaled, int scale) {
+        if (scaled < 0) {
+            sb.append('-');
+            scaled = -scaled;
+        }
+        long unit = POWERS_OF_TEN[scale];
+        sb.append(scaled / unit);
+        long fraction = scaled % unit;
+        if (fraction == 0) {
+            return;
+        }
+        int digits = scale;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        sb.append('.');
+        for (long p = POWERS_OF_TEN[digits - 1]; p > fraction; p /= 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
@@ -0,0 +1,134 @@
+package com.troy.trade.ws.orderbook;
+
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 盘口单边前N档的深度视图：价格、数量、累计数量
+ * 直接读取{@link BookSide}的定点数组，不复制档位；累计数量在首次读取某档时才计算（只算到该档），
+ * 开销只与实际读取的档数有关
+ * 视图创建后盘口更新则失效，须在同一线程内读完（与盘口的读写线程一致）
+ */
+public final class DepthView {
+
+    private final BookSide side;
+    private final int priceScale;
+    private final int sizeScale;
+    private final int depth;
+    /**
+     * 定点累计数量，已计算到computed档（不含）
+     */
+    private long[] cumulative;
+    private int computed;
+
+    /**
+     * @param side 盘口单边
+     * @param priceScale 价格小数位数
+     * @param sizeScale 数量小数位数
+     * @param depth 最多档数
+     */
+    public DepthView(BookSide side, int priceScale, int sizeScale, int depth) {
+        this.side = side;
+        this.priceScale = priceScale;
+        this.sizeScale = sizeScale;
+        this.depth = Math.max(Math.min(depth, side.depth()), 0);
+    }
+
+    public boolean isBid() {
+        return side.isBid();
+    }
+
+    /**
+     * 视图档数（不超过盘口档数）
+     * @return
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * 第level档定点价格
+     * @param level 0-最优价
+     * @return
+     */
+    public long price(int level) {
+        checkLevel(level);
+        return side.price(level);
+    }
+
+    /**
+     * 第level档定点数量
+     * @param level 0-最优价
+     * @return
+     */
+    public long size(int level) {
+        checkLevel(level);
+        return side.size(level);
+    }
+
+    /**
+     * 最优价到第level档（含）的定点累计数量
+     * @param level 0-最优价
+     * @return
+     */
+    public long cumulativeSize(int level) {
+        checkLevel(level);
+        if (level >= computed) {
+            if (cumulative == null) {
+                cumulative = new long[depth];
+            }
+            long sum = computed == 0 ? 0L : cumulative[computed - 1];
+            for (int i = computed; i <= level; i++) {
+                sum += side.size(i);
+                cumulative[i] = sum;
+            }
+            computed = level + 1;
+        }
+        return cumulative[level];
+    }
+
+    public BigDecimal getPrice(int level) {
+        return Decimals.toBigDecimal(price(level), priceScale);
+    }
+
+    public BigDecimal getSize(int level) {
+        return Decimals.toBigDecimal(size(level), sizeScale);
+    }
+
+    public BigDecimal getCumulativeSize(int level) {
+        return Decimals.toBigDecimal(cumulativeSize(level), sizeScale);
+    }
+
+    /**
+     * 转为带累计数量的{@link LimitOrder}，序号从最优价起为1、2、3...
+     * @param currencyPair
+     * @param bestFirst true-最优价在前，false-最差价在前（如前端卖盘 高-低 显示）
+     * @param date
+     * @return
+     */
+    public List<LimitOrder> toLimitOrders(CurrencyPair currencyPair, boolean bestFirst, Date date) {
+        if (depth == 0) {
+            return new ArrayList<>(0);
+        }
+        OrderTypeEnum type = side.isBid() ? OrderTypeEnum.BID : OrderTypeEnum.ASK;
+        LimitOrder[] orders = new LimitOrder[depth];
+        for (int i = 0; i < depth; i++) {
+            orders[bestFirst ? i : depth - 1 - i] = new LimitOrder(type, getSize(i), getCumulativeSize(i), currencyPair,
+                    String.valueOf(i + 1), date, getPrice(i));
+        }
+        return new ArrayList<>(Arrays.asList(orders));
+    }
+
+    private void checkLevel(int level) {
+        if (level < 0 || level >= depth) {
+            throw new IndexOutOfBoundsException("level: " + level + ", depth: " + depth);
+        }
+    }
+}
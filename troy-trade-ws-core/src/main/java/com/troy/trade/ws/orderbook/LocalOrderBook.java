@@ -0,0 +1,243 @@
+package com.troy.trade.ws.orderbook;
+
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 本地盘口
+ * 各交易所共用的盘口实现，价格、数量以定点long存储（见{@link Decimals}），
+ * 买卖盘为{@link BookSide}，更新O(log n)且不创建对象，按档位读取前N档不复制数据
+ * 小数位数按交易对自适应：收到当前位数无法精确表示的价格或数量时整体换算到能表示的位数（见{@link #rescale}），
+ * 不做舍入；所有档位都无法用同一位数表示时抛出{@link ArithmeticException}，由调用方重新同步或改走非定点路径
+ * 非线程安全，由所属连接的IO线程更新和读取
+ */
+public class LocalOrderBook {
+
+    private int priceScale;
+    private int sizeScale;
+    private final BookSide asks;
+    private final BookSide bids;
+    /**
+     * 交易所时间戳（毫秒），未提供时为0
+     */
+    private long timestamp;
+
+    public LocalOrderBook() {
+        this(Decimals.DEFAULT_SCALE, Decimals.DEFAULT_SCALE);
+    }
+
+    /**
+     * @param priceScale 价格小数位数
+     * @param sizeScale 数量小数位数
+     */
+    public LocalOrderBook(int priceScale, int sizeScale) {
+        this.priceScale = priceScale;
+        this.sizeScale = sizeScale;
+        this.asks = new BookSide(false);
+        this.bids = new BookSide(true);
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public int getSizeScale() {
+        return sizeScale;
+    }
+
+    public BookSide getAsks() {
+        return asks;
+    }
+
+    public BookSide getBids() {
+        return bids;
+    }
+
+    public BookSide getSide(OrderTypeEnum side) {
+        return side == OrderTypeEnum.ASK ? asks : bids;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 更新一档，数量为0时删除
+     * @param side
+     * @param price 定点价格
+     * @param size 定点数量
+     * @return 盘口是否发生变化
+     */
+    public boolean update(OrderTypeEnum side, long price, long size) {
+        return getSide(side).update(price, size);
+    }
+
+    /**
+     * 更新一档，数量为0时删除
+     * @param side
+     * @param price 价格字符串
+     * @param size 数量字符串
+     * @return 盘口是否发生变化
+     * @throws ArithmeticException 无法与已有档位用同一小数位数精确表示
+     */
+    public boolean update(OrderTypeEnum side, CharSequence price, CharSequence size) {
+        long scaledPrice;
+        long scaledSize;
+        try {
+            scaledPrice = Decimals.parse(price, priceScale);
+            scaledSize = Decimals.parse(size, sizeScale);
+        } catch (ArithmeticException e) {
+            return update(side, new BigDecimal(price.toString()), new BigDecimal(size.toString()));
+        }
+        return update(side, scaledPrice, scaledSize);
+    }
+
+    /**
+     * 更新一档，数量为0时删除
+     * @param side
+     * @param price
+     * @param size
+     * @return 盘口是否发生变化
+     * @throws ArithmeticException 无法与已有档位用同一小数位数精确表示
+     */
+    public boolean update(OrderTypeEnum side, BigDecimal price, BigDecimal size) {
+        long scaledPrice;
+        long scaledSize;
+        try {
+            scaledPrice = Decimals.toScaled(price, priceScale);
+            scaledSize = Decimals.toScaled(size, sizeScale);
+        } catch (ArithmeticException e) {
+            rescale(Decimals.fitScale(price, priceScale), Decimals.fitScale(size, sizeScale));
+            scaledPrice = Decimals.toScaled(price, priceScale);
+            scaledSize = Decimals.toScaled(size, sizeScale);
+        }
+        return update(side, scaledPrice, scaledSize);
+    }
+
+    /**
+     * 将已有档位换算到新的小数位数
+     * @param priceScale 价格小数位数
+     * @param sizeScale 数量小数位数
+     * @throws ArithmeticException 已有档位无法用新的位数精确表示，盘口保持不变
+     */
+    public void rescale(int priceScale, int sizeScale) {
+        if (priceScale == this.priceScale && sizeScale == this.sizeScale) {
+            return;
+        }
+        int priceShift = priceScale - this.priceScale;
+        int sizeShift = sizeScale - this.sizeScale;
+        asks.rescale(priceShift, sizeShift);
+        try {
+            bids.rescale(priceShift, sizeShift);
+        } catch (ArithmeticException e) {
+            //换算是精确的，反向换算可还原卖盘
+            asks.rescale(-priceShift, -sizeShift);
+            throw e;
+        }
+        this.priceScale = priceScale;
+        this.sizeScale = sizeScale;
+    }
+
+    /**
+     * 清空盘口（收到全量快照前调用）
+     */
+    public void clear() {
+        asks.clear();
+        bids.clear();
+        timestamp = 0L;
+    }
+
+    /**
+     * 复制另一个盘口的全部档位及小数位数
+     * @param other
+     */
+    public void copyFrom(LocalOrderBook other) {
+        asks.copyFrom(other.asks);
+        bids.copyFrom(other.bids);
+        priceScale = other.priceScale;
+        sizeScale = other.sizeScale;
+        timestamp = other.timestamp;
+    }
+
+    public BigDecimal price(OrderTypeEnum side, int level) {
+        return Decimals.toBigDecimal(getSide(side).price(level), priceScale);
+    }
+
+    public BigDecimal size(OrderTypeEnum side, int level) {
+        return Decimals.toBigDecimal(getSide(side).size(level), sizeScale);
+    }
+
+    /**
+     * 前N档转为推送格式 [[价格, 数量], ...]，价格数量去掉末尾的0
+     * @param side
+     * @param depth 档数
+     * @return
+     */
+    public List<List<String>> toLevels(OrderTypeEnum side, int depth) {
+        BookSide bookSide = getSide(side);
+        int n = Math.min(depth, bookSide.depth());
+        List<List<String>> levels = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            List<String> level = new ArrayList<>(2);
+            level.add(Decimals.toPlainString(bookSide.price(i), priceScale));
+            level.add(Decimals.toPlainString(bookSide.size(i), sizeScale));
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    /**
+     * 前N档转为{@link OrderBook}，兼容原有的推送转换
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    public OrderBook toOrderBook(int depth, CurrencyPair currencyPair) {
+        Date date = timestamp > 0 ? new Date(timestamp) : null;
+        return new OrderBook(date, toLimitOrders(OrderTypeEnum.ASK, depth, currencyPair, date),
+                toLimitOrders(OrderTypeEnum.BID, depth, currencyPair, date));
+    }
+
+    /**
+     * 单边前N档的深度视图（含累计数量），见{@link DepthView}
+     * @param side
+     * @param depth 档数
+     * @return
+     */
+    public DepthView depthView(OrderTypeEnum side, int depth) {
+        return new DepthView(getSide(side), priceScale, sizeScale, depth);
+    }
+
+    /**
+     * 前N档转为前端盘口格式的{@link OrderBook}：带累计数量，序号从最优价起为1，
+     * 卖盘 高->低（最优价在后），买盘 高->低（最优价在前）
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    public OrderBook toDepthOrderBook(int depth, CurrencyPair currencyPair) {
+        return new OrderBook(new Date(), depthView(OrderTypeEnum.ASK, depth).toLimitOrders(currencyPair, false, null),
+                depthView(OrderTypeEnum.BID, depth).toLimitOrders(currencyPair, true, null));
+    }
+
+    private List<LimitOrder> toLimitOrders(OrderTypeEnum side, int depth, CurrencyPair currencyPair, Date date) {
+        BookSide bookSide = getSide(side);
+        int n = Math.min(depth, bookSide.depth());
+        List<LimitOrder> orders = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            orders.add(new LimitOrder(side, size(side, i), currencyPair, String.valueOf(i), date, price(side, i)));
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,94 @@
+package com.troy.trade.ws.orderbook;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BookSideTest {
+
+    @Test
+    public void bidsAreBestFirst() {
+        BookSide bids = new BookSide(true, 2);
+        bids.update(10, 1);
+        bids.update(12, 2);
+        bids.update(11, 3);
+
+        assertLevels(bids, 12, 2, 11, 3, 10, 1);
+        assertEquals(12, bids.bestPrice());
+        assertEquals(1, bids.levelOf(11));
+        assertEquals(-1, bids.levelOf(13));
+    }
+
+    @Test
+    public void asksAreBestFirst() {
+        BookSide asks = new BookSide(false);
+        asks.update(12, 2);
+        asks.update(10, 1);
+        asks.update(11, 3);
+
+        assertLevels(asks, 10, 1, 11, 3, 12, 2);
+        assertEquals(3, asks.sizeAt(11));
+        assertEquals(0, asks.sizeAt(13));
+    }
+
+    @Test
+    public void zeroSizeDeletesLevel() {
+        BookSide asks = new BookSide(false);
+        asks.update(10, 1);
+        asks.update(11, 3);
+
+        assertFalse(asks.update(12, 0));
+        assertFalse(asks.update(11, 3));
+        assertTrue(asks.update(10, 0));
+        assertLevels(asks, 11, 3);
+        assertTrue(asks.update(11, 0));
+        assertTrue(asks.isEmpty());
+        assertEquals(0, asks.bestPrice());
+    }
+
+    @Test
+    public void truncateKeepsBestLevels() {
+        BookSide bids = new BookSide(true);
+        for (int price = 1; price <= 5; price++) {
+            bids.update(price, price * 10);
+        }
+        bids.truncate(2);
+        assertLevels(bids, 5, 50, 4, 40);
+
+        bids.truncate(5);
+        assertLevels(bids, 5, 50, 4, 40);
+        bids.update(3, 30);
+        assertLevels(bids, 5, 50, 4, 40, 3, 30);
+
+        bids.truncate(0);
+        assertTrue(bids.isEmpty());
+    }
+
+    @Test
+    public void rescaleIsExactOrLeavesSideUnchanged() {
+        BookSide asks = new BookSide(false);
+        asks.update(150, 20);
+        asks.update(200, 1);
+
+        asks.rescale(1, 0);
+        assertLevels(asks, 1500, 20, 2000, 1);
+        try {
+            asks.rescale(0, -1);
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            //ok
+        }
+        assertLevels(asks, 1500, 20, 2000, 1);
+    }
+
+    private static void assertLevels(BookSide side, long... levels) {
+        assertEquals(levels.length / 2, side.depth());
+        for (int i = 0; i < side.depth(); i++) {
+            assertEquals(levels[i * 2], side.price(i));
+            assertEquals(levels[i * 2 + 1], side.size(i));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.troy.trade.ws.orderbook;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DecimalsTest {
+
+    @Test
+    public void parsesPlainDecimals() {
+        assertEquals(12300000000L, Decimals.parse("123", 8));
+        assertEquals(-50000000L, Decimals.parse("-0.5", 8));
+        assertEquals(123000000L, Decimals.parse("1.2300", 8));
+        assertEquals(1L, Decimals.parse("0.00000001", 8));
+        assertEquals(150000000L, Decimals.parse("1.5e0", 8));
+    }
+
+    @Test
+    public void trailingZerosBeyondScaleAreAccepted() {
+        assertEquals(123L, Decimals.parse("1.2300000000", 2));
+        assertEquals(123L, Decimals.toScaled(new BigDecimal("1.2300000000"), 2));
+    }
+
+    @Test
+    public void digitsBeyondScaleAreNotRounded() {
+        //四舍五入会把两个价格合并成一档、把很小的数量变成0（删除）
+        assertArithmetic(() -> Decimals.parse("0.000000004", 8));
+        assertArithmetic(() -> Decimals.parse("0.000000005", 8));
+        assertArithmetic(() -> Decimals.parse("1.123456789", 8));
+        assertArithmetic(() -> Decimals.toScaled(new BigDecimal("1.123456789"), 8));
+    }
+
+    @Test
+    public void overflowIsDetected() {
+        assertEquals(Long.MAX_VALUE, Decimals.parse("92233720368.54775807", 8));
+        assertArithmetic(() -> Decimals.parse("92233720368.54775808", 8));
+        assertArithmetic(() -> Decimals.parse("100000000000", 8));
+        assertArithmetic(() -> Decimals.toScaled(new BigDecimal("100000000000"), 8));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidInputIsRejected() {
+        Decimals.parse("1.2.3", 8);
+    }
+
+    @Test
+    public void fitScaleWidensOrNarrowsToRepresentValue() {
+        assertEquals(8, Decimals.fitScale(new BigDecimal("1.5"), 8));
+        assertEquals(12, Decimals.fitScale(new BigDecimal("0.000000001234"), 8));
+        //1千亿，整数12位，小数最多6位
+        assertEquals(6, Decimals.fitScale(new BigDecimal("100000000000"), 8));
+        assertArithmetic(() -> Decimals.fitScale(new BigDecimal("1000000000000.0000001"), 8));
+    }
+
+    @Test
+    public void plainStringStripsTrailingZeros() {
+        assertEquals("1.23", Decimals.toPlainString(123000000L, 8));
+        assertEquals("-0.00000001", Decimals.toPlainString(-1L, 8));
+        assertEquals("100", Decimals.toPlainString(10000000000L, 8));
+    }
+
+    private static void assertArithmetic(Runnable runnable) {
+        try {
+            runnable.run();
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            //ok
+        }
+    }
+}
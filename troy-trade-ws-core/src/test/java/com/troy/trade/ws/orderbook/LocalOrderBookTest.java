@@ -0,0 +1,54 @@
+package com.troy.trade.ws.orderbook;
+
+import com.troy.trade.ws.enums.OrderTypeEnum;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LocalOrderBookTest {
+
+    @Test
+    public void bookAdaptsScaleInsteadOfRounding() {
+        LocalOrderBook book = new LocalOrderBook();
+        book.update(OrderTypeEnum.BID, "0.00001234", "5");
+        book.update(OrderTypeEnum.BID, "0.000012341", "1");
+        book.update(OrderTypeEnum.BID, "0.000012344", "0.000000001");
+
+        assertEquals(9, book.getPriceScale());
+        assertEquals(9, book.getSizeScale());
+        assertEquals(3, book.getBids().depth());
+        assertEquals(0, new BigDecimal("0.000012344").compareTo(book.price(OrderTypeEnum.BID, 0)));
+        assertEquals(0, new BigDecimal("0.000000001").compareTo(book.size(OrderTypeEnum.BID, 0)));
+        assertEquals(0, new BigDecimal("5").compareTo(book.size(OrderTypeEnum.BID, 2)));
+    }
+
+    @Test
+    public void bookNarrowsScaleForLargeValues() {
+        LocalOrderBook book = new LocalOrderBook();
+        book.update(OrderTypeEnum.ASK, "0.00002", "1.5");
+        //数量超出8位小数下的long范围，换算到更小的位数
+        book.update(OrderTypeEnum.ASK, "0.00003", "123456789012");
+
+        assertEquals(6, book.getSizeScale());
+        assertEquals(0, new BigDecimal("1.5").compareTo(book.size(OrderTypeEnum.ASK, 0)));
+        assertEquals(0, new BigDecimal("123456789012").compareTo(book.size(OrderTypeEnum.ASK, 1)));
+    }
+
+    @Test
+    public void unrepresentableLevelLeavesBookUnchanged() {
+        LocalOrderBook book = new LocalOrderBook();
+        book.update(OrderTypeEnum.ASK, "10", "0.12345678");
+        try {
+            book.update(OrderTypeEnum.ASK, "11", "12345678901234");
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            //ok
+        }
+        assertEquals(8, book.getSizeScale());
+        assertEquals(1, book.getAsks().depth());
+        assertEquals(0, new BigDecimal("0.12345678").compareTo(book.size(OrderTypeEnum.ASK, 0)));
+    }
+}
@@ -1,6 +1,5 @@
 package com.troy.streamingfutures.huobi;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.troy.commons.exchange.model.enums.AliasEnum;
 import com.troy.streamingfutures.huobi.dto.*;
@@ -9,6 +8,7 @@ import com.troy.trade.ws.dto.Ticker;
 import com.troy.trade.ws.dto.Trade;
 import com.troy.trade.ws.dto.Trades;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import com.troy.trade.ws.streamingexchange.core.StreamingMarketDataService;
 import io.reactivex.Observable;
 import org.slf4j.Logger;
@@ -66,12 +66,11 @@ public class HuobiFuturesStreamingMarketDataService implements StreamingMarketDa
         //默认step0
         final String depthType = "step0";
 
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<HuobiFuturesDepthResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair, depthType})
-                .map(s -> mapper.readValue(s.toString(), HuobiFuturesDepthResult.class)
+                .map(s -> mapper.treeToValue(s, HuobiFuturesDepthResult.class)
                 );
 
         return subscribedChannel
@@ -95,11 +94,10 @@ public class HuobiFuturesStreamingMarketDataService implements StreamingMarketDa
 
         AliasEnum aliasEnum = args.length > 0 ? (AliasEnum)args[0] : AliasEnum.THIS_WEEK;
         String pair = getTradeSymbol(currencyPair.baseSymbol,aliasEnum);
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
         Observable<HuobiFuturesTickerResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
-                .map(s -> mapper.readValue(s.toString(), HuobiFuturesTickerResult.class));
+                .map(s -> mapper.treeToValue(s, HuobiFuturesTickerResult.class));
 
         return subscribedChannel
                 .map(s -> HuobiFuturesAdapters.adaptTicker(s.getResult(), currencyPair));
@@ -118,12 +116,11 @@ public class HuobiFuturesStreamingMarketDataService implements StreamingMarketDa
 
         AliasEnum aliasEnum = args.length > 0 ? (AliasEnum)args[0] : AliasEnum.THIS_WEEK;
         String pair = getTradeSymbol(currencyPair.baseSymbol,aliasEnum);
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<HuobiFuturesTradeResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
-                .map(s -> mapper.readValue(s.toString(), HuobiFuturesTradeResult.class));
+                .map(s -> mapper.treeToValue(s, HuobiFuturesTradeResult.class));
 
         return subscribedChannel
                 .map(s -> {
@@ -9,6 +9,7 @@ import com.troy.streamingfutures.huobi.dto.message.HuobiFuturesRequestMessage;
 import com.troy.streamingfutures.huobi.dto.message.HuobiFuturesSubscriptionMessage;
 import com.troy.streamingfutures.huobi.dto.message.HuobiFuturesUnSubscriptionMessage;
 import com.troy.trade.ws.netty.JsonNettyStreamingService;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -38,20 +39,13 @@ public class HuobiFuturesStreamingService extends JsonNettyStreamingService {
         return null;
     }
 
+    /**
+     * 消息不是批量数组，整条消息直接处理
+     *
+     * @param jsonNode
+     */
     @Override
-    public void messageHandler(String message) {
-        LOG.debug("Received message: {}", message);
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode;
-
-        // Parse incoming message to JSON
-        try {
-            jsonNode = objectMapper.readTree(message);
-        } catch (IOException e) {
-            LOG.error("Error parsing incoming message to JSON: {}", message);
-            return;
-        }
-
+    protected void handleJsonMessage(JsonNode jsonNode) {
         handleMessage(jsonNode);
     }
 
@@ -73,7 +67,7 @@ public class HuobiFuturesStreamingService extends JsonNettyStreamingService {
             String hb = message.get("ping").asText();
             LOG.debug("Heart beating内容:{}", hb);
             HuobiFuturesPongMessage huobiPongMessage = new HuobiFuturesPongMessage(Long.valueOf(hb));
-            ObjectMapper objectMapper = new ObjectMapper();
+            ObjectMapper objectMapper = StreamingObjectMapper.get();
             try {
                 sendMessage(objectMapper.writeValueAsString(huobiPongMessage));
             } catch (JsonProcessingException e) {
@@ -109,6 +103,14 @@ public class HuobiFuturesStreamingService extends JsonNettyStreamingService {
         }
     }
 
+    /**
+     * 盘口频道持续有推送，长时间静默视为失效；心跳由服务端发起（ping/pong）
+     */
+    @Override
+    protected long getChannelStaleTimeout(String channelName) {
+        return HuobiFuturesConstant.MARKET_DEPTH_SUB_FORMATE.equals(channelName) ? DEPTH_STALE_TIMEOUT : 0L;
+    }
+
     /**
      *
      * @param channelName
@@ -152,7 +154,7 @@ public class HuobiFuturesStreamingService extends JsonNettyStreamingService {
                 new HuobiFuturesSubscriptionMessage(sub, requestId);
         if (subscribeMessage == null) throw new IOException("SubscribeMessage: Insufficient arguments");
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(subscribeMessage);
     }
 
@@ -162,7 +164,7 @@ public class HuobiFuturesStreamingService extends JsonNettyStreamingService {
         String requestId = String.valueOf(ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE));
         HuobiFuturesUnSubscriptionMessage subscribeMessage =
                 new HuobiFuturesUnSubscriptionMessage(channelId, requestId);
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(subscribeMessage);
     }
 
@@ -1,7 +1,7 @@
 package com.troy.streamingfutures.okex;
 
 import com.alibaba.fastjson.JSONArray;
-import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.troy.streamingfutures.okex.dto.OkexFuturesOrderbook;
@@ -14,6 +14,7 @@ import com.troy.trade.ws.dto.Ticker;
 import com.troy.trade.ws.dto.Trade;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
 import com.troy.trade.ws.enums.OrderTypeEnum;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import com.troy.trade.ws.streamingexchange.core.StreamingMarketDataService;
 import io.reactivex.Observable;
 import org.slf4j.Logger;
@@ -21,10 +22,14 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OkexFuturesStreamingMarketDataService implements StreamingMarketDataService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    //全量推送的action，之后为update增量
+    private static final String PARTIAL = "partial";
+
     private final OkexFuturesStreamingService service;
 
     /**
@@ -32,12 +37,15 @@ public class OkexFuturesStreamingMarketDataService implements StreamingMarketDat
      */
     private final static int MAX_DEPTH_SIZE = 30;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper mapper = StreamingObjectMapper.get();
     private final Map<String, OkexFuturesOrderbook> orderbooks = new HashMap<>();
+    /**
+     * 盘口校验失败次数
+     */
+    private final AtomicLong checksumMismatches = new AtomicLong();
 
     OkexFuturesStreamingMarketDataService(OkexFuturesStreamingService service) {
         this.service = service;
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
     /**
@@ -52,40 +60,73 @@ public class OkexFuturesStreamingMarketDataService implements StreamingMarketDat
         String instrumentId = (String) args[1];
         String channel = String.format("futures/depth:%s", instrumentId);
         return service.subscribeChannel(channel)
-                .map(s -> {
-                    OkexFuturesOrderbook okexFuturesOrderbook;
+                .flatMap(s -> {
                     JsonNode data = s.get("data").get(0);
-                    if (!orderbooks.containsKey(instrumentId)) {
-                        OkexFuturesDepth okexFuturesDepth = mapper.treeToValue(data, OkexFuturesDepth.class);
-                        okexFuturesOrderbook = new OkexFuturesOrderbook(okexFuturesDepth);
+                    BigDecimal[][] askLevels = toLevels(data.get("asks"));
+                    BigDecimal[][] bidLevels = toLevels(data.get("bids"));
+
+                    OkexFuturesOrderbook okexFuturesOrderbook = orderbooks.get(instrumentId);
+                    if (okexFuturesOrderbook == null) {
+                        okexFuturesOrderbook = new OkexFuturesOrderbook();
                         orderbooks.put(instrumentId, okexFuturesOrderbook);
-                    } else {
-                        okexFuturesOrderbook = orderbooks.get(instrumentId);
-                        if (data.has("asks")) {
-                            if (data.get("asks").size() > 0) {
-                                BigDecimal[][] askLevels = mapper.treeToValue(data.get("asks"), BigDecimal[][].class);
-                                okexFuturesOrderbook.updateLevels(askLevels, OrderTypeEnum.ASK, isRobot);
-                            }
-                        }
+                    }
+                    if (PARTIAL.equals(s.path("action").asText())) {
+                        //全量：推送给前端的增量包含已不存在的价格（数量为0），重新订阅后前端盘口与全量一致
+                        askLevels = okexFuturesOrderbook.replaceLevels(askLevels, OrderTypeEnum.ASK);
+                        bidLevels = okexFuturesOrderbook.replaceLevels(bidLevels, OrderTypeEnum.BID);
+                        okexFuturesOrderbook.setSynced(true);
+                    } else if (okexFuturesOrderbook.isSynced()) {
+                        okexFuturesOrderbook.updateLevels(askLevels, OrderTypeEnum.ASK);
+                        okexFuturesOrderbook.updateLevels(bidLevels, OrderTypeEnum.BID);
+                    } else {//未收到全量或校验失败，等待（重新订阅后的）全量
+                        return Observable.<OrderBook>empty();
+                    }
 
-                        if (data.has("bids")) {
-                            if (data.get("bids").size() > 0) {
-                                BigDecimal[][] bidLevels = mapper.treeToValue(data.get("bids"), BigDecimal[][].class);
-                                okexFuturesOrderbook.updateLevels(bidLevels, OrderTypeEnum.BID, isRobot);
-                            }
+                    JsonNode checksum = data.get("checksum");
+                    int localChecksum = okexFuturesOrderbook.checksum();
+                    if (checksum != null && localChecksum != checksum.asInt()) {
+                        long mismatches = checksumMismatches.incrementAndGet();
+                        logger.warn("okex合约 盘口校验失败，重新订阅 channel:{},checksum:{},本地:{},累计失败次数:{}",
+                                channel, checksum.asInt(), localChecksum, mismatches);
+                        okexFuturesOrderbook.setSynced(false);
+                        service.resubscribeChannel(channel);
+                        if (isRobot) {
+                            return Observable.<OrderBook>empty();
                         }
+                        //增量仍推送给前端，与本地盘口保持一致，收到全量时一并修正
                     }
 
-                    OrderBook book = OkexFuturesAdapters.adaptOrderBook(okexFuturesOrderbook.toOkexFuturesDepth(data.get("instrument_id").textValue(),data.get("checksum").textValue()), currencyPair);
-                    return adaptOrderBook(book, currencyPair);
+                    //机器人取本地盘口前N档，前端取增量（含数量为0的删除档位，只有推送的几档）
+                    if (isRobot) {
+                        return Observable.just(okexFuturesOrderbook.toDepthOrderBook(MAX_DEPTH_SIZE, currencyPair));
+                    }
+                    OkexFuturesDepth depth = new OkexFuturesDepth(askLevels, bidLevels, null, instrumentId, null);
+                    OrderBook book = OkexFuturesAdapters.adaptOrderBook(depth, currencyPair);
+                    return Observable.just(adaptOrderBook(book, currencyPair));
                 });
     }
 
+    /**
+     * 本地盘口校验失败次数
+     * @return
+     */
+    public long getChecksumMismatches() {
+        return checksumMismatches.get();
+    }
+
+    private BigDecimal[][] toLevels(JsonNode levels) throws JsonProcessingException {
+        if (levels == null || levels.size() == 0) {
+            return new BigDecimal[0][];
+        }
+        return mapper.treeToValue(levels, BigDecimal[][].class);
+    }
+
 
     /**
-     * 买卖挂单
+     * 买卖挂单（增量）
      * 1.设置序号
      * 2.截取
+     * 本地盘口的前N档见{@link OkexFuturesOrderbook#toDepthOrderBook}
      *
      * @param currencyPair
      * @return
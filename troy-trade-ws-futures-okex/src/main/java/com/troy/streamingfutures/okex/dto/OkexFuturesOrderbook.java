@@ -1,26 +1,46 @@
 package com.troy.streamingfutures.okex.dto;
 
-import com.google.common.collect.Maps;
 import com.troy.streamingfutures.okex.dto.marketdata.OkexFuturesDepth;
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
 import com.troy.trade.ws.enums.OrderTypeEnum;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.zip.CRC32;
 
 /**
  * Created by Lukas Zaoralek on 16.11.17.
+ * 本地盘口
+ * 档位保存交易所推送的原始数值（含小数位），用于按交易所规则计算校验和、读取前N档，
+ * 卖盘价格 低->高，买盘价格 高->低
  */
 public class OkexFuturesOrderbook {
+    //校验和计算的档数
+    private static final int CHECKSUM_DEPTH = 25;
+
     private final BigDecimal zero = new BigDecimal(0);
 
-    private SortedMap<BigDecimal, BigDecimal[]> asks;
-    private SortedMap<BigDecimal, BigDecimal[]> bids;
+    private final SortedMap<BigDecimal, BigDecimal[]> asks;
+    private final SortedMap<BigDecimal, BigDecimal[]> bids;
+
+    /**
+     * 是否与交易所一致：收到全量后为true，校验失败后为false，直到重新订阅收到全量
+     */
+    private boolean synced;
 
     public OkexFuturesOrderbook() {
-        asks = new TreeMap<>(java.util.Collections.reverseOrder()); //Because okcoin adapter uses reverse sort for asks!!!
-        bids = new TreeMap<>();
+        asks = new TreeMap<>();
+        bids = new TreeMap<>(java.util.Collections.reverseOrder());
     }
 
     public OkexFuturesOrderbook(OkexFuturesDepth depth) {
@@ -34,6 +54,7 @@ public class OkexFuturesOrderbook {
 
         createFromDepthLevels(depthAsks, OrderTypeEnum.ASK);
         createFromDepthLevels(depthBids, OrderTypeEnum.BID);
+        synced = true;
     }
 
     public void createFromDepthLevels(BigDecimal[][] depthLevels, OrderTypeEnum side) {
@@ -43,34 +64,43 @@ public class OkexFuturesOrderbook {
         }
     }
 
-    public void updateLevels(BigDecimal[][] depthLevels, OrderTypeEnum side,boolean isRobot) {
-        //改成增量模式 清空asks,bids
-        if(!isRobot){//是否为机器人订阅
-            if(side == OrderTypeEnum.ASK){
-                asks = Maps.newTreeMap();
-            }else{
-                bids = Maps.newTreeMap();
+    /**
+     * 全量替换一侧盘口
+     * @param depthLevels 全量档位
+     * @param side
+     * @return 相对原盘口的增量：全量档位，加上原有而全量中没有的价格（数量为0）
+     */
+    public BigDecimal[][] replaceLevels(BigDecimal[][] depthLevels, OrderTypeEnum side) {
+        SortedMap<BigDecimal, BigDecimal[]> orderbookLevels = side == OrderTypeEnum.ASK ? asks : bids;
+        SortedMap<BigDecimal, BigDecimal[]> snapshot = new TreeMap<>(orderbookLevels.comparator());
+        for (BigDecimal[] level : depthLevels) {
+            if (level[1].compareTo(zero) != 0) {
+                snapshot.put(level[0], level);
             }
         }
-        for (BigDecimal[] level : depthLevels) {
-            updateLevelSpecified(level, side,isRobot);
+        List<BigDecimal[]> changes = new ArrayList<>(depthLevels.length);
+        for (BigDecimal price : orderbookLevels.keySet()) {
+            if (!snapshot.containsKey(price)) {
+                changes.add(new BigDecimal[]{price, zero});
+            }
         }
+        changes.addAll(snapshot.values());
+        orderbookLevels.clear();
+        orderbookLevels.putAll(snapshot);
+        return changes.toArray(new BigDecimal[changes.size()][]);
     }
 
-    private void updateLevelSpecified(BigDecimal[] level, OrderTypeEnum side,boolean isRobot) {
-        SortedMap<BigDecimal, BigDecimal[]> orderBookSide = side == OrderTypeEnum.ASK ? asks : bids;
-        BigDecimal price = level[0];
-        if(isRobot){
-            boolean shouldDelete = level[1].compareTo(zero) == 0;
-            orderBookSide.remove(price);
-            if (!shouldDelete) {
-                orderBookSide.put(price, level);
-            }
-        }else{
-            orderBookSide.put(price, level);
+    public void updateLevels(BigDecimal[][] depthLevels, OrderTypeEnum side) {
+        for (BigDecimal[] level : depthLevels) {
+            updateLevel(level, side);
         }
     }
 
+    /**
+     * 更新一档，数量为0时删除
+     * @param level [价格, 数量, ...]
+     * @param side
+     */
     public void updateLevel(BigDecimal[] level, OrderTypeEnum side) {
         SortedMap<BigDecimal, BigDecimal[]> orderBookSide = side == OrderTypeEnum.ASK ? asks : bids;
         boolean shouldDelete = level[1].compareTo(zero) == 0;
@@ -81,6 +111,72 @@ public class OkexFuturesOrderbook {
         }
     }
 
+    /**
+     * 校验和：前25档按 买1价:买1量:卖1价:卖1量:... 拼接（一侧不足25档时只拼另一侧），取CRC32的有符号32位值
+     * @return
+     */
+    public int checksum() {
+        StringBuilder sb = new StringBuilder(CHECKSUM_DEPTH * 40);
+        Iterator<BigDecimal[]> bidIterator = bids.values().iterator();
+        Iterator<BigDecimal[]> askIterator = asks.values().iterator();
+        for (int i = 0; i < CHECKSUM_DEPTH; i++) {
+            if (bidIterator.hasNext()) {
+                appendLevel(sb, bidIterator.next());
+            }
+            if (askIterator.hasNext()) {
+                appendLevel(sb, askIterator.next());
+            }
+        }
+        CRC32 crc32 = new CRC32();
+        if (sb.length() > 0) {
+            crc32.update(sb.substring(0, sb.length() - 1).getBytes(StandardCharsets.UTF_8));
+        }
+        return (int) crc32.getValue();
+    }
+
+    private static void appendLevel(StringBuilder sb, BigDecimal[] level) {
+        sb.append(level[0].toPlainString()).append(':').append(level[1].toPlainString()).append(':');
+    }
+
+    /**
+     * 前N档，前端盘口格式（带累计数量，卖盘 高->低），数值为交易所推送的原始数值
+     * 只遍历前N档，不复制整个盘口
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    public OrderBook toDepthOrderBook(int depth, CurrencyPair currencyPair) {
+        return new OrderBook(new Date(), toDepthLimitOrders(asks, OrderTypeEnum.ASK, depth, currencyPair),
+                toDepthLimitOrders(bids, OrderTypeEnum.BID, depth, currencyPair));
+    }
+
+    /**
+     * 一侧前N档，序号从最优价起为1、2、3...，卖盘最差价在前
+     */
+    private static List<LimitOrder> toDepthLimitOrders(SortedMap<BigDecimal, BigDecimal[]> levels, OrderTypeEnum side, int depth,
+                                                       CurrencyPair currencyPair) {
+        int n = Math.max(Math.min(depth, levels.size()), 0);
+        boolean bestFirst = side == OrderTypeEnum.BID;
+        LimitOrder[] orders = new LimitOrder[n];
+        Iterator<BigDecimal[]> iterator = levels.values().iterator();
+        BigDecimal cumulativeAmount = BigDecimal.ZERO;
+        for (int i = 0; i < n; i++) {
+            BigDecimal[] level = iterator.next();
+            cumulativeAmount = cumulativeAmount.add(level[1]);
+            orders[bestFirst ? i : n - 1 - i] = new LimitOrder(side, level[1], cumulativeAmount, currencyPair,
+                    String.valueOf(i + 1), null, level[0]);
+        }
+        return new ArrayList<>(Arrays.asList(orders));
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public void setSynced(boolean synced) {
+        this.synced = synced;
+    }
+
     public BigDecimal[][] getSide(OrderTypeEnum side) {
         SortedMap<BigDecimal, BigDecimal[]> orderbookLevels = side == OrderTypeEnum.ASK ? asks : bids;
         Collection<BigDecimal[]> levels = orderbookLevels.values();
@@ -0,0 +1,105 @@
+package com.troy.streamingfutures.okex.dto;
+
+import com.troy.streamingfutures.okex.dto.marketdata.OkexFuturesDepth;
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+
+public class OkexFuturesOrderbookTest {
+
+    @Test
+    public void checksumIsSignedCrc32OfInterleavedLevels() {
+        OkexFuturesOrderbook orderbook = new OkexFuturesOrderbook(depth(
+                levels(level("3366.8", "9"), level("3368", "8")),
+                levels(level("3366.1", "7"), level("3366", "6"))));
+
+        //买1:卖1:买2:卖2，CRC32无符号值2413953002
+        assertEquals(crc32("3366.1:7:3366.8:9:3366:6:3368:8"), orderbook.checksum());
+        assertEquals(-1881014294, orderbook.checksum());
+    }
+
+    @Test
+    public void checksumKeepsReceivedStrings() {
+        OkexFuturesOrderbook orderbook = new OkexFuturesOrderbook(depth(
+                levels(level("3366.8", "9"), level("3368", "8")),
+                levels(level("3366.10", "7"), level("3366", "6"))));
+
+        assertEquals(1664841389, orderbook.checksum());
+    }
+
+    @Test
+    public void zeroSizeUpdateDeletesLevel() {
+        OkexFuturesOrderbook orderbook = new OkexFuturesOrderbook(depth(
+                levels(level("3366.8", "9"), level("3368", "8")),
+                levels(level("3366.1", "7"), level("3366", "6"))));
+
+        orderbook.updateLevels(levels(level("3366.8", "0.000")), OrderTypeEnum.ASK);
+        orderbook.updateLevels(levels(level("3366.1", "8")), OrderTypeEnum.BID);
+
+        assertEquals(1, orderbook.getAsks().length);
+        assertEquals(-1135441092, orderbook.checksum());
+    }
+
+    @Test
+    public void checksumOfOneSidedBook() {
+        OkexFuturesOrderbook bidsOnly = new OkexFuturesOrderbook(depth(levels(), levels(level("3366.1", "7"), level("3366", "6"))));
+        assertEquals(-1858900673, bidsOnly.checksum());
+
+        OkexFuturesOrderbook asksOnly = new OkexFuturesOrderbook(depth(levels(level("3366.8", "9"), level("3368", "8")), levels()));
+        assertEquals(-1786096438, asksOnly.checksum());
+
+        assertEquals(0, new OkexFuturesOrderbook().checksum());
+    }
+
+    @Test
+    public void depthOrderBookHasReceivedValuesAndCumulativeAmounts() {
+        OkexFuturesOrderbook orderbook = new OkexFuturesOrderbook(depth(
+                levels(level("3366.8", "9"), level("3368", "8"), level("3369", "1")),
+                levels(level("3366.1", "0.000000001"), level("3366", "6"))));
+
+        OrderBook orderBook = orderbook.toDepthOrderBook(2, new CurrencyPair("BTC", "USDT"));
+        List<LimitOrder> asks = orderBook.getAsks();
+        assertEquals(2, asks.size());
+        assertEquals("3368", asks.get(0).getLimitPrice().toPlainString());
+        assertEquals("17", asks.get(0).getCumulativeAmount().toPlainString());
+        assertEquals("2", asks.get(0).getId());
+        assertEquals("3366.8", asks.get(1).getLimitPrice().toPlainString());
+        assertEquals("9", asks.get(1).getCumulativeAmount().toPlainString());
+        List<LimitOrder> bids = orderBook.getBids();
+        assertEquals(2, bids.size());
+        //小于定点精度的数量原样保留
+        assertEquals("0.000000001", bids.get(0).getOriginalAmount().toPlainString());
+        assertEquals("1", bids.get(0).getId());
+        assertEquals("6.000000001", bids.get(1).getCumulativeAmount().toPlainString());
+    }
+
+    private static OkexFuturesDepth depth(BigDecimal[][] asks, BigDecimal[][] bids) {
+        return new OkexFuturesDepth(asks, bids, null, "BTC-USD-190628", null);
+    }
+
+    private static BigDecimal[][] levels(BigDecimal[]... levels) {
+        return levels;
+    }
+
+    /**
+     * [价格, 数量, 强平单数, 订单数]
+     */
+    private static BigDecimal[] level(String price, String size) {
+        return new BigDecimal[]{new BigDecimal(price), new BigDecimal(size), BigDecimal.ZERO, BigDecimal.ONE};
+    }
+
+    private static int crc32(String value) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(value.getBytes(StandardCharsets.UTF_8));
+        return (int) crc32.getValue();
+    }
+}
@@ -46,7 +46,7 @@ public class GateioStreamingMarketDataServiceImpl implements GateioStreamingMark
             fullData[0] = (Boolean) args[2];
         }
         return jsonNodeObservable
-                .map(s -> GateioAdapters.gateioWebSocketOrderBookTransaction(s.toString()))
+                .map(s -> GateioAdapters.gateioWebSocketOrderBookTransaction(s))
                 .map(s -> {
                     /**
                      *  true: is complete result
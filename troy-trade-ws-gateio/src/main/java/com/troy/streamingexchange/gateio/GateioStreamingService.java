@@ -1,7 +1,6 @@
 package com.troy.streamingexchange.gateio;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.NullNode;
@@ -10,6 +9,7 @@ import com.troy.streamingexchange.gateio.dto.GateioWebSocketSubscriptionMessage;
 import com.troy.streamingexchange.gateio.dto.GateioWebsocketTypes;
 import com.troy.streamingexchange.gateio.service.exception.GateioException;
 import com.troy.streamingexchange.gateio.service.netty.AbstractJsonNettyStreamingService;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -49,8 +49,7 @@ public class GateioStreamingService extends AbstractJsonNettyStreamingService {
     public GateioStreamingService(String apiUrl) {
         super(apiUrl, Integer.MAX_VALUE);
 
-        objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper = StreamingObjectMapper.get();
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.troy.streamingexchange.gateio.dto;
 
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.troy.streamingexchange.gateio.dto.marketdata.GateioTicker;
@@ -35,37 +36,37 @@ public class GateioAdapters {
 
 
     /**
-     * gateio盘口更新通知解析
+     * gateio盘口更新通知解析（直接读取已解析的JsonNode，不再序列化成字符串二次解析）
      *
-     * @param json
+     * @param jsonNode
      * @return
      */
-    public static GateioWebSocketOrderBookTransaction gateioWebSocketOrderBookTransaction(String json) {
-        JSONObject jsonObject = JSONObject.parseObject(json);
-        JSONArray jsonArray = jsonObject.getJSONArray("params");
-        String resutl = jsonArray.get(0).toString();
-        String symbol = jsonArray.get(2).toString();
-        JSONObject orders = jsonArray.getJSONObject(1);
+    public static GateioWebSocketOrderBookTransaction gateioWebSocketOrderBookTransaction(JsonNode jsonNode) {
+        JsonNode params = jsonNode.get("params");
+        String resutl = params.get(0).asText();
+        String symbol = params.get(2).asText();
+        JsonNode orders = params.get(1);
 
-        JSONArray askJSONArray = orders.getJSONArray("asks");
-        JSONArray bidJSONArray = orders.getJSONArray("bids");
-        List<GateioPublicOrder> askOrders = Lists.newArrayList();
-        List<GateioPublicOrder> bidOrders = Lists.newArrayList();
+        List<GateioPublicOrder> askOrders = toPublicOrders(orders.get("asks"));
+        List<GateioPublicOrder> bidOrders = toPublicOrders(orders.get("bids"));
+        return new GateioWebSocketOrderBookTransaction("depth.update", new GateioWebSocketOrderBookParams(symbol, askOrders, bidOrders, resutl));
+    }
 
-        if (askJSONArray != null && askJSONArray.toArray().length > 0) {
-            for (Object item : askJSONArray.toArray()) {
-                JSONArray itemJson = (JSONArray) item;
-                askOrders.add(new GateioPublicOrder(itemJson.getBigDecimal(0), itemJson.getBigDecimal(1)));
-            }
+    /**
+     * 盘口档位解析 [[price, amount], ...]
+     *
+     * @param levels
+     * @return
+     */
+    private static List<GateioPublicOrder> toPublicOrders(JsonNode levels) {
+        if (levels == null || !levels.isArray() || levels.size() == 0) {
+            return Lists.newArrayList();
         }
-
-        if (bidJSONArray != null && bidJSONArray.toArray().length > 0) {
-            for (Object item : bidJSONArray.toArray()) {
-                JSONArray itemJson = (JSONArray) item;
-                bidOrders.add(new GateioPublicOrder(itemJson.getBigDecimal(0), itemJson.getBigDecimal(1)));
-            }
+        List<GateioPublicOrder> publicOrders = Lists.newArrayListWithCapacity(levels.size());
+        for (JsonNode item : levels) {
+            publicOrders.add(new GateioPublicOrder(new BigDecimal(item.get(0).asText()), new BigDecimal(item.get(1).asText())));
         }
-        return new GateioWebSocketOrderBookTransaction("depth.update", new GateioWebSocketOrderBookParams(symbol, askOrders, bidOrders, resutl));
+        return publicOrders;
     }
 
     /**
@@ -3,6 +3,7 @@ package com.troy.streamingexchange.gateio.service.netty;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +29,7 @@ public abstract class AbstractJsonNettyStreamingService extends AbstractNettyStr
             return;
         }
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         JsonNode jsonNode;
 
         // Parse incoming message to JSON
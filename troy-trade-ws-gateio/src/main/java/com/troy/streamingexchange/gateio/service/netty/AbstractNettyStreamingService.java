@@ -1,15 +1,12 @@
 package com.troy.streamingexchange.gateio.service.netty;
 
-import com.troy.commons.utils.ApplicationContextUtil;
-import com.troy.commons.utils.DateUtils;
-import com.troy.redis.RedisUtil;
 import com.troy.streamingexchange.CommonUtil;
 import com.troy.streamingexchange.gateio.dto.GateioWebsocketTypes;
+import com.troy.trade.ws.netty.EventLoopGroups;
+import com.troy.trade.ws.netty.ReconnectManager;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
@@ -19,7 +16,6 @@ import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketCl
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.concurrent.ScheduledFuture;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
@@ -28,21 +24,28 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StopWatch;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractNettyStreamingService<T> {
     private final Logger LOG = LoggerFactory.getLogger(this.getClass());
     private static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.ofSeconds(10);
     private static final Duration DEFAULT_RETRY_DURATION = Duration.ofSeconds(15);
+    //重新订阅每批消息数、批间隔（毫秒）
+    private static final int RESUBSCRIBE_BATCH_SIZE = 10;
+    private static final long RESUBSCRIBE_INTERVAL = 200L;
 
     private class Subscription {
         final ObservableEmitter<T> emitter;
@@ -58,11 +61,18 @@ public abstract class AbstractNettyStreamingService<T> {
 
     private final int maxFramePayloadLength;
     private final URI uri;
-    private boolean isManualDisconnect = false;
+    private volatile boolean isManualDisconnect = false;
+    //连续重连次数，连接成功后清零
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    //是否正在重连
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    //首次连接成功后才在断开时自动重连；首次连接失败（握手失败、超时）由connect的调用方处理，不留下无人管理的重连
+    private volatile boolean autoReconnect = false;
     private Channel webSocketChannel;
     private Duration retryDuration;
     private Duration connectionTimeout;
-    private final NioEventLoopGroup eventLoopGroup;
+    //进程内共享的EventLoopGroup
+    private final EventLoopGroup eventLoopGroup;
     protected Map<String, Subscription> channels = new ConcurrentHashMap<>();
     private boolean compressedMessages = false;
 
@@ -80,7 +90,7 @@ public abstract class AbstractNettyStreamingService<T> {
             this.retryDuration = retryDuration;
             this.connectionTimeout = connectionTimeout;
             this.uri = new URI(apiUrl);
-            this.eventLoopGroup = new NioEventLoopGroup();
+            this.eventLoopGroup = EventLoopGroups.eventLoopGroup();
         } catch (URISyntaxException e) {
             throw new IllegalArgumentException("Error parsing URI " + apiUrl, e);
         }
@@ -129,7 +139,7 @@ public abstract class AbstractNettyStreamingService<T> {
                 Bootstrap b = new Bootstrap();
                 b.group(eventLoopGroup)
                         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, java.lang.Math.toIntExact(connectionTimeout.toMillis()))
-                        .channel(NioSocketChannel.class)
+                        .channel(EventLoopGroups.socketChannelClass())
                         .handler(new ChannelInitializer<SocketChannel>() {
                             @Override
                             protected void initChannel(SocketChannel ch) {
@@ -156,13 +166,22 @@ public abstract class AbstractNettyStreamingService<T> {
                             }
                         });
 
-                b.connect(uri.getHost(), port).addListener((ChannelFuture future) -> {
-                    webSocketChannel = future.channel();
+                b.connect(new InetSocketAddress(host, port)).addListener((ChannelFuture future) -> {
+                    Channel channel = future.channel();
+                    webSocketChannel = channel;
                     if (future.isSuccess()) {
+                        //握手超时：连接已建立但服务端一直不应答
+                        channel.eventLoop().schedule(() -> {
+                            if (handler.handshakeFuture().tryFailure(new TimeoutException("websocket handshake timed out"))) {
+                                channel.close();
+                            }
+                        }, connectionTimeout.toMillis(), TimeUnit.MILLISECONDS);
                         handler.handshakeFuture().addListener(f -> {
                             if (f.isSuccess()) {
+                                autoReconnect = true;
                                 completable.onComplete();
                             } else {
+                                channel.close();
                                 completable.onError(f.cause());
                             }
                         });
@@ -194,9 +213,6 @@ public abstract class AbstractNettyStreamingService<T> {
                 webSocketChannel.close();
                 stopWatch.stop();
             }
-            stopWatch.start("eventLoopGroup");
-            eventLoopGroup.shutdownGracefully();
-            stopWatch.stop();
             LOG.info("========================:::stopWatch:::{}", stopWatch);
         });
     }
@@ -263,38 +279,62 @@ public abstract class AbstractNettyStreamingService<T> {
 
     }
 
+    /**
+     * 重新订阅全部频道（重连后调用）
+     * 需要鉴权的频道先发送签名（同一apiKey只发一次），同一连接上按顺序处理，无需等待签名结果；
+     * 之后每批{@link #RESUBSCRIBE_BATCH_SIZE}个频道一次flush，批之间间隔{@link #RESUBSCRIBE_INTERVAL}毫秒，由连接的IO线程定时发送
+     */
     public void resubscribeChannels() {
-        for (String channelId : channels.keySet()) {
+        Channel channel = webSocketChannel;
+        if (channel == null) {
+            return;
+        }
+        List<String> messages = new ArrayList<>(channels.size());
+        Set<String> signedApiKeys = new HashSet<>();
+        for (Map.Entry<String, Subscription> entry : channels.entrySet()) {
+            Subscription subscription = entry.getValue();
+            String channelName = subscription.channelName;
+            Object[] args = subscription.args;
             try {
-                Subscription subscription = channels.get(channelId);
-                String channelName = subscription.channelName;
-                Object[] args = subscription.args;
                 if (channelName.contains(GateioWebsocketTypes.ORDER.getSerializedValue())) {
-                    CountDownLatch countDownLatch = new CountDownLatch(1);
                     String apiKey = args[0].toString();
-                    String secretKeyBase64 = args[1].toString();
-                    Long nonce = CommonUtil.getNonce();
-
-                    String signChannelName = GateioWebsocketTypes.SERVER_SIGN.getSerializedValue() + "-" + apiKey;
-                    LOG.info("auth Subscribing to channel {}", signChannelName);
-                    String signature = CommonUtil.getSignature(secretKeyBase64, nonce);
-                    try {
-                        sendMessage(getSubscribeMessage(signChannelName, new Object[]{apiKey, signature, nonce}));
-                        countDownLatch.await(3000, TimeUnit.MILLISECONDS);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
+                    if (signedApiKeys.add(apiKey)) {
+                        String secretKeyBase64 = args[1].toString();
+                        Long nonce = CommonUtil.getNonce();
+                        String signChannelName = GateioWebsocketTypes.SERVER_SIGN.getSerializedValue() + "-" + apiKey;
+                        LOG.info("auth Subscribing to channel {}", signChannelName);
+                        String signature = CommonUtil.getSignature(secretKeyBase64, nonce);
+                        messages.add(0, getSubscribeMessage(signChannelName, new Object[]{apiKey, signature, nonce}));
                     }
                 }
                 if (channelName.contains(GateioWebsocketTypes.SERVER_SIGN.getSerializedValue()) || channelName.contains(GateioWebsocketTypes.SERVER_PING.getSerializedValue())) {
                     continue;
                 }
-                sendMessage(getSubscribeMessage(subscription.channelName, subscription.args));
-            } catch (IOException e) {
-                LOG.error("Failed to reconnect channel: {}", channelId);
+                messages.add(getSubscribeMessage(channelName, args));
+            } catch (Exception e) {
+                LOG.error("Failed to reconnect channel: {}", entry.getKey(), e);
             }
         }
+        if (messages.isEmpty()) {
+            return;
+        }
+        LOG.info("gate.io Resubscribing {} messages", messages.size());
+        channel.eventLoop().execute(() -> resubscribeBatch(channel, messages, 0));
+    }
+
+    private void resubscribeBatch(Channel channel, List<String> messages, int from) {
+        if (channel != webSocketChannel || !channel.isActive()) {
+            LOG.warn("gate.io Connection changed, resubscribe stopped at {}/{}", from, messages.size());
+            return;
+        }
+        int to = Math.min(messages.size(), from + RESUBSCRIBE_BATCH_SIZE);
+        for (int i = from; i < to; i++) {
+            channel.write(new TextWebSocketFrame(messages.get(i)));
+        }
+        channel.flush();
+        if (to < messages.size()) {
+            channel.eventLoop().schedule(() -> resubscribeBatch(channel, messages, to), RESUBSCRIBE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
     protected String getChannel(T message) {
@@ -343,6 +383,31 @@ public abstract class AbstractNettyStreamingService<T> {
         emitter.onError(t);
     }
 
+    /**
+     * 计划重连，退避、熔断见{@link ReconnectManager}，连接成功后重新订阅全部频道，失败则继续重连
+     */
+    private void scheduleReconnect() {
+        String host = uri.getHost();
+        ReconnectManager.schedule(host, reconnectAttempts.getAndIncrement(), () -> {
+            if (isManualDisconnect) {
+                reconnecting.set(false);
+                LOG.info("gate.io reconnect cancelled, disconnected manually");
+                return;
+            }
+            connect().subscribe(() -> {
+                ReconnectManager.onSuccess(host);
+                reconnectAttempts.set(0);
+                reconnecting.set(false);
+                LOG.warn("gate.io Resubscribing channels");
+                resubscribeChannels();
+            }, t -> {
+                LOG.warn("gate.io Problem with websocket reconnect : {}", t.getMessage());
+                ReconnectManager.onFailure(host);
+                scheduleReconnect();
+            });
+        });
+    }
+
     protected WebSocketClientExtensionHandler getWebSocketClientExtensionHandler() {
         return WebSocketClientCompressionHandler.INSTANCE;
     }
@@ -361,39 +426,17 @@ public abstract class AbstractNettyStreamingService<T> {
         public void channelInactive(ChannelHandlerContext ctx) {
             if (isManualDisconnect) {
                 isManualDisconnect = false;
+            } else if (!autoReconnect) {
+                super.channelInactive(ctx);
+                LOG.warn("gate.io websocket closed before the first successful connect, not reconnecting");
+                ctx.close();
             } else {
                 try {
-                    RedisUtil blockvcRedisUtil = ApplicationContextUtil.getBean(RedisUtil.class);
-                    long retryCount = blockvcRedisUtil.increment("RetryWithDelay_gateio");
-                    if(blockvcRedisUtil.ttl("RetryWithDelay_gateio") == -1){
-                        blockvcRedisUtil.expire("RetryWithDelay_gateio", 5, TimeUnit.MINUTES);
-                    }
-                    if(retryCount <= 30){
-                        super.channelInactive(ctx);
+                    super.channelInactive(ctx);
+                    //握手失败等重连过程中的断开由重连流程处理
+                    if (reconnecting.compareAndSet(false, true)) {
                         LOG.info("gate.io Reopening websocket because it was closed by the host");
-        //                final Completable c = connect()
-        //                        .doOnError(t -> LOG.warn("Problem with reconnect", t))
-        //                        .retryWhen(new RetryWithDelay(5, retryDuration.toMillis()))
-        //                        .doOnComplete(() -> {
-        //                            LOG.info("Resubscribing channels");
-        //                            resubscribeChannels();
-        //                        });
-        //                c.subscribe();
-                        final EventLoop eventLoop = ctx.channel().eventLoop();
-                        LOG.warn("gate.io ctx:{} reconnect starting {}", ctx, DateUtils.formatDateFull(new Date()));
-                        ScheduledFuture<?> schedule = eventLoop.schedule(() -> {
-                            Completable c = connect()
-                                    .doOnError(t -> LOG.warn("gate.io Problem with websocket reconnect : {}", t.getMessage()))
-                                    .doOnComplete(() -> {
-                                        LOG.warn("gate.io Resubscribing channels");
-                                        resubscribeChannels();
-                                    });
-                            c.subscribe();
-                        }, 10, TimeUnit.SECONDS);
-                    }else{
-                        if(blockvcRedisUtil.ttl("RetryWithDelay_gateio") > 30) {
-                            blockvcRedisUtil.expire("RetryWithDelay_gateio", 30 ,TimeUnit.SECONDS);
-                        }
+                        scheduleReconnect();
                     }
                 } finally {
                     // 关闭重试前的连接
@@ -1,11 +1,11 @@
 package com.troy.streamingexchange.gateio.service.netty;
 
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.troy.streamingexchange.gateio.dto.GateioWebSocketSubscriptionMessage;
 import com.troy.streamingexchange.gateio.dto.GateioWebsocketTypes;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.websocketx.*;
@@ -15,6 +15,7 @@ import io.netty.util.CharsetUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -35,8 +36,7 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
     public WebSocketClientHandler(WebSocketClientHandshaker handshaker, WebSocketMessageHandler handler) {
         this.handshaker = handshaker;
         this.handler = handler;
-        objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper = StreamingObjectMapper.get();
     }
 
     public ChannelFuture handshakeFuture() {
@@ -56,6 +56,8 @@ public class WebSocketClientHandler extends SimpleChannelInboundHandler<Object>
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         LOG.info("WebSocket Client disconnected!");
+        //握手完成前断开，连接结果为失败，避免connect一直不结束
+        handshakeFuture.tryFailure(new ClosedChannelException());
     }
 
     @Override
@@ -0,0 +1,229 @@
+package com.troy.streamingexchange.huobi;
+
+import com.troy.streamingexchange.huobi.dto.HuobiMbp;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.enums.OrderTypeEnum;
+import com.troy.trade.ws.orderbook.AggregatedOrderBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 火币本地盘口（增量MBP + req全量）
+ * 按火币维护本地盘口的流程：
+ * 1、订阅 market.$symbol.mbp.$levels，未同步时收到的增量先缓存；
+ * 2、发送 req market.$symbol.mbp.$levels 获取全量；
+ * 3、丢弃 seqNum <= 全量seqNum 的增量，应用的增量须满足 prevSeqNum == 上一个seqNum；
+ * 4、不满足（丢包、重连）时清空盘口，重新请求全量
+ * 各聚合档位（step1~step5）由这份不聚合的盘口本地计算，见{@link AggregatedOrderBook}
+ * 增量与全量都在连接的IO线程到达，由this同步
+ */
+class HuobiLocalOrderBook {
+    private static final Logger LOG = LoggerFactory.getLogger(HuobiLocalOrderBook.class);
+
+    //全量请求无应答时的超时（毫秒），超时后下一条增量重新请求
+    private static final long SNAPSHOT_TIMEOUT = 5000L;
+    //全量过旧后的重试间隔（毫秒）
+    private static final long SNAPSHOT_RETRY_INTERVAL = 1000L;
+    //等待全量期间最多缓存的增量数，超过时丢弃最早的（全量到达后会因缺口重新请求）
+    private static final int MAX_BUFFERED = 600;
+
+    private final String symbol;
+    private final int maxDepth;
+    private final Runnable snapshotRequester;
+    private final AggregatedOrderBook book = new AggregatedOrderBook();
+    /**
+     * 等待全量期间缓存的增量
+     */
+    private final Deque<HuobiMbp> buffer = new ArrayDeque<>();
+    /**
+     * 已应用的最后一个seqNum
+     */
+    private long lastSeqNum;
+    private boolean synced;
+    /**
+     * 最近一次全量请求的时间，0-无未应答的请求
+     */
+    private long snapshotRequestTime;
+    private long nextSnapshotTime;
+
+    /**
+     * 缺口（重新请求全量）次数
+     */
+    private final AtomicLong gaps = new AtomicLong();
+
+    /**
+     * @param symbol 交易对，如：btcusdt
+     * @param maxDepth 订阅的档数，也是本地盘口保留的最大档数
+     * @param snapshotRequester 发送全量请求，应答通过{@link #onSnapshot}送达；订阅时已发送首次请求
+     */
+    HuobiLocalOrderBook(String symbol, int maxDepth, Runnable snapshotRequester) {
+        this.symbol = symbol;
+        this.maxDepth = maxDepth;
+        this.snapshotRequester = snapshotRequester;
+        this.snapshotRequestTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 处理一条增量
+     * @param diff
+     * @param timestamp 推送时间
+     * @return 盘口是否已同步（可推送）
+     */
+    synchronized boolean onDiff(HuobiMbp diff, long timestamp) {
+        if (!synced) {
+            buffer.addLast(diff);
+            if (buffer.size() > MAX_BUFFERED) {
+                buffer.pollFirst();
+            }
+            requestSnapshot();
+            return false;
+        }
+        if (diff.getSeqNum() <= lastSeqNum) {
+            return false;
+        }
+        if (diff.getPrevSeqNum() == null || diff.getPrevSeqNum() != lastSeqNum) {
+            LOG.warn("火币 盘口增量缺口，重新请求全量 symbol:{},seqNum:{},prevSeqNum:{},累计次数:{}",
+                    symbol, lastSeqNum, diff.getPrevSeqNum(), gaps.incrementAndGet());
+            synced = false;
+            book.clear();
+            buffer.addLast(diff);
+            requestSnapshot();
+            return false;
+        }
+        try {
+            apply(diff, timestamp);
+        } catch (ArithmeticException e) {
+            invalidate(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 处理全量请求的应答
+     * @param snapshot
+     * @param timestamp 应答时间
+     * @return 盘口是否已同步（可推送）
+     */
+    synchronized boolean onSnapshot(HuobiMbp snapshot, long timestamp) {
+        snapshotRequestTime = 0L;
+        if (synced && snapshot.getSeqNum() <= lastSeqNum) {
+            return false;
+        }
+        while (!buffer.isEmpty() && buffer.peekFirst().getSeqNum() <= snapshot.getSeqNum()) {
+            buffer.pollFirst();
+        }
+        HuobiMbp first = buffer.peekFirst();
+        if (first != null && (first.getPrevSeqNum() == null || first.getPrevSeqNum() != snapshot.getSeqNum())) {//全量与缓存的增量衔接不上，稍后由下一条增量触发重新请求
+            LOG.info("火币 盘口全量过旧，重新请求 symbol:{},seqNum:{},prevSeqNum:{}", symbol, snapshot.getSeqNum(), first.getPrevSeqNum());
+            synced = false;
+            book.clear();
+            nextSnapshotTime = System.currentTimeMillis() + SNAPSHOT_RETRY_INTERVAL;
+            return false;
+        }
+        try {
+            book.clear();
+            updateLevels(OrderTypeEnum.BID, snapshot.getBids());
+            updateLevels(OrderTypeEnum.ASK, snapshot.getAsks());
+            book.setTimestamp(timestamp);
+            lastSeqNum = snapshot.getSeqNum();
+            synced = true;
+            while (!buffer.isEmpty()) {
+                HuobiMbp diff = buffer.pollFirst();
+                if (diff.getPrevSeqNum() == null || diff.getPrevSeqNum() != lastSeqNum) {
+                    LOG.warn("火币 缓存增量不连续，重新请求全量 symbol:{},seqNum:{},prevSeqNum:{}", symbol, lastSeqNum, diff.getPrevSeqNum());
+                    synced = false;
+                    book.clear();
+                    buffer.clear();
+                    requestSnapshot();
+                    return false;
+                }
+                apply(diff, timestamp);
+            }
+        } catch (ArithmeticException e) {
+            invalidate(e);
+            return false;
+        }
+        LOG.info("火币 本地盘口同步完成 symbol:{},seqNum:{}", symbol, lastSeqNum);
+        return true;
+    }
+
+    /**
+     * 前N档，最优价在前
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    synchronized OrderBook toOrderBook(int depth, CurrencyPair currencyPair) {
+        return book.toOrderBook(depth, currencyPair);
+    }
+
+    /**
+     * 按价格档位聚合后的前N档，最优价在前
+     * @param step 价格档位，如0.1；为null或0时不聚合
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    synchronized OrderBook toOrderBook(BigDecimal step, int depth, CurrencyPair currencyPair) {
+        return book.view(step).toOrderBook(depth, currencyPair);
+    }
+
+    /**
+     * 按价格档位聚合后的前N档，前端盘口格式（带累计数量，卖盘 高->低）
+     * @param step 价格档位，如0.1；为null或0时不聚合
+     * @param depth 档数
+     * @param currencyPair
+     * @return
+     */
+    synchronized OrderBook toDepthOrderBook(BigDecimal step, int depth, CurrencyPair currencyPair) {
+        return book.view(step).toDepthOrderBook(depth, currencyPair);
+    }
+
+    long getGaps() {
+        return gaps.get();
+    }
+
+    private void requestSnapshot() {
+        long now = System.currentTimeMillis();
+        if (now < nextSnapshotTime || (snapshotRequestTime > 0 && now - snapshotRequestTime < SNAPSHOT_TIMEOUT)) {
+            return;
+        }
+        snapshotRequestTime = now;
+        snapshotRequester.run();
+    }
+
+    /**
+     * 数值无法与已有档位用同一定点小数位数精确表示（见{@link AggregatedOrderBook}）：不推送舍入后的盘口，
+     * 清空后隔一段时间由下一条增量重新请求全量
+     * @param e
+     */
+    private void invalidate(ArithmeticException e) {
+        LOG.error("火币 盘口数值无法用定点精确表示，重新请求全量 symbol:{},异常信息:{}", symbol, e.getMessage());
+        synced = false;
+        book.clear();
+        buffer.clear();
+        nextSnapshotTime = System.currentTimeMillis() + SNAPSHOT_RETRY_INTERVAL;
+    }
+
+    private void apply(HuobiMbp diff, long timestamp) {
+        updateLevels(OrderTypeEnum.BID, diff.getBids());
+        updateLevels(OrderTypeEnum.ASK, diff.getAsks());
+        book.truncate(maxDepth);
+        book.setTimestamp(timestamp);
+        lastSeqNum = diff.getSeqNum();
+    }
+
+    private void updateLevels(OrderTypeEnum side, List<BigDecimal[]> levels) {
+        for (BigDecimal[] level : levels) {
+            book.update(side, level[0], level[1]);
+        }
+    }
+}
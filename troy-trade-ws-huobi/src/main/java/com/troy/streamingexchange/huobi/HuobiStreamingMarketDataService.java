@@ -1,6 +1,5 @@
 package com.troy.streamingexchange.huobi;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.troy.streamingexchange.huobi.dto.*;
 import com.troy.trade.ws.dto.OrderBook;
@@ -8,14 +7,17 @@ import com.troy.trade.ws.dto.Ticker;
 import com.troy.trade.ws.dto.Trade;
 import com.troy.trade.ws.dto.Trades;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import com.troy.trade.ws.streamingexchange.core.StreamingMarketDataService;
 import io.reactivex.Observable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.troy.streamingexchange.huobi.HuobiAdapters.adaptOrderBook;
 import static com.troy.streamingexchange.huobi.HuobiAdapters.adaptTicker;
@@ -28,22 +30,53 @@ public class HuobiStreamingMarketDataService implements StreamingMarketDataServi
 
     private Map<CurrencyPair, HuobiOrderbook> orderbooks = new HashMap<>();
 
+    /**
+     * 盘口是否由增量MBP维护本地盘口（各聚合档位由本地盘口计算），见{@link HuobiLocalOrderBook}
+     */
+    private static final boolean MBP_ENABLED = Boolean.parseBoolean(System.getProperty("troy.huobi.mbp", "true"));
+    /**
+     * 增量盘口订阅档数（5/20/150）
+     */
+    private static final int MBP_LEVELS = Integer.getInteger("troy.huobi.mbpLevels", 150);
+    /**
+     * 本地盘口推送给前端的档数，与{@link HuobiAdapters}一致
+     */
+    private static final int MAX_DEPTH_SIZE = 30;
+    private static final String STEP0 = "step0";
+
+    /**
+     * 各交易对的本地盘口共享被观察者，每次更新发射本地盘口；首个订阅者订阅时订阅增量并请求全量，最后一个订阅者退出时退订
+     * 不同聚合档位的订阅共用同一份本地盘口
+     */
+    private final Map<CurrencyPair, Observable<HuobiLocalOrderBook>> mbpOrderBooks = new ConcurrentHashMap<>();
+
     public HuobiStreamingMarketDataService(HuobiStreamingService service) {
         this.service = service;
     }
 
+    /**
+     * @param currencyPair
+     * @param args [0]-聚合类型 step0~step5，默认step0；[1]-绝对价格档位，如0.1，提供时由本地盘口聚合，
+     *             否则step1~step5订阅交易所聚合后的depth.stepN
+     *             （火币的stepN相对于交易对的价格精度，不能用固定价格档位代替）
+     * @return
+     */
     @Override
     public Observable<OrderBook> getOrderBook(CurrencyPair currencyPair, Object... args) {
         String channelName = TopicType.TOPIC_MARKET_DEPTH;
         //默认step0
-        final String depthType = args.length > 0 ? args[0].toString() : "step0";
+        final String depthType = args.length > 0 ? args[0].toString() : STEP0;
+        if (MBP_ENABLED && (STEP0.equals(depthType) || args.length > 1)) {
+            BigDecimal step = args.length > 1 && !STEP0.equals(depthType) ? new BigDecimal(args[1].toString()) : null;
+            return mbpOrderBooks.computeIfAbsent(currencyPair, this::mbpOrderBookStream)
+                    .map(localOrderBook -> localOrderBook.toDepthOrderBook(step, MAX_DEPTH_SIZE, currencyPair));
+        }
         String pair = (currencyPair.baseSymbol + currencyPair.counterSymbol).toLowerCase();
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<HuobiDepthResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair, depthType})
-                .map(s -> mapper.readValue(s.toString(), HuobiDepthResult.class));
+                .map(s -> mapper.treeToValue(s, HuobiDepthResult.class));
 
         return subscribedChannel
                 .map(s -> {
@@ -53,6 +86,31 @@ public class HuobiStreamingMarketDataService implements StreamingMarketDataServi
                 });
     }
 
+    /**
+     * 增量MBP维护的本地盘口，每次更新后发射；缺口时重新发送全量请求
+     * 每次重新订阅时新建本地盘口
+     */
+    private Observable<HuobiLocalOrderBook> mbpOrderBookStream(CurrencyPair currencyPair) {
+        String pair = (currencyPair.baseSymbol + currencyPair.counterSymbol).toLowerCase();
+        String levels = String.valueOf(MBP_LEVELS);
+        String requestChannelId = service.getSubscriptionUniqueId(TopicType.TOPIC_MARKET_MBP_REQ, pair);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
+        return Observable.defer(() -> {
+            HuobiLocalOrderBook localOrderBook = new HuobiLocalOrderBook(pair, MBP_LEVELS,
+                    () -> service.resubscribeChannel(requestChannelId));
+            //先订阅增量再请求全量，全量之前的增量缓存在本地盘口
+            Observable<Boolean> diffs = service.subscribeChannel(TopicType.TOPIC_MARKET_MBP, pair, levels)
+                    .map(s -> mapper.treeToValue(s, HuobiMbpResult.class))
+                    .map(s -> localOrderBook.onDiff(s.getResult(), s.getTs()));
+            Observable<Boolean> snapshots = service.subscribeChannel(TopicType.TOPIC_MARKET_MBP_REQ, pair, levels)
+                    .map(s -> mapper.treeToValue(s, HuobiMbpResult.class))
+                    .map(s -> localOrderBook.onSnapshot(s.getResult(), s.getTs()));
+            return Observable.merge(diffs, snapshots)
+                    .filter(synced -> synced)
+                    .map(synced -> localOrderBook);
+        }).share();
+    }
+
     /**
      * {"ch":"market.meeteth.detail","ts":1532513767292,"tick":{"amount":2195931.3553354633,"open":5.0E-5,"close":5.044E-5,"high":5.169E-5,"id":13681634264,"count":8820,"low":4.664E-5,"version":13681634264,"vol":108.3005203452}}
      *
@@ -65,11 +123,10 @@ public class HuobiStreamingMarketDataService implements StreamingMarketDataServi
         String channelName = TopicType.TOPIC_MARKET_DETAIL;
 
         String pair = (currencyPair.baseSymbol + currencyPair.counterSymbol).toLowerCase();
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
         Observable<HuobiTickerResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
-                .map(s -> mapper.readValue(s.toString(), HuobiTickerResult.class));
+                .map(s -> mapper.treeToValue(s, HuobiTickerResult.class));
 
         return subscribedChannel
                 .map(s -> adaptTicker(s.getResult(), currencyPair));
@@ -80,12 +137,11 @@ public class HuobiStreamingMarketDataService implements StreamingMarketDataServi
     public Observable<List<Trade>> getTrades(CurrencyPair currencyPair, Object... args) {
         String channelName = TopicType.TOPIC_MARKET_TRADE;
         String pair = (currencyPair.baseSymbol + currencyPair.counterSymbol).toLowerCase();
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<HuobiTradeResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
-                .map(s -> mapper.readValue(s.toString(), HuobiTradeResult.class));
+                .map(s -> mapper.treeToValue(s, HuobiTradeResult.class));
 
         return subscribedChannel
                 .map(s -> {
@@ -99,12 +155,11 @@ public class HuobiStreamingMarketDataService implements StreamingMarketDataServi
     public Observable<List<Trade>> getTradesOnce(CurrencyPair currencyPair, Object... args) {
         String channelName = TopicType.TOPIC_MARKET_TRADE_REQ;
         String pair = (currencyPair.baseSymbol + currencyPair.counterSymbol).toLowerCase();
-        final ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        final ObjectMapper mapper = StreamingObjectMapper.get();
 
         Observable<HuobiTradeRquestResult> subscribedChannel = service.subscribeChannel(channelName,
                 new Object[]{pair})
-                .map(s -> mapper.readValue(s.toString(), HuobiTradeRquestResult.class));
+                .map(s -> mapper.treeToValue(s, HuobiTradeRquestResult.class));
 
         return subscribedChannel
                 .map(s -> {
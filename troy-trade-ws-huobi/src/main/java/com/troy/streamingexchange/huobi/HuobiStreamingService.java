@@ -9,6 +9,7 @@ import com.troy.streamingexchange.huobi.dto.message.HuobiWebSocketRequestMessage
 import com.troy.streamingexchange.huobi.dto.message.HuobiWebSocketSubscriptionMessage;
 import com.troy.streamingexchange.huobi.dto.message.HuobiWebSocketUnSubscriptionMessage;
 import com.troy.trade.ws.netty.JsonNettyStreamingService;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,20 +44,13 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
         return null;
     }
 
+    /**
+     * 消息不是批量数组，整条消息直接处理
+     *
+     * @param jsonNode
+     */
     @Override
-    public void messageHandler(String message) {
-        LOG.debug("Received message: {}", message);
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode;
-
-        // Parse incoming message to JSON
-        try {
-            jsonNode = objectMapper.readTree(message);
-        } catch (IOException e) {
-            LOG.error("Error parsing incoming message to JSON: {}", message);
-            return;
-        }
-
+    protected void handleJsonMessage(JsonNode jsonNode) {
         handleMessage(jsonNode);
     }
 
@@ -78,7 +72,7 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
             String hb = message.get("ping").asText();
             LOG.debug("Heart beating内容:{}", hb);
             HuobiPongMessage huobiPongMessage = new HuobiPongMessage(Long.valueOf(hb));
-            ObjectMapper objectMapper = new ObjectMapper();
+            ObjectMapper objectMapper = StreamingObjectMapper.get();
             try {
                 sendMessage(objectMapper.writeValueAsString(huobiPongMessage));
             } catch (JsonProcessingException e) {
@@ -98,7 +92,7 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
                  * 直接发射数据,然后从通道中删除,避免
                  */
                 if (rep) {
-                    //eg market.$symbol.trade.detail
+                    //eg market.$symbol.trade.detail -> market.trade_req-$symbol, market.$symbol.mbp.150 -> market.mbp_req-$symbol
                     String reqMessage = message.get(REP).asText();
                     String pair = reqMessage.split("\\.")[1];
                     String channelName = reqMessage.split("\\.")[0] + "." + reqMessage.split("\\.")[2] + "_" + "req";
@@ -132,6 +126,15 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
         } else super.handleMessage(message);
     }
 
+    /**
+     * 盘口频道持续有推送，长时间静默视为失效；心跳由服务端发起（ping/pong）
+     */
+    @Override
+    protected long getChannelStaleTimeout(String channelName) {
+        return TopicType.TOPIC_MARKET_DEPTH.equals(channelName) || TopicType.TOPIC_MARKET_MBP.equals(channelName)
+                ? DEPTH_STALE_TIMEOUT : 0L;
+    }
+
     @Override
     public String getSubscriptionUniqueId(String channelName, Object... args) {
         return channelName + "-" + args[0].toString();
@@ -161,6 +164,13 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
                         new HuobiWebSocketSubscriptionMessage(channelName, requestId, args[0].toString(), null, args[1].toString());
             }
         }
+        if (TopicType.TOPIC_MARKET_MBP.equals(channelName) && args.length == 2) {
+            subscribeMessage =
+                    new HuobiWebSocketSubscriptionMessage(channelName, requestId, args[0].toString(), null, args[1].toString());
+        }
+        if (TopicType.TOPIC_MARKET_MBP_REQ.equals(channelName) && args.length == 2) {
+            subscribeMessage = new HuobiWebSocketRequestMessage(channelName, requestId, args[0].toString(), args[1].toString());
+        }
         if (TopicType.TOPIC_MARKET_TRADE.equals(channelName) || TopicType.TOPIC_MARKET_DETAIL.equals(channelName)) {
             subscribeMessage =
                     new HuobiWebSocketSubscriptionMessage(channelName, requestId, args[0].toString(), null, null);
@@ -170,7 +180,7 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
         }
         if (subscribeMessage == null) throw new IOException("SubscribeMessage: Insufficient arguments");
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(subscribeMessage);
     }
 
@@ -188,7 +198,7 @@ public class HuobiStreamingService extends JsonNettyStreamingService {
 
         HuobiWebSocketUnSubscriptionMessage subscribeMessage =
                 new HuobiWebSocketUnSubscriptionMessage(channelId, requestId);
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(subscribeMessage);
     }
 }
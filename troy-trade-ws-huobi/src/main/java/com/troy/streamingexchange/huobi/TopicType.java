@@ -23,10 +23,19 @@ public class TopicType {
      * 实时行情（最近24小时成交量、成交额、开盘价、收盘价、最高价、最低价、成交笔数等）
      */
     public static final String TOPIC_MARKET_DETAIL = "market.detail";
+    /**
+     * 增量盘口（Market By Price，按seqNum/prevSeqNum衔接）
+     */
+    public static final String TOPIC_MARKET_MBP = "market.mbp";
 
 
     /**
      * 成交记录请求（包含成交价格、成交量、成交方向等信息）
      */
     public static final String TOPIC_MARKET_TRADE_REQ = "market.trade_req";
+
+    /**
+     * 增量盘口全量请求（用于初始化、缺口后重建本地盘口）
+     */
+    public static final String TOPIC_MARKET_MBP_REQ = "market.mbp_req";
 }
@@ -0,0 +1,50 @@
+package com.troy.streamingexchange.huobi.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 增量盘口（MBP）
+ * 推送：{"seqNum":100020146795,"prevSeqNum":100020146794,"bids":[],"asks":[[645.14,26.75]]}，数量为0表示删除该档
+ * 全量（req应答）：{"seqNum":100020142010,"bids":[[618.37,71.59]],"asks":[[650.59,14.90]]}
+ */
+public class HuobiMbp {
+
+    private final long seqNum;
+    private final Long prevSeqNum;
+    private final List<BigDecimal[]> bids;
+    private final List<BigDecimal[]> asks;
+
+    public HuobiMbp(
+            @JsonProperty("seqNum") long seqNum,
+            @JsonProperty("prevSeqNum") Long prevSeqNum,
+            @JsonProperty("bids") List<BigDecimal[]> bids,
+            @JsonProperty("asks") List<BigDecimal[]> asks) {
+        this.seqNum = seqNum;
+        this.prevSeqNum = prevSeqNum;
+        this.bids = bids != null ? bids : Collections.emptyList();
+        this.asks = asks != null ? asks : Collections.emptyList();
+    }
+
+    public long getSeqNum() {
+        return seqNum;
+    }
+
+    /**
+     * @return 全量时为null
+     */
+    public Long getPrevSeqNum() {
+        return prevSeqNum;
+    }
+
+    public List<BigDecimal[]> getBids() {
+        return bids;
+    }
+
+    public List<BigDecimal[]> getAsks() {
+        return asks;
+    }
+}
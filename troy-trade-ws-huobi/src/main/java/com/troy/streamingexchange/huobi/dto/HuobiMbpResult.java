@@ -0,0 +1,28 @@
+package com.troy.streamingexchange.huobi.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 增量盘口推送（tick）或全量请求应答（data）
+ */
+public class HuobiMbpResult extends HuobiResult<HuobiMbp> {
+
+    private final long ts;
+
+    @JsonCreator
+    public HuobiMbpResult(
+            @JsonProperty("status") String status,
+            @JsonProperty("ts") long ts,
+            @JsonProperty("tick") HuobiMbp tick,
+            @JsonProperty("data") HuobiMbp data,
+            @JsonProperty("err-code") String errCode,
+            @JsonProperty("err-msg") String errMsg) {
+        super(status, errCode, errMsg, tick != null ? tick : data);
+        this.ts = ts;
+    }
+
+    public long getTs() {
+        return ts;
+    }
+}
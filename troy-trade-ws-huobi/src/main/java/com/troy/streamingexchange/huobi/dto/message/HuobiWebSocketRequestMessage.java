@@ -2,6 +2,7 @@ package com.troy.streamingexchange.huobi.dto.message;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.troy.streamingexchange.huobi.TopicType;
 
 /**
  * HuobiWebSocketRequestMessage
@@ -11,6 +12,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  */
 public class HuobiWebSocketRequestMessage extends HuobiWebSocketMessage {
     private static final String TRADE_DETAIL_REQ_FORMATE = "market.%s.trade.detail";
+    private static final String MARKET_MBP_REQ_FORMATE = "market.%s.mbp.%s";
     private static final String REQ = "req";
     private static final String ID = "id";
 
@@ -29,6 +31,22 @@ public class HuobiWebSocketRequestMessage extends HuobiWebSocketMessage {
         this.pair = pair;
     }
 
+    /**
+     * @param channelType 请求类型，见{@link TopicType}
+     * @param id
+     * @param pair
+     * @param levels 增量盘口档数
+     */
+    public HuobiWebSocketRequestMessage(String channelType, String id, String pair, String levels) {
+        if (TopicType.TOPIC_MARKET_MBP_REQ.equals(channelType)) {
+            this.req = String.format(MARKET_MBP_REQ_FORMATE, pair, levels);
+        } else {
+            this.req = String.format(TRADE_DETAIL_REQ_FORMATE, pair);
+        }
+        this.id = id;
+        this.pair = pair;
+    }
+
     public String getId() {
         return id;
     }
@@ -8,6 +8,7 @@ import com.troy.streamingexchange.huobi.TopicType;
 public class HuobiWebSocketSubscriptionMessage extends HuobiWebSocketMessage {
     private static final String KLINE_SUB_FORMATE = "market.%s.kline.%s";
     private static final String MARKET_DEPTH_SUB_FORMATE = "market.%s.depth.%s";
+    private static final String MARKET_MBP_SUB_FORMATE = "market.%s.mbp.%s";
     private static final String TRADE_DETAIL_SUB_FORMATE = "market.%s.trade.detail";
     private static final String MARKET_DETAIL_SUB_FORMATE = "market.%s.detail";
     private static final String SUB = "sub";
@@ -30,6 +31,9 @@ public class HuobiWebSocketSubscriptionMessage extends HuobiWebSocketMessage {
         if (TopicType.TOPIC_MARKET_DEPTH.equals(channelType)) {
             this.sub = String.format(MARKET_DEPTH_SUB_FORMATE, pair, depthType);
         }
+        if (TopicType.TOPIC_MARKET_MBP.equals(channelType)) {
+            this.sub = String.format(MARKET_MBP_SUB_FORMATE, pair, depthType);
+        }
         if (TopicType.TOPIC_MARKET_TRADE.equals(channelType)) {
             this.sub = String.format(TRADE_DETAIL_SUB_FORMATE, pair);
         }
@@ -0,0 +1,113 @@
+package com.troy.streamingexchange.huobi;
+
+import com.troy.streamingexchange.huobi.dto.HuobiMbp;
+import com.troy.trade.ws.dto.LimitOrder;
+import com.troy.trade.ws.dto.OrderBook;
+import com.troy.trade.ws.dto.currency.CurrencyPair;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HuobiLocalOrderBookTest {
+
+    private static final CurrencyPair PAIR = new CurrencyPair("BTC", "USDT");
+
+    private final AtomicInteger snapshotRequests = new AtomicInteger();
+    private HuobiLocalOrderBook book;
+
+    @Before
+    public void setup() {
+        book = new HuobiLocalOrderBook("btcusdt", 150, snapshotRequests::incrementAndGet);
+    }
+
+    @Test
+    public void bufferedDiffsAreAppliedOnTopOfSnapshot() {
+        assertFalse(book.onDiff(diff(100, 99, level("10", "5"), level("11", "5")), 1L));
+        assertFalse(book.onDiff(diff(101, 100, level("9.5", "2"), level("11", "0")), 1L));
+
+        assertTrue(book.onSnapshot(snapshot(100, level("10", "1"), level("11", "1")), 1L));
+
+        OrderBook orderBook = book.toOrderBook(10, PAIR);
+        assertLevels(orderBook.getBids(), "10", "1", "9.5", "2");
+        assertEquals(0, orderBook.getAsks().size());
+        //订阅时已发送首次全量请求
+        assertEquals(0, snapshotRequests.get());
+    }
+
+    @Test
+    public void staleDiffIsIgnored() {
+        book.onSnapshot(snapshot(100, level("10", "1"), level("11", "1")), 1L);
+
+        assertFalse(book.onDiff(diff(100, 99, level("10", "4"), level("11", "4")), 1L));
+        assertLevels(book.toOrderBook(10, PAIR).getBids(), "10", "1");
+    }
+
+    @Test
+    public void gapTriggersSnapshotRequest() {
+        book.onSnapshot(snapshot(100, level("10", "1"), level("11", "1")), 1L);
+        assertTrue(book.onDiff(diff(101, 100, level("10", "2"), level("11", "2")), 1L));
+
+        assertFalse(book.onDiff(diff(105, 104, level("10", "3"), level("11", "3")), 1L));
+        assertEquals(1, book.getGaps());
+        assertEquals(1, snapshotRequests.get());
+        assertEquals(0, book.toOrderBook(10, PAIR).getBids().size());
+
+        assertTrue(book.onSnapshot(snapshot(104, level("8", "1"), level("12", "1")), 1L));
+        OrderBook orderBook = book.toOrderBook(10, PAIR);
+        assertLevels(orderBook.getBids(), "10", "3", "8", "1");
+        assertLevels(orderBook.getAsks(), "11", "3", "12", "1");
+        assertTrue(book.onDiff(diff(106, 105, level("8", "0"), level("12", "6")), 1L));
+        assertLevels(book.toOrderBook(10, PAIR).getBids(), "10", "3");
+    }
+
+    @Test
+    public void aggregatedViewFollowsRawUpdates() {
+        book.onSnapshot(new HuobiMbp(100, null,
+                Arrays.asList(level("10.05", "1"), level("10.01", "2"), level("9.99", "4")),
+                Arrays.asList(level("10.11", "1"), level("10.19", "2"), level("10.21", "4"))), 1L);
+
+        BigDecimal step = new BigDecimal("0.1");
+        OrderBook orderBook = book.toOrderBook(step, 10, PAIR);
+        //买盘向下取整，卖盘向上取整
+        assertLevels(orderBook.getBids(), "10", "3", "9.9", "4");
+        assertLevels(orderBook.getAsks(), "10.2", "3", "10.3", "4");
+
+        assertTrue(book.onDiff(new HuobiMbp(101, 100L,
+                Arrays.asList(level("10.05", "0"), level("10.08", "5")),
+                Collections.singletonList(level("10.3", "1"))), 1L));
+        orderBook = book.toOrderBook(step, 10, PAIR);
+        assertLevels(orderBook.getBids(), "10", "7", "9.9", "4");
+        assertLevels(orderBook.getAsks(), "10.2", "3", "10.3", "5");
+        assertLevels(book.toOrderBook(null, 10, PAIR).getBids(), "10.08", "5", "10.01", "2", "9.99", "4");
+    }
+
+    private static BigDecimal[] level(String price, String size) {
+        return new BigDecimal[]{new BigDecimal(price), new BigDecimal(size)};
+    }
+
+    private static HuobiMbp snapshot(long seqNum, BigDecimal[] bid, BigDecimal[] ask) {
+        return new HuobiMbp(seqNum, null, Collections.singletonList(bid), Collections.singletonList(ask));
+    }
+
+    private static HuobiMbp diff(long seqNum, long prevSeqNum, BigDecimal[] bid, BigDecimal[] ask) {
+        return new HuobiMbp(seqNum, prevSeqNum, Collections.singletonList(bid), Collections.singletonList(ask));
+    }
+
+    private static void assertLevels(List<LimitOrder> orders, String... levels) {
+        assertEquals(levels.length / 2, orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            LimitOrder order = orders.get(i);
+            assertEquals(Arrays.toString(levels), 0, new BigDecimal(levels[i * 2]).compareTo(order.getLimitPrice()));
+            assertEquals(Arrays.toString(levels), 0, new BigDecimal(levels[i * 2 + 1]).compareTo(order.getOriginalAmount()));
+        }
+    }
+}
@@ -5,15 +5,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.troy.streamingexchange.okex.dto.WebSocketMessage;
 import com.troy.trade.ws.exceptions.ExchangeException;
 import com.troy.trade.ws.netty.JsonNettyStreamingService;
+import com.troy.trade.ws.netty.StreamingObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 
 public class OkexStreamingService extends JsonNettyStreamingService {
 
     private static final String ERROR = "error";
 
+    //重新订阅每帧的频道数
+    private static final int RESUBSCRIBE_BATCH_SIZE = 50;
+
+    //心跳：30秒内没有数据交互服务端会断开，发送"ping"，应答"pong"（非JSON）
+    private static final String PING = "ping";
+    private static final String PONG = "pong";
+
     private static final Logger LOG = LoggerFactory.getLogger(OkexStreamingService.class);
 
     public OkexStreamingService(String apiUrl) {
@@ -35,16 +44,53 @@ public class OkexStreamingService extends JsonNettyStreamingService {
         String[] channelNames = {channelName};
         WebSocketMessage webSocketMessage = new WebSocketMessage("subscribe", channelNames);
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
+        return objectMapper.writeValueAsString(webSocketMessage);
+    }
+
+    /**
+     * 一帧订阅多个频道（args数组）
+     */
+    @Override
+    public String getBatchSubscribeMessage(List<String> channelNames, List<Object[]> args) throws IOException {
+        WebSocketMessage webSocketMessage = new WebSocketMessage("subscribe", channelNames.toArray(new String[0]));
+
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(webSocketMessage);
     }
 
+    /**
+     * 每帧的频道数，args总长度不能超过4096字节
+     */
+    @Override
+    protected int getResubscribeBatchSize() {
+        return RESUBSCRIBE_BATCH_SIZE;
+    }
+
+    @Override
+    protected String getPingMessage() {
+        return PING;
+    }
+
+    @Override
+    protected String getPongMessage() {
+        return PONG;
+    }
+
+    /**
+     * 盘口频道持续有增量推送，长时间静默视为失效
+     */
+    @Override
+    protected long getChannelStaleTimeout(String channelName) {
+        return channelName.startsWith("spot/depth") ? DEPTH_STALE_TIMEOUT : 0L;
+    }
+
     @Override
     public String getUnsubscribeMessage(String channelName) throws IOException {
         String[] channelNames = {channelName};
         WebSocketMessage webSocketMessage = new WebSocketMessage("unsubscribe", channelNames);
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = StreamingObjectMapper.get();
         return objectMapper.writeValueAsString(webSocketMessage);
     }
 
@@ -11,6 +11,7 @@ import com.troy.trade.ws.model.dto.in.DepthSubscribe;
 import com.troy.trade.ws.model.dto.in.TradeSubscribe;
 import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
 import com.troy.trade.ws.model.dto.out.trades.TradeDataResponse;
+import com.troy.trade.ws.server.DepthSnapshotCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -28,13 +29,23 @@ public class MarketController extends BaseController {
     @Autowired
     RestExchangeServiceFactory restExchangeServiceFactory;
 
+    @Autowired
+    DepthSnapshotCache depthSnapshotCache;
+
     @RequestMapping(value = "/xxxxx/dddddd/orderBook", method = RequestMethod.POST)
     public Res<DepthResponse> orderBook(@RequestBody Req<DepthSubscribe> req) {
         return super.process(req, (GreedyRequestProxy<DepthSubscribe, DepthResponse>) (reqHead, reqData) -> {
             String exchCode = reqData.getExchCode();
             ExchangeCode exchangeCode = EnumUtils.getEnumByCode(exchCode,ExchangeCode.class);
             reqData.setExchangeCode(exchangeCode);
-            DepthResponse depthResponse = this.restExchangeServiceFactory.getRestExchangeService(exchangeCode).orderBook(reqData);
+            //优先使用本地盘口快照，没有或已过期时查询行情接口
+            Integer limit = reqData.getLimit();
+            DepthResponse depthResponse = this.depthSnapshotCache.get(exchCode, reqData.getSymbol(), reqData.getAlias(),
+                    reqData.getInterval(), limit == null ? Integer.MAX_VALUE : limit);
+            if (depthResponse != null) {
+                return depthResponse;
+            }
+            depthResponse = this.restExchangeServiceFactory.getRestExchangeService(exchangeCode).orderBook(reqData);
             return depthResponse;
         });
     }
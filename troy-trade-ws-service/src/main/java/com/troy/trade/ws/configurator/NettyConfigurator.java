@@ -0,0 +1,33 @@
+package com.troy.trade.ws.configurator;
+
+import com.troy.trade.ws.configurator.properties.NettyProperties;
+import com.troy.trade.ws.netty.EventLoopGroups;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * 共享Netty EventLoopGroup配置，需在建立交易所连接前完成
+ */
+@Slf4j
+@Configuration
+public class NettyConfigurator {
+
+    @Autowired
+    private NettyProperties nettyProperties;
+
+    @PostConstruct
+    public void configure() {
+        log.info("共享EventLoopGroup配置 threads={},ioRatio={},epoll={}",
+                nettyProperties.getThreads(), nettyProperties.getIoRatio(), nettyProperties.isEpoll());
+        EventLoopGroups.configure(nettyProperties.getThreads(), nettyProperties.getIoRatio(), nettyProperties.isEpoll());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        EventLoopGroups.shutdownGracefully();
+    }
+}
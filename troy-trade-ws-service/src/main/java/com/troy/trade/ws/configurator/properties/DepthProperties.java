@@ -0,0 +1,35 @@
+package com.troy.trade.ws.configurator.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 盘口推送配置
+ */
+@Component
+@ConfigurationProperties(prefix = "troy.depth")
+@Setter
+@Getter
+public class DepthProperties {
+
+    /**
+     * 可选的推送间隔档位（毫秒），客户端订阅时通过flushInterval选择，取不小于该值的最近档位
+     */
+    private List<Integer> flushIntervals = new ArrayList<>(Arrays.asList(50, 100, 250));
+
+    /**
+     * 客户端未指定时的推送间隔（毫秒），0-不合并，每次上游更新立即推送
+     */
+    private int defaultFlushInterval = 100;
+
+    /**
+     * 本地盘口快照的最长有效时间（毫秒），上游超过该时间未更新时新订阅和REST查询改为调用行情接口
+     */
+    private long snapshotMaxAge = 5000L;
+}
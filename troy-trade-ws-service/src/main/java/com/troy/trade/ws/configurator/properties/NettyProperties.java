@@ -0,0 +1,31 @@
+package com.troy.trade.ws.configurator.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 交易所ws客户端共享Netty EventLoopGroup配置
+ */
+@Component
+@ConfigurationProperties(prefix = "troy.netty")
+@Setter
+@Getter
+public class NettyProperties {
+
+    /**
+     * IO线程数，0-Netty默认（2*CPU核数）
+     */
+    private int threads = 0;
+
+    /**
+     * IO与任务执行时间比例（1-100）
+     */
+    private int ioRatio = 50;
+
+    /**
+     * Linux下是否优先使用epoll
+     */
+    private boolean epoll = true;
+}
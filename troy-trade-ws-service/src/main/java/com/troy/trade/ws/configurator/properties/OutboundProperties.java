@@ -0,0 +1,36 @@
+package com.troy.trade.ws.configurator.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 客户端推送积压控制配置
+ */
+@Component
+@ConfigurationProperties(prefix = "troy.outbound")
+@Setter
+@Getter
+public class OutboundProperties {
+
+    /**
+     * 单个客户端在clientOutboundChannel中排队的消息数上限，超过后行情消息丢弃（盘口合并为恢复后的一次快照），私有消息不丢弃
+     */
+    private int queueLimit = 100;
+
+    /**
+     * 持续超过上限多少秒后断开客户端
+     */
+    private int evictAfterSeconds = 10;
+
+    /**
+     * 单次发送最长时间（毫秒），超过后断开客户端
+     */
+    private int sendTimeLimit = 10 * 1000;
+
+    /**
+     * 会话发送缓冲上限（字节），超过后断开客户端
+     */
+    private int sendBufferSizeLimit = 512 * 1024;
+}
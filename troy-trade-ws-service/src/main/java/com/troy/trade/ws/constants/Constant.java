@@ -40,6 +40,11 @@ public class Constant {
      */
     public final static String DEPTH_DESTINATION_PREFIX = "/topic/depth/";
 
+    /**
+     * 上游连接状态推送前缀
+     */
+    public final static String STATUS_DESTINATION_PREFIX = "/topic/status/";
+
     /**
      * 账户session信息map key的分隔符
      */
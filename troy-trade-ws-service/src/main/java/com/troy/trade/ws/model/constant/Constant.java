@@ -41,10 +41,6 @@ public class Constant {
     /******* 交易所连接key ************/
 
     /*******************************/
-    /**
-     * 盘口请求全量数据最终时间 redis key
-     */
-    public static final String ORDERBOOK_GATEIO_FULLDATA_REDIS_KEY = "orderBook:fulldata:gateio:{sessionId}";
 
     /**
      * 盘口请求全量数据最终时间 redis key
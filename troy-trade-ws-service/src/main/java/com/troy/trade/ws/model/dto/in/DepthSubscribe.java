@@ -23,6 +23,11 @@ public class DepthSubscribe extends RequestBaseDto {
      */
     private String interval;
 
+    /**
+     * 推送间隔（毫秒），取不小于该值的最近档位，为空使用默认间隔
+     */
+    private Integer flushInterval;
+
     /**
      * sessionId
      */
@@ -44,6 +49,14 @@ public class DepthSubscribe extends RequestBaseDto {
         this.interval = interval;
     }
 
+    public Integer getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Integer flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
     public String getSessionId() {
         return sessionId;
     }
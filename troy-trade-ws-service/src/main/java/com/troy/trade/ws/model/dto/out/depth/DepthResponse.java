@@ -13,7 +13,8 @@ import java.util.List;
  */
 public class DepthResponse extends ResData {
     private String symbol;
-    private boolean fullData;
+    private boolean fullData;//true-全量快照，false-增量（数量为0表示删除该档）
+    private long seq;//推送序号，同一订阅内连续递增，不连续时客户端需重新订阅
     private List<List<String>> asks;//卖单,0-价格，1-数量
     private List<List<String>> bids;//买单,0-价格，1-数量
 
@@ -50,6 +51,14 @@ public class DepthResponse extends ResData {
         return fullData;
     }
 
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
     public void setAsks(List<List<String>> asks) {
         this.asks = asks;
     }
@@ -5,6 +5,8 @@ public enum MethodEnum {
     /*********** 公共订阅 *************/
     //system相关消息
     PING("server.ping"),
+    //上游连接状态：连接就绪或失败
+    SERVER_STATUS("server.status"),
 
     //depth订阅相关
     DEPTH_QUERY("depth.query"),
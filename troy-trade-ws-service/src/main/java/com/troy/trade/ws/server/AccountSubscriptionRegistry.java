@@ -0,0 +1,201 @@
+package com.troy.trade.ws.server;
+
+import com.google.common.collect.Maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 用户私有频道（委托、余额）订阅登记
+ * 双向索引：订阅 -> 客户端（推送用），客户端 -> 订阅（断开时清理用）
+ * 订阅下的客户端为写时复制数组，推送时直接遍历无需加锁、无需复制；
+ * 登记、移除按客户端串行（ConcurrentHashMap.compute），客户端断开时只处理该客户端自己的订阅，不再遍历全部账户
+ */
+public class AccountSubscriptionRegistry {
+
+    private static final String[] EMPTY = new String[0];
+
+    /**
+     * <账户ID,<symbolKey,sessionId数组>>
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, String[]>> accountSubscribers = Maps.newConcurrentMap();
+
+    /**
+     * <sessionId,订阅集合>
+     */
+    private final ConcurrentMap<String, Set<Subscription>> sessionSubscriptions = Maps.newConcurrentMap();
+
+    /**
+     * 登记订阅
+     * @param accountId
+     * @param symbolKey 见{@link SessionUtil#getAccountIdSessionMapKey}
+     * @param sessionId
+     */
+    public void add(String accountId, String symbolKey, String sessionId) {
+        Subscription subscription = new Subscription(accountId, symbolKey);
+        //按session串行，避免与断开清理交错后残留
+        sessionSubscriptions.compute(sessionId, (key, subscriptions) -> {
+            Set<Subscription> result = subscriptions == null ? ConcurrentHashMap.newKeySet() : subscriptions;
+            if (result.add(subscription)) {
+                addSubscriber(subscription, sessionId);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 移除客户端在某账户下的全部订阅
+     * @param accountId
+     * @param sessionId
+     * @return 是否有订阅被移除
+     */
+    public boolean remove(String accountId, String sessionId) {
+        boolean[] removed = {false};
+        sessionSubscriptions.computeIfPresent(sessionId, (key, subscriptions) -> {
+            subscriptions.removeIf(subscription -> {
+                if (!subscription.accountId.equals(accountId)) {
+                    return false;
+                }
+                removeSubscriber(subscription, sessionId);
+                removed[0] = true;
+                return true;
+            });
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+        return removed[0];
+    }
+
+    /**
+     * 移除客户端的全部订阅（连接断开）
+     * @param sessionId
+     * @return 是否有订阅被移除
+     */
+    public boolean removeSession(String sessionId) {
+        boolean[] removed = {false};
+        sessionSubscriptions.computeIfPresent(sessionId, (key, subscriptions) -> {
+            for (Subscription subscription : subscriptions) {
+                removeSubscriber(subscription, sessionId);
+            }
+            removed[0] = !subscriptions.isEmpty();
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * 订阅了某账户某交易对的客户端
+     * @param accountId
+     * @param symbolKey
+     * @return sessionId数组，只读，无订阅时为空数组
+     */
+    public String[] getSessions(String accountId, String symbolKey) {
+        Map<String, String[]> symbols = accountSubscribers.get(accountId);
+        if (symbols == null) {
+            return EMPTY;
+        }
+        String[] sessions = symbols.get(symbolKey);
+        return sessions == null ? EMPTY : sessions;
+    }
+
+    public boolean containsAccount(String accountId) {
+        return accountSubscribers.containsKey(accountId);
+    }
+
+    public boolean isEmpty() {
+        return accountSubscribers.isEmpty();
+    }
+
+    /**
+     * 当前全部订阅（账户+交易对，不含客户端）
+     * @return
+     */
+    public List<Subscription> getSubscriptions() {
+        List<Subscription> result = new ArrayList<>();
+        accountSubscribers.forEach((accountId, symbols) ->
+                symbols.keySet().forEach(symbolKey -> result.add(new Subscription(accountId, symbolKey))));
+        return result;
+    }
+
+    private void addSubscriber(Subscription subscription, String sessionId) {
+        accountSubscribers.compute(subscription.accountId, (key, symbols) -> {
+            ConcurrentMap<String, String[]> result = symbols == null ? Maps.newConcurrentMap() : symbols;
+            result.merge(subscription.symbolKey, new String[]{sessionId}, (sessions, added) -> {
+                String[] copy = Arrays.copyOf(sessions, sessions.length + 1);
+                copy[sessions.length] = sessionId;
+                return copy;
+            });
+            return result;
+        });
+    }
+
+    private void removeSubscriber(Subscription subscription, String sessionId) {
+        accountSubscribers.computeIfPresent(subscription.accountId, (key, symbols) -> {
+            symbols.computeIfPresent(subscription.symbolKey, (symbolKey, sessions) -> {
+                String[] copy = new String[sessions.length];
+                int n = 0;
+                for (String session : sessions) {
+                    if (!session.equals(sessionId)) {
+                        copy[n++] = session;
+                    }
+                }
+                return n == 0 ? null : Arrays.copyOf(copy, n);
+            });
+            return symbols.isEmpty() ? null : symbols;
+        });
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        accountSubscribers.forEach((accountId, symbols) -> {
+            sb.append(accountId).append("={");
+            symbols.forEach((symbolKey, sessions) -> sb.append(symbolKey).append('=').append(Arrays.toString(sessions)).append(','));
+            sb.append("},");
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 订阅（账户+交易对）
+     */
+    public static class Subscription {
+        private final String accountId;
+        private final String symbolKey;
+
+        public Subscription(String accountId, String symbolKey) {
+            this.accountId = accountId;
+            this.symbolKey = symbolKey;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getSymbolKey() {
+            return symbolKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Subscription)) {
+                return false;
+            }
+            Subscription that = (Subscription) o;
+            return accountId.equals(that.accountId) && symbolKey.equals(that.symbolKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accountId, symbolKey);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.troy.trade.ws.server;
 
+import com.troy.commons.utils.ApplicationContextUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.SubscribableChannel;
@@ -24,6 +25,7 @@ public class CustomSubProtocolWebSocketHandler extends SubProtocolWebSocketHandl
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         log.info("用户连接，WebSocketHandler中新连接建立，sessionId={}，New websocket connection was established",session.getId());
+        ApplicationContextUtil.getBean(SessionOutboundTracker.class).register(session);
         super.afterConnectionEstablished(session);
     }
 
@@ -31,5 +33,7 @@ public class CustomSubProtocolWebSocketHandler extends SubProtocolWebSocketHandl
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         log.info("用户断开连接，WebSocketHandler中wesocket连接断开处理 websocket connection:sessionId={} was closed",session.getId());
         SessionUtil.removeSession(session.getId(),null);
+        ApplicationContextUtil.getBean(TopicFanout.class).removeSession(session.getId());
+        ApplicationContextUtil.getBean(SessionOutboundTracker.class).remove(session.getId());
     }
 }
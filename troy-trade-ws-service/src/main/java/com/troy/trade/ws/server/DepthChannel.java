@@ -0,0 +1,176 @@
+package com.troy.trade.ws.server;
+
+import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
+import com.troy.trade.ws.model.enums.MethodEnum;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * 盘口推送频道
+ * 同一交易所、同一盘口路径、同一推送间隔的客户端共用一个频道：共用一份{@link DepthSequencer}，
+ * 每次推送只序列化一次，按共享主题（见{@link TopicFanout#genTopic}）把同一份字节发给频道内所有客户端
+ * 新加入的客户端先收到一次当前盘口的全量快照（seq为当前序号），之后与其他客户端一起接收增量；
+ * 积压的客户端跳过增量（由{@link TopicFanout#publish}判断并返回），恢复后按新加入处理，补发一次快照（合并而非出现序号缺口）
+ */
+public class DepthChannel {
+
+    private final String exchCode;
+    private final String destination;
+    private final int flushInterval;
+    /**
+     * 盘口快照key，见{@link DepthSnapshotCache#genKey}
+     */
+    private final String snapshotKey;
+    private final DepthSequencer sequencer = new DepthSequencer();
+    /**
+     * 频道内的客户端sessionId
+     */
+    private final Set<String> subscribers = ConcurrentHashMap.newKeySet();
+    /**
+     * 等待全量快照的客户端sessionId，由this同步
+     */
+    private final Set<String> newcomers = new HashSet<>();
+    /**
+     * 是否已在推送队列中，见{@link DepthPublisher}
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public DepthChannel(String exchCode, String destination, int flushInterval, String snapshotKey) {
+        this.exchCode = exchCode;
+        this.destination = destination;
+        this.flushInterval = flushInterval;
+        this.snapshotKey = snapshotKey;
+    }
+
+    /**
+     * 生成频道key
+     * @param exchCode 交易所code
+     * @param destination 盘口路径
+     * @param flushInterval 推送间隔（毫秒）
+     * @return
+     */
+    public static String genChannelKey(String exchCode, String destination, int flushInterval) {
+        return exchCode + "_" + destination + "_" + flushInterval;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    public String getSnapshotKey() {
+        return snapshotKey;
+    }
+
+    /**
+     * 频道是否已推送过盘口，是则新客户端可直接从频道获得快照，无需再查询REST
+     * @return
+     */
+    public boolean isLive() {
+        return sequencer.isLive();
+    }
+
+    /**
+     * 客户端加入频道（重复加入时重新推送快照）
+     * @param sessionId
+     */
+    synchronized void join(String sessionId) {
+        subscribers.add(sessionId);
+        newcomers.add(sessionId);
+    }
+
+    /**
+     * 客户端离开频道
+     * @param sessionId
+     * @return 频道内是否已无客户端
+     */
+    synchronized boolean leave(String sessionId) {
+        subscribers.remove(sessionId);
+        newcomers.remove(sessionId);
+        return subscribers.isEmpty();
+    }
+
+    /**
+     * 合并上游盘口
+     * @param depthResponse
+     * @return 需要立即推送的盘口，见{@link DepthSequencer#offer}
+     */
+    DepthResponse offer(DepthResponse depthResponse) {
+        return sequencer.offer(depthResponse);
+    }
+
+    /**
+     * 上游最新盘口的前N档全量快照
+     * @param depth 档数
+     * @return 见{@link DepthSequencer#book}
+     */
+    DepthResponse book(int depth) {
+        return sequencer.book(depth);
+    }
+
+    boolean markScheduled() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    void clearScheduled() {
+        scheduled.set(false);
+    }
+
+    /**
+     * 立即推送给频道内所有客户端
+     * @param notificationService
+     * @param depthResponse
+     */
+    synchronized void send(NotificationService notificationService, DepthResponse depthResponse) {
+        newcomers.clear();
+        newcomers.addAll(broadcast(notificationService, subscribers::contains, depthResponse));
+    }
+
+    /**
+     * 推送自上次推送以来的变化，并给新加入的客户端推送快照
+     * 在锁内发送，保证同一频道的推送顺序与seq一致
+     * @param notificationService
+     */
+    synchronized void flush(NotificationService notificationService) {
+        DepthResponse out = sequencer.drain();
+        //本轮因积压跳过增量的客户端，本轮不再补发快照
+        Set<String> dropped = Collections.emptySet();
+        if (out != null) {
+            if (out.isFullData()) {
+                newcomers.clear();
+            }
+            dropped = broadcast(notificationService,
+                    sessionId -> subscribers.contains(sessionId) && !newcomers.contains(sessionId), out);
+            newcomers.addAll(dropped);
+        }
+        newcomers.retainAll(subscribers);
+        if (newcomers.size() == dropped.size() || !sequencer.isLive()) {
+            return;
+        }
+        Set<String> targets = new HashSet<>(newcomers);
+        targets.removeAll(dropped);
+        //快照推送后仍积压的客户端留待下次补发
+        Set<String> pending = broadcast(notificationService, targets::contains, sequencer.snapshot());
+        newcomers.retainAll(pending);
+        newcomers.addAll(dropped);
+    }
+
+    /**
+     * @return 因积压未推送的客户端sessionId
+     */
+    private Set<String> broadcast(NotificationService notificationService, Predicate<String> sessionFilter, DepthResponse depthResponse) {
+        if (subscribers.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return notificationService.publish(exchCode, destination,
+                notificationService.turnNotification(depthResponse, MethodEnum.DEPTH_UPDATE.getType()), sessionFilter);
+    }
+}
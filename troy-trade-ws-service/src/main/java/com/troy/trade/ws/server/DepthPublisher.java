@@ -0,0 +1,134 @@
+package com.troy.trade.ws.server;
+
+import com.troy.trade.ws.configurator.properties.DepthProperties;
+import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 盘口合并推送
+ * 上游推送只合并到{@link DepthChannel}，每个推送间隔档位一个定时任务，按档位间隔将有变化的频道推送给客户端，
+ * 同一频道在一个间隔内的多次更新只推送一次最新状态，推送也不再占用交易所连接的IO线程
+ */
+@Slf4j
+@Component
+public class DepthPublisher {
+
+    @Autowired
+    private DepthProperties depthProperties;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private DepthSnapshotCache depthSnapshotCache;
+
+    /**
+     * <推送间隔, 待推送队列>
+     */
+    private final TreeMap<Integer, Queue<DepthChannel>> tiers = new TreeMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        for (Integer interval : depthProperties.getFlushIntervals()) {
+            if (interval != null && interval > 0) {
+                tiers.put(interval, new ConcurrentLinkedQueue<>());
+            }
+        }
+        if (depthProperties.getDefaultFlushInterval() > 0) {
+            tiers.putIfAbsent(depthProperties.getDefaultFlushInterval(), new ConcurrentLinkedQueue<>());
+        }
+        log.info("盘口合并推送档位 flushIntervals:{},defaultFlushInterval:{}", tiers.keySet(), depthProperties.getDefaultFlushInterval());
+        if (tiers.isEmpty()) {
+            return;
+        }
+        scheduler = Executors.newScheduledThreadPool(tiers.size(), r -> {
+            Thread t = new Thread(r, "depth-publisher");
+            t.setDaemon(true);
+            return t;
+        });
+        tiers.forEach((interval, queue) ->
+                scheduler.scheduleAtFixedRate(() -> flush(queue), interval, interval, TimeUnit.MILLISECONDS));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 客户端要求的推送间隔对应的档位
+     * @param flushInterval 客户端要求的推送间隔（毫秒），null-默认
+     * @return 档位（毫秒），0-不合并
+     */
+    public int resolveFlushInterval(Integer flushInterval) {
+        int interval = flushInterval == null ? depthProperties.getDefaultFlushInterval() : flushInterval;
+        if (interval <= 0 || tiers.isEmpty()) {
+            return 0;
+        }
+        Integer tier = tiers.ceilingKey(interval);
+        return tier != null ? tier : tiers.lastKey();
+    }
+
+    /**
+     * 合并上游盘口，按频道的推送间隔推送
+     * @param channel 盘口推送频道
+     * @param depthResponse 上游盘口
+     */
+    public void publish(DepthChannel channel, DepthResponse depthResponse) {
+        DepthResponse immediate = channel.offer(depthResponse);
+        depthSnapshotCache.update(channel);
+        if (immediate != null) {
+            channel.send(notificationService, immediate);
+            return;
+        }
+        schedule(channel);
+    }
+
+    /**
+     * 将频道加入推送队列（已在队列中则忽略），不合并的频道立即推送
+     * @param channel
+     */
+    public void schedule(DepthChannel channel) {
+        Queue<DepthChannel> queue = tiers.get(channel.getFlushInterval());
+        if (queue == null) {//不合并
+            channel.flush(notificationService);
+            return;
+        }
+        if (channel.markScheduled()) {
+            queue.offer(channel);
+        }
+    }
+
+    private void flush(Queue<DepthChannel> queue) {
+        //只处理本轮开始前已入队的，避免高频更新时一直处理不完
+        int n = queue.size();
+        for (int i = 0; i < n; i++) {
+            DepthChannel channel = queue.poll();
+            if (channel == null) {
+                return;
+            }
+            try {
+                //先出队再取数据，取数据后的更新会重新入队
+                channel.clearScheduled();
+                channel.flush(notificationService);
+            } catch (Throwable e) {
+                log.error("盘口合并推送异常 destination:{},异常信息：", channel.getDestination(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.troy.trade.ws.server;
+
+import com.troy.trade.ws.enums.OrderTypeEnum;
+import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
+import com.troy.trade.ws.orderbook.BookSide;
+import com.troy.trade.ws.orderbook.Decimals;
+import com.troy.trade.ws.orderbook.LocalOrderBook;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 盘口增量推送
+ * 每个盘口推送频道（{@link DepthChannel}）一个实例：上游数据先合并到本地盘口（{@link #offer}），推送时（{@link #drain}）
+ * 与上次推送的盘口比较，首次推送全量快照，之后只推送变化的档位（数量为0表示删除该档），
+ * 两次推送之间的多次上游更新合并为一次，客户端始终拿到最新盘口而不会积压
+ * 每次推送带递增序号seq，客户端发现序号不连续时重新订阅即可重新获得全量快照（{@link #snapshot}）；另按固定间隔推送一次全量快照兜底
+ *
+ * 上游数据分两种（DepthResponse.fullData）：
+ * true-完整盘口（REST快照、币安depth20、火币step等），替换本地盘口；
+ * false-上游增量（OKEx、Gate.io、Bitfinex），合并到本地盘口
+ */
+@Slf4j
+public class DepthSequencer {
+
+    /**
+     * 全量快照兜底间隔（毫秒）
+     */
+    private static final long FULL_SNAPSHOT_INTERVAL = 30000L;
+
+    private static final String ZERO = "0";
+
+    /**
+     * 上游最新盘口
+     */
+    private final LocalOrderBook current = new LocalOrderBook();
+    /**
+     * 客户端当前持有的盘口（上次推送后的状态）
+     */
+    private final LocalOrderBook pushed = new LocalOrderBook();
+    private String symbol;
+    private boolean dirty;
+    /**
+     * 是否收到过完整盘口（只收到增量时本地盘口不完整，不能作为快照）
+     */
+    private boolean complete;
+    private long seq;
+    private long lastFullTime;
+    /**
+     * 数值超出定点范围时不再合并，全部按原样立即推送
+     */
+    private boolean passThrough;
+
+    /**
+     * 是否已推送过全量快照
+     * @return
+     */
+    public synchronized boolean isLive() {
+        return lastFullTime != 0L && !passThrough;
+    }
+
+    /**
+     * 合并上游盘口
+     * @param depthResponse 上游盘口
+     * @return 需要立即推送的盘口（已设置seq，仅数值超出定点范围时），null-已合并，等待{@link #drain}
+     */
+    public synchronized DepthResponse offer(DepthResponse depthResponse) {
+        if (passThrough) {
+            return sequence(depthResponse);
+        }
+        try {
+            if (depthResponse.isFullData()) {
+                current.clear();
+                complete = true;
+            }
+            apply(current, OrderTypeEnum.ASK, depthResponse.getAsks());
+            apply(current, OrderTypeEnum.BID, depthResponse.getBids());
+            symbol = depthResponse.getSymbol();
+            dirty = true;
+            return null;
+        } catch (ArithmeticException | NumberFormatException e) {
+            log.warn("盘口数值无法用定点精确表示，改为原样推送 symbol:{},异常信息:{}", depthResponse.getSymbol(), e.getMessage());
+            passThrough = true;
+            return sequence(depthResponse);
+        }
+    }
+
+    /**
+     * 取出自上次推送以来的变化
+     * @return 要推送的盘口（已设置seq），null-盘口无变化不推送
+     */
+    public synchronized DepthResponse drain() {
+        if (passThrough || !dirty) {
+            return null;
+        }
+        dirty = false;
+        long now = System.currentTimeMillis();
+        DepthResponse out;
+        //小数位数变化（见LocalOrderBook#rescale）后两份盘口的定点值不可直接比较，推送全量
+        boolean rescaled = current.getPriceScale() != pushed.getPriceScale() || current.getSizeScale() != pushed.getSizeScale();
+        if (lastFullTime == 0L || rescaled || now - lastFullTime >= FULL_SNAPSHOT_INTERVAL) {
+            lastFullTime = now;
+            out = new DepthResponse(symbol, true,
+                    current.toLevels(OrderTypeEnum.ASK, Integer.MAX_VALUE),
+                    current.toLevels(OrderTypeEnum.BID, Integer.MAX_VALUE));
+        } else {
+            List<List<String>> asks = diff(OrderTypeEnum.ASK);
+            List<List<String>> bids = diff(OrderTypeEnum.BID);
+            if (asks.isEmpty() && bids.isEmpty()) {
+                return null;
+            }
+            out = new DepthResponse(symbol, false, asks, bids);
+        }
+        pushed.copyFrom(current);
+        return sequence(out);
+    }
+
+    /**
+     * 客户端当前应持有的盘口全量快照，seq为最近一次推送的序号，供新加入的客户端使用
+     * @return
+     */
+    public synchronized DepthResponse snapshot() {
+        DepthResponse out = new DepthResponse(symbol, true,
+                pushed.toLevels(OrderTypeEnum.ASK, Integer.MAX_VALUE),
+                pushed.toLevels(OrderTypeEnum.BID, Integer.MAX_VALUE));
+        out.setSeq(seq);
+        return out;
+    }
+
+    /**
+     * 上游最新盘口的前N档全量快照，不影响推送状态，供{@link DepthSnapshotCache}使用
+     * @param depth 档数
+     * @return 未收到过完整盘口或已改为原样推送时返回null
+     */
+    public synchronized DepthResponse book(int depth) {
+        if (!complete || passThrough) {
+            return null;
+        }
+        return new DepthResponse(symbol, true,
+                current.toLevels(OrderTypeEnum.ASK, depth),
+                current.toLevels(OrderTypeEnum.BID, depth));
+    }
+
+    private DepthResponse sequence(DepthResponse depthResponse) {
+        depthResponse.setSeq(++seq);
+        return depthResponse;
+    }
+
+    private static void apply(LocalOrderBook target, OrderTypeEnum side, List<List<String>> levels) {
+        if (levels == null) {
+            return;
+        }
+        for (List<String> level : levels) {
+            target.update(side, level.get(0), level.get(1));
+        }
+    }
+
+    /**
+     * 比较当前盘口与上次推送的盘口
+     * @return 变化的档位，新增或数量变化的档位为新数量，已删除的档位数量为0
+     */
+    private List<List<String>> diff(OrderTypeEnum side) {
+        BookSide currentSide = current.getSide(side);
+        BookSide pushedSide = pushed.getSide(side);
+        List<List<String>> changed = new ArrayList<>();
+        for (int i = 0; i < currentSide.depth(); i++) {
+            long price = currentSide.price(i);
+            long size = currentSide.size(i);
+            if (pushedSide.sizeAt(price) != size) {
+                changed.add(level(Decimals.toPlainString(price, current.getPriceScale()),
+                        Decimals.toPlainString(size, current.getSizeScale())));
+            }
+        }
+        for (int i = 0; i < pushedSide.depth(); i++) {
+            long price = pushedSide.price(i);
+            if (currentSide.sizeAt(price) == 0L) {
+                changed.add(level(Decimals.toPlainString(price, pushed.getPriceScale()), ZERO));
+            }
+        }
+        return changed;
+    }
+
+    private static List<String> level(String price, String size) {
+        List<String> level = new ArrayList<>(2);
+        level.add(price);
+        level.add(size);
+        return level;
+    }
+}
@@ -0,0 +1,104 @@
+package com.troy.trade.ws.server;
+
+import com.google.common.collect.Maps;
+import com.troy.commons.exchange.model.enums.AliasEnum;
+import com.troy.trade.ws.configurator.properties.DepthProperties;
+import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 本地盘口快照
+ * 按（交易所、交易对、合约类型、深度）登记最近更新的盘口推送频道（{@link DepthChannel}），
+ * 新订阅的全量推送和REST盘口查询直接从频道的本地盘口取快照，不再调用行情接口；
+ * 没有频道、频道未收到过完整盘口或上游超过{@link DepthProperties#getSnapshotMaxAge()}未更新时返回null，由调用方查询行情接口
+ * 快照在读取时生成，上游更新只记录时间，不增加推送路径的开销
+ */
+@Slf4j
+@Component
+public class DepthSnapshotCache {
+
+    @Autowired
+    private DepthProperties depthProperties;
+
+    /**
+     * <快照key,最近更新的频道>
+     */
+    private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+    /**
+     * 生成快照key
+     * @param exchCode 交易所code
+     * @param symbol 交易对，如：BTC/USDT
+     * @param alias 合约类型，现货为null
+     * @param interval 深度
+     * @return
+     */
+    public static String genKey(String exchCode, String symbol, AliasEnum alias, String interval) {
+        return exchCode + "_" + symbol + "_" + alias + "_" + interval;
+    }
+
+    /**
+     * 记录频道的上游更新（上游每次推送时调用）
+     * @param channel
+     */
+    public void update(DepthChannel channel) {
+        String key = channel.getSnapshotKey();
+        if (key == null) {
+            return;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            Entry old = entries.putIfAbsent(key, entry);
+            if (old != null) {
+                entry = old;
+            }
+        }
+        entry.channel = channel;
+        entry.updateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 频道移除（最后一个客户端离开）时调用
+     * @param channel
+     */
+    public void remove(DepthChannel channel) {
+        String key = channel.getSnapshotKey();
+        if (key == null) {
+            return;
+        }
+        entries.computeIfPresent(key, (k, entry) -> entry.channel == channel ? null : entry);
+    }
+
+    /**
+     * 获取本地盘口快照
+     * @param exchCode 交易所code
+     * @param symbol 交易对，如：BTC/USDT
+     * @param alias 合约类型，现货为null
+     * @param interval 深度
+     * @param depth 档数
+     * @return 全量盘口，无可用的本地盘口时返回null
+     */
+    public DepthResponse get(String exchCode, String symbol, AliasEnum alias, String interval, int depth) {
+        Entry entry = entries.get(genKey(exchCode, symbol, alias, interval));
+        DepthChannel channel = entry == null ? null : entry.channel;
+        if (channel == null) {
+            return null;
+        }
+        long age = System.currentTimeMillis() - entry.updateTime;
+        if (age > depthProperties.getSnapshotMaxAge()) {
+            log.info("本地盘口快照已过期 exchCode:{},symbol:{},alias:{},interval:{},age:{}ms", exchCode, symbol, alias, interval, age);
+            return null;
+        }
+        return channel.book(depth);
+    }
+
+    private static class Entry {
+        private volatile DepthChannel channel;
+        private volatile long updateTime;
+    }
+}
@@ -17,15 +17,19 @@ import com.troy.trade.ws.util.BusinessMethodsUtil;
 import com.troy.trade.ws.util.WebSocketErrorCode;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 
 
 /**
@@ -42,6 +46,22 @@ public class NotificationService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private TopicFanout topicFanout;
+
+    /**
+     * 与STOMP消息转换器相同的ObjectMapper，保证预先序列化的内容与convertAndSendToUser一致
+     */
+    private ObjectMapper brokerObjectMapper;
+
+    @PostConstruct
+    public void init() {
+        brokerObjectMapper = findBrokerObjectMapper(messagingTemplate.getMessageConverter());
+        if (brokerObjectMapper == null) {
+            brokerObjectMapper = new ObjectMapper();
+        }
+    }
+
     /**
      * 通知客户端-买卖挂单
      *
@@ -50,6 +70,10 @@ public class NotificationService {
      * @param destination
      */
     public void broadcast(String key, String destination, Object notification) {
+        if (TopicFanout.isPublicTopic(destination)) {//公共行情路径的订阅不在SimpleBroker中，经TopicFanout发送
+            this.broadcast(Collections.singletonList(key), destination, notification);
+            return;
+        }
         messagingTemplate.convertAndSendToUser(key,
                 destination,
                 notification);
@@ -58,6 +82,70 @@ public class NotificationService {
         return;
     }
 
+    /**
+     * 通知多个客户端同一公共行情：只序列化一次，同一份字节经{@link TopicFanout}直接发给所有订阅
+     *
+     * @param keys 用户key列表
+     * @param destination
+     * @param notification
+     */
+    public void broadcast(Collection<String> keys, String destination, Object notification) {
+        byte[] payload = serialize(destination, notification);
+        if (payload == null) {
+            return;
+        }
+        String prefix = messagingTemplate.getUserDestinationPrefix();
+        List<String> destinations = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            destinations.add(prefix + key + destination);
+        }
+        int count = topicFanout.send(destinations, payload);
+        log.debug("通知客户端 destination:{},客户端数:{},订阅数:{}", destination, keys.size(), count);
+    }
+
+    /**
+     * 按共享主题通知订阅了同一公共行情的客户端：只序列化一次，见{@link TopicFanout#publish}
+     *
+     * @param exchCode 交易所code
+     * @param destination 公共路径（不含用户前缀）
+     * @param notification
+     * @param sessionFilter 接收消息的客户端（sessionId）
+     * @return 因积压未推送的客户端sessionId
+     */
+    public Set<String> publish(String exchCode, String destination, Object notification, Predicate<String> sessionFilter) {
+        byte[] payload = serialize(destination, notification);
+        if (payload == null) {
+            return Collections.emptySet();
+        }
+        Set<String> dropped = topicFanout.publish(TopicFanout.genTopic(exchCode, destination), payload, sessionFilter);
+        log.debug("通知客户端 exchCode:{},destination:{},积压未推送客户端数:{}", exchCode, destination, dropped.size());
+        return dropped;
+    }
+
+    private byte[] serialize(String destination, Object notification) {
+        try {
+            return brokerObjectMapper.writeValueAsBytes(notification);
+        } catch (JsonProcessingException e) {
+            log.error("通知客户端，序列化异常，destination:{},异常信息：", destination, e);
+            return null;
+        }
+    }
+
+    private static ObjectMapper findBrokerObjectMapper(MessageConverter messageConverter) {
+        if (messageConverter instanceof MappingJackson2MessageConverter) {
+            return ((MappingJackson2MessageConverter) messageConverter).getObjectMapper();
+        }
+        if (messageConverter instanceof CompositeMessageConverter) {
+            for (MessageConverter converter : ((CompositeMessageConverter) messageConverter).getConverters()) {
+                ObjectMapper mapper = findBrokerObjectMapper(converter);
+                if (mapper != null) {
+                    return mapper;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * 做现货当前挂单变动信息推送
      *
@@ -92,48 +180,36 @@ public class NotificationService {
      * @param privateParamDto
      */
     private void broadcastSpotPrivate(PrivateParamDto privateParamDto,MethodEnum methodEnum,String destinationPrefix) {
-        //遍历Map分别根据交易对推送
-        //<accountId,<symbol,sessionSet>>
-        ConcurrentMap<String, Map<String, Set<String>>> spotAccountSessionsMap = SessionUtil.getAccountSessionsMap(false);
+        //按账户、交易对取订阅的客户端推送
+        AccountSubscriptionRegistry spotAccountSubscriptions = SessionUtil.getAccountSubscriptions(false);
         try {
             log.info("用户币币订阅，broadcastOrder方法做数据推送，入参：{},methodEnum={},destinationPrefix={},spotAccountSessionsKeyMap={}",
                     objectMapper.writeValueAsString(privateParamDto),
                     methodEnum,
                     destinationPrefix,
-                    spotAccountSessionsMap);
+                    spotAccountSubscriptions);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
-        if (spotAccountSessionsMap.isEmpty()) {
+        if (spotAccountSubscriptions.isEmpty()) {
             //订阅
             log.warn("用户币币订阅，做信息推送失败，失败原因：当前订阅信息为空");
             return;
         }
 
-        //根据账户ID获取session列表
+        //根据账户ID、交易对获取session列表
         String accountId = String.valueOf(privateParamDto.getAccountId());
-        Map<String, Set<String>> sessionMap = spotAccountSessionsMap.get(accountId);
-        if(CollectionUtils.isEmpty(sessionMap)){
-            log.warn("用户币币订阅，做信息推送失败，失败原因：当前订阅信息为空,sessionMap为空");
-            return;
-        }
-
         String symbol = privateParamDto.getSymbol();
-        if(!sessionMap.containsKey(symbol)){
-            log.warn("用户币币订阅，做信息推送失败，失败原因：当前订阅信息为空,symbol为空");
-            return;
-        }
-
-        List<String> sessionIdList = new ArrayList<>(sessionMap.get(symbol));
+        String[] sessionIds = spotAccountSubscriptions.getSessions(accountId, symbol);
         try {
-            log.info("用户币币订阅，推送范围sessionId列表 {}",objectMapper.writeValueAsString(sessionIdList));
+            log.info("用户币币订阅，推送范围sessionId列表 {}",objectMapper.writeValueAsString(sessionIds));
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
 
         //当前账户的sessionId列表为空则不做处理
-        if (CollectionUtils.isEmpty(sessionIdList)) {
-            log.warn("用户币币订阅，做信息推送失败，失败原因：当前账号的订阅信息为空,sessionIdSet为空");
+        if (sessionIds.length == 0) {
+            log.warn("用户币币订阅，做信息推送失败，失败原因：当前账号的订阅信息为空,accountId:{},symbol:{}", accountId, symbol);
             return;
         }
 
@@ -154,11 +230,11 @@ public class NotificationService {
         }
 
         String sessionId = null;
-        int sessionIdSize = sessionIdList.size();
+        int sessionIdSize = sessionIds.length;
         //做session信息遍历 并 发送消息
         String key = null;
         for (int j = 0; j < sessionIdSize; j++) {
-            sessionId = sessionIdList.get(j);
+            sessionId = sessionIds[j];
             key = SessionUtil.genKey(sessionId, exchCode, symbol);
             this.broadcast(key, destination, responseDto);
             log.info("用户币币订阅，通知客户端-账户当前挂单变动 key:{},destination:{},responseDto:{}", key, destination, responseDto);
@@ -172,57 +248,44 @@ public class NotificationService {
      * @param destinationPrefix
      */
     private void broadcastFuturesPrivate(PrivateParamDto privateParamDto,MethodEnum methodEnum,String destinationPrefix) {
-        //遍历Map分别根据交易对推送
-        //<accountId,<symbol,sessionSet>>
-        ConcurrentMap<String, Map<String, Set<String>>> futuresAccountSessionsMap = SessionUtil.getAccountSessionsMap(true);
+        //按账户、交易对取订阅的客户端推送
+        AccountSubscriptionRegistry futuresAccountSubscriptions = SessionUtil.getAccountSubscriptions(true);
         try {
             log.info("用户合约订阅，broadcastOrder方法做数据推送，入参：{},methodEnum={},destinationPrefix={},FuturesAccountSessionsMap={}",
                     objectMapper.writeValueAsString(privateParamDto),
                     methodEnum,
                     destinationPrefix,
-                    futuresAccountSessionsMap);
+                    futuresAccountSubscriptions);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
 
-        if (futuresAccountSessionsMap.isEmpty()) {
+        if (futuresAccountSubscriptions.isEmpty()) {
             //订阅
             log.warn("用户合约订阅，做信息推送失败，失败原因：当前订阅信息为空");
             return;
         }
 
-        //根据账户ID获取session列表
+        //根据账户ID、交易对获取session列表
         String accountId = String.valueOf(privateParamDto.getAccountId());
-        Map<String, Set<String>> sessionMap = futuresAccountSessionsMap.get(accountId);
-        if(CollectionUtils.isEmpty(sessionMap)){
-            log.warn("用户合约订阅，做信息推送失败，失败原因：当前订阅信息为空,sessionMap为空");
-            return;
-        }
-
         String symbol = privateParamDto.getSymbol();
         AliasEnum aliasEnum = privateParamDto.getAlias();
         String symbolKey = SessionUtil.getAccountIdSessionMapKey(symbol,aliasEnum);
-        if(!sessionMap.containsKey(symbolKey)){
-            log.warn("用户合约订阅，做信息推送失败，" +
-                            "失败原因：当前订阅信息为空,symbol为{},aliasEnum为{},symbolKey为{}",
-                    symbol,aliasEnum,symbolKey);
-            return;
-        }
-
-        List<String> sessionIdList = new ArrayList<>(sessionMap.get(symbolKey));
+        String[] sessionIds = futuresAccountSubscriptions.getSessions(accountId, symbolKey);
         try {
-            log.info("用户合约订阅，推送范围sessionId列表 {}",objectMapper.writeValueAsString(sessionIdList));
+            log.info("用户合约订阅，推送范围sessionId列表 {}",objectMapper.writeValueAsString(sessionIds));
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
 
         //当前账户的sessionId列表为空则不做处理
-        if (CollectionUtils.isEmpty(sessionIdList)) {
-            log.warn("用户合约订阅，做信息推送失败，失败原因：当前账号的订阅信息为空,sessionIdSet为空");
+        if (sessionIds.length == 0) {
+            log.warn("用户合约订阅，做信息推送失败，" +
+                            "失败原因：当前账号的订阅信息为空,accountId为{},symbol为{},aliasEnum为{},symbolKey为{}",
+                    accountId,symbol,aliasEnum,symbolKey);
             return;
         }
 
-
         String exchCode = privateParamDto.getExchCode();
 
         PrivateRequestDto privateRequestDto = new PrivateRequestDto();
@@ -241,11 +304,11 @@ public class NotificationService {
         }
 
         String sessionId = null;
-        int sessionIdSize = sessionIdList.size();
+        int sessionIdSize = sessionIds.length;
         //做session信息遍历 并 发送消息
         String key = null;
         for (int j = 0; j < sessionIdSize; j++) {
-            sessionId = sessionIdList.get(j);
+            sessionId = sessionIds[j];
             key = SessionUtil.genKey(sessionId, exchCode, symbol);
             this.broadcast(key, destination, responseDto);
             log.info("用户合约订阅，通知客户端-变动 key:{},destination:{},responseDto:{}", key, destination, responseDto);
@@ -317,6 +380,17 @@ public class NotificationService {
         return destinationSb.toString();
     }
 
+    /**
+     * 获取上游连接状态推送路径
+     * @param symbol
+     * @return
+     */
+    public static String getStatusDestination(String symbol){
+        //"/topic/status/" + pairPath
+        String pairPath = symbol.replace("/", "_").toLowerCase();
+        return Constant.STATUS_DESTINATION_PREFIX + pairPath;
+    }
+
     /**
      * 获取最新成交订阅路径
      * @param tradeSubscribe
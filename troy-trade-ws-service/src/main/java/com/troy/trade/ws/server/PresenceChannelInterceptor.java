@@ -28,6 +28,9 @@ public class PresenceChannelInterceptor extends ChannelInterceptorAdapter {
     @Autowired
     private StreamingExchangeServiceFactory streamingExchangeServiceFactory;
 
+    @Autowired
+    private TopicFanout topicFanout;
+
     /**
      * 发送前处理
      * 判断客户端的连接状态,进行对应处理
@@ -59,6 +62,18 @@ public class PresenceChannelInterceptor extends ChannelInterceptorAdapter {
                     return null;
                 }
                 break;
+            case SUBSCRIBE:
+                //公共行情只在TopicFanout登记，不交给SimpleBroker建立订阅索引
+                if (TopicFanout.isPublicDestination(sha.getDestination())) {
+                    topicFanout.subscribe(sha.getSessionId(), sha.getSubscriptionId(), sha.getDestination());
+                    return null;
+                }
+                break;
+            case UNSUBSCRIBE:
+                if (topicFanout.unsubscribe(sha.getSessionId(), sha.getSubscriptionId())) {
+                    return null;
+                }
+                break;
             default:
                 break;
         }
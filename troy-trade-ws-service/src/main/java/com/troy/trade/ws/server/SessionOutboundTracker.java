@@ -0,0 +1,198 @@
+package com.troy.trade.ws.server;
+
+import com.google.common.collect.Maps;
+import com.troy.trade.ws.configurator.properties.OutboundProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端推送积压控制
+ * 作为clientOutboundChannel拦截器统计每个客户端排队中（已提交、未写出）的消息数：
+ * 超过上限时行情消息不再提交（见{@link #tryMarketData}），私有消息照常提交；持续超过上限一段时间的客户端被断开
+ * 各客户端排队数、丢弃数通过actuator /metrics 输出
+ */
+@Slf4j
+@Component
+public class SessionOutboundTracker extends ChannelInterceptorAdapter implements ExecutorChannelInterceptor, PublicMetrics {
+
+    private static final String METRIC_PREFIX = "websocket.outbound.";
+
+    @Autowired
+    private OutboundProperties outboundProperties;
+
+    /**
+     * <sessionId,推送状态>
+     */
+    private final ConcurrentMap<String, SessionState> sessions = Maps.newConcurrentMap();
+
+    private final AtomicLong evicted = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbound-evict");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::evictSlowSessions, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 客户端连接建立
+     * @param session
+     */
+    public void register(WebSocketSession session) {
+        sessions.put(session.getId(), new SessionState(session));
+    }
+
+    /**
+     * 客户端连接断开
+     * @param sessionId
+     */
+    public void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * 行情消息是否可以提交给客户端，超过上限时记一次丢弃
+     * @param sessionId
+     * @return false-客户端积压，本条行情不推送
+     */
+    public boolean tryMarketData(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        if (state == null || state.queued.get() < outboundProperties.getQueueLimit()) {
+            return true;
+        }
+        state.dropped.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SessionState state = getState(message);
+        if (state != null) {
+            state.queued.incrementAndGet();
+        }
+        return message;
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        SessionState state = getState(message);
+        if (state != null) {
+            state.queued.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>(sessions.size() * 2 + 4);
+        long queued = 0L;
+        long dropped = 0L;
+        for (SessionState state : sessions.values()) {
+            int sessionQueued = state.queued.get();
+            long sessionDropped = state.dropped.get();
+            queued += sessionQueued;
+            dropped += sessionDropped;
+            metrics.add(new Metric<>(METRIC_PREFIX + "session." + state.session.getId() + ".queued", sessionQueued));
+            metrics.add(new Metric<>(METRIC_PREFIX + "session." + state.session.getId() + ".dropped", sessionDropped));
+        }
+        metrics.add(new Metric<>(METRIC_PREFIX + "sessions", sessions.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "queued", queued));
+        metrics.add(new Metric<>(METRIC_PREFIX + "dropped", dropped));
+        metrics.add(new Metric<>(METRIC_PREFIX + "evicted", evicted.get()));
+        return metrics;
+    }
+
+    private SessionState getState(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        return sessionId == null ? null : sessions.get(sessionId);
+    }
+
+    /**
+     * 断开持续积压的客户端
+     */
+    private void evictSlowSessions() {
+        long now = System.currentTimeMillis();
+        long evictAfter = TimeUnit.SECONDS.toMillis(outboundProperties.getEvictAfterSeconds());
+        for (SessionState state : sessions.values()) {
+            if (state.queued.get() < outboundProperties.getQueueLimit()) {
+                state.overLimitSince = 0L;
+                continue;
+            }
+            if (state.overLimitSince == 0L) {
+                state.overLimitSince = now;
+                continue;
+            }
+            if (now - state.overLimitSince < evictAfter) {
+                continue;
+            }
+            log.warn("客户端推送持续积压，断开连接 sessionId:{},排队数:{},丢弃数:{}",
+                    state.session.getId(), state.queued.get(), state.dropped.get());
+            sessions.remove(state.session.getId());
+            evicted.incrementAndGet();
+            try {
+                state.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Throwable e) {
+                log.error("断开积压客户端异常 sessionId:{},异常信息：", state.session.getId(), e);
+            }
+        }
+    }
+
+    private static class SessionState {
+        private final WebSocketSession session;
+        /**
+         * 已提交、未写出的消息数
+         */
+        private final AtomicInteger queued = new AtomicInteger();
+        /**
+         * 丢弃的行情消息数
+         */
+        private final AtomicLong dropped = new AtomicLong();
+        /**
+         * 开始超过上限的时间，0-未超过，仅由定时任务读写
+         */
+        private long overLimitSince;
+
+        private SessionState(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
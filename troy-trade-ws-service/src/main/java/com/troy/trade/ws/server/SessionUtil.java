@@ -2,16 +2,19 @@ package com.troy.trade.ws.server;
 
 import com.google.common.collect.Maps;
 import com.troy.commons.exchange.model.enums.AliasEnum;
+import com.troy.commons.utils.ApplicationContextUtil;
 import com.troy.commons.utils.EnumUtils;
 import com.troy.trade.ws.constants.Constant;
 import com.troy.trade.ws.model.dto.out.FuturesSessionKeyDecodeDto;
 import com.troy.trade.ws.streamingexchange.core.StreamingExchange;
+import io.reactivex.disposables.Disposable;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -21,21 +24,46 @@ import java.util.concurrent.ConcurrentMap;
 public class SessionUtil {
 
     /**
-     * 合约余额订阅信息<账户ID,<symbol,sessionSet>>
+     * 币币账户订阅信息 账户ID+symbol <-> sessionId
      */
-    private static final ConcurrentMap<String, Map<String,Set<String>>> spotAccountSessionsMap = Maps.newConcurrentMap();
+    private static final AccountSubscriptionRegistry spotAccountSubscriptions = new AccountSubscriptionRegistry();
 
 
     /**
-     * 合约余额订阅信息<账户ID,<symbol_alias,sessionSet>>
+     * 合约账户订阅信息 账户ID+symbol@alias <-> sessionId
      */
-    private static final ConcurrentMap<String, Map<String,Set<String>>> futuresAccountSessionsMap = Maps.newConcurrentMap();
+    private static final AccountSubscriptionRegistry futuresAccountSubscriptions = new AccountSubscriptionRegistry();
 
     /**
      * 客户端订阅Streaming
      */
     private static final ConcurrentMap<String, StreamingExchange> sessions = Maps.newConcurrentMap();
 
+    /**
+     * 客户端使用的上游连接key<sessionId,连接key>
+     */
+    private static final ConcurrentMap<String, String> sessionConnections = Maps.newConcurrentMap();
+
+    /**
+     * 客户端持有的共享频道订阅<sessionId,<频道key,订阅>>
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Disposable>> sessionSubscriptions = Maps.newConcurrentMap();
+
+    /**
+     * 盘口推送频道<频道key,频道>
+     */
+    private static final ConcurrentMap<String, DepthChannel> depthChannels = Maps.newConcurrentMap();
+
+    /**
+     * 客户端加入的盘口推送频道<sessionId,频道key集合>
+     */
+    private static final ConcurrentMap<String, Set<String>> sessionDepthChannels = Maps.newConcurrentMap();
+
+    /**
+     * 正在建立上游连接的客户端<sessionId,连接建立前收到的订阅>
+     */
+    private static final ConcurrentMap<String, Queue<Runnable>> connectingSessions = Maps.newConcurrentMap();
+
     public static ConcurrentMap<String, StreamingExchange> getSessions() {
         return sessions;
     }
@@ -44,6 +72,137 @@ public class SessionUtil {
         return sessions.get(key);
     }
 
+    /**
+     * 保存客户端使用的池化上游连接
+     * @param sessionId
+     * @param connectionKey
+     * @param streamingExchange
+     */
+    public static void saveSession(String sessionId, String connectionKey, StreamingExchange streamingExchange) {
+        sessionConnections.put(sessionId, connectionKey);
+        sessions.put(sessionId, streamingExchange);
+    }
+
+    public static String getConnectionKey(String sessionId) {
+        return sessionConnections.get(sessionId);
+    }
+
+    /**
+     * 标记客户端正在建立上游连接
+     * @param sessionId
+     * @return false-已在建立连接中
+     */
+    public static boolean markConnecting(String sessionId) {
+        return connectingSessions.putIfAbsent(sessionId, new ConcurrentLinkedQueue<>()) == null;
+    }
+
+    /**
+     * 客户端正在建立上游连接时缓存订阅，连接就绪后执行
+     * @param sessionId
+     * @param subscribe
+     * @return true-已缓存，false-未在建立连接中，需直接执行
+     */
+    public static boolean queueIfConnecting(String sessionId, Runnable subscribe) {
+        boolean[] queued = {false};
+        connectingSessions.computeIfPresent(sessionId, (key, queue) -> {
+            queue.add(subscribe);
+            queued[0] = true;
+            return queue;
+        });
+        return queued[0];
+    }
+
+    /**
+     * 结束建立上游连接，取出缓存的订阅
+     * @param sessionId
+     * @return 缓存的订阅，null-建立连接期间客户端已断开
+     */
+    public static Queue<Runnable> finishConnecting(String sessionId) {
+        return connectingSessions.remove(sessionId);
+    }
+
+    /**
+     * 保存客户端的频道订阅，同一频道重复订阅时释放之前的订阅
+     * @param sessionId
+     * @param streamKey
+     * @param disposable
+     */
+    public static void holdSubscription(String sessionId, String streamKey, Disposable disposable) {
+        ConcurrentMap<String, Disposable> subscriptions = sessionSubscriptions.computeIfAbsent(sessionId, key -> Maps.newConcurrentMap());
+        Disposable old = subscriptions.put(streamKey, disposable);
+        if (old != null && old != disposable) {
+            old.dispose();
+        }
+        if (!sessions.containsKey(sessionId)) {//订阅过程中session已断开
+            disposeSubscriptions(sessionId);
+        }
+    }
+
+    /**
+     * 释放客户端的全部频道订阅
+     * @param sessionId
+     */
+    private static void disposeSubscriptions(String sessionId) {
+        Map<String, Disposable> subscriptions = sessionSubscriptions.remove(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        subscriptions.values().forEach(Disposable::dispose);
+    }
+
+    /**
+     * 客户端加入盘口推送频道，频道不存在则创建
+     * @param sessionId
+     * @param exchCode 交易所code
+     * @param destination 盘口路径
+     * @param flushInterval 推送间隔（毫秒）
+     * @param snapshotKey 盘口快照key，见{@link DepthSnapshotCache#genKey}
+     * @return
+     */
+    public static DepthChannel joinDepthChannel(String sessionId, String exchCode, String destination, int flushInterval,
+                                                String snapshotKey) {
+        String channelKey = DepthChannel.genChannelKey(exchCode, destination, flushInterval);
+        sessionDepthChannels.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet()).add(channelKey);
+        return depthChannels.compute(channelKey, (k, channel) -> {
+            if (channel == null) {
+                channel = new DepthChannel(exchCode, destination, flushInterval, snapshotKey);
+            }
+            channel.join(sessionId);
+            return channel;
+        });
+    }
+
+    /**
+     * 获取盘口推送频道
+     * @param exchCode 交易所code
+     * @param destination 盘口路径
+     * @param flushInterval 推送间隔（毫秒）
+     * @return 无客户端时返回null
+     */
+    public static DepthChannel getDepthChannel(String exchCode, String destination, int flushInterval) {
+        return depthChannels.get(DepthChannel.genChannelKey(exchCode, destination, flushInterval));
+    }
+
+    /**
+     * 客户端离开全部盘口推送频道，最后一个客户端离开时移除频道
+     * @param sessionId
+     */
+    private static void leaveDepthChannels(String sessionId) {
+        Set<String> channelKeys = sessionDepthChannels.remove(sessionId);
+        if (channelKeys == null) {
+            return;
+        }
+        for (String channelKey : channelKeys) {
+            depthChannels.computeIfPresent(channelKey, (k, channel) -> {
+                if (!channel.leave(sessionId)) {
+                    return channel;
+                }
+                ApplicationContextUtil.getBean(DepthSnapshotCache.class).remove(channel);
+                return null;
+            });
+        }
+    }
+
     /**
      * 生成Key（交易所code+"_"+sessionId)
      *
@@ -69,15 +228,15 @@ public class SessionUtil {
 
 
     /**
-     * 账户session信息获取
+     * 账户订阅信息获取
      * @param isFutures
      * @return
      */
-    public static ConcurrentMap<String, Map<String,Set<String>>> getAccountSessionsMap(boolean isFutures ){
+    public static AccountSubscriptionRegistry getAccountSubscriptions(boolean isFutures ){
         if(isFutures){
-            return futuresAccountSessionsMap;
+            return futuresAccountSubscriptions;
         }else{
-            return spotAccountSessionsMap;
+            return spotAccountSubscriptions;
         }
     }
 
@@ -89,16 +248,18 @@ public class SessionUtil {
      */
     public static void removeSession(String sessionId, String accountId) {
         log.info("断开连接1：Disconnect  sessions disconnect sessionId:{},accountId:{}", sessionId, accountId);
-        if (sessions.get(sessionId) != null) {
-            sessions.get(sessionId).disconnect().subscribe(() -> {
-                log.info("断开连接2：Disconnected,sessionId:[{}],sessions:[{}]", sessionId,sessions);
-                sessions.remove(sessionId);
-                log.info("断开连接3：Disconnect client remove sessionId:{},accountId:{}", sessionId, accountId);
-                removeSpotClient(accountId, sessionId);
-                removeFuturesClient(accountId, sessionId);
-                log.info("断开连接4：做session移除后，accountId={},sessionId={},spotAccountSessionsMap={},futuresSessionsKeyMap={},sessions={}",
-                        accountId,sessionId, spotAccountSessionsMap,futuresAccountSessionsMap,SessionUtil.getSessions());
-            });
+        connectingSessions.remove(sessionId);
+        leaveDepthChannels(sessionId);
+        if (sessions.remove(sessionId) != null) {
+            //释放共享频道订阅及上游连接引用，最后一个session释放时由连接池断开上游连接
+            disposeSubscriptions(sessionId);
+            StreamingExchangePool.release(sessionConnections.remove(sessionId));
+            log.info("断开连接2：Disconnected,sessionId:[{}],sessions:[{}]", sessionId,sessions);
+            log.info("断开连接3：Disconnect client remove sessionId:{},accountId:{}", sessionId, accountId);
+            spotAccountSubscriptions.removeSession(sessionId);
+            futuresAccountSubscriptions.removeSession(sessionId);
+            log.info("断开连接4：做session移除后，accountId={},sessionId={},spotAccountSubscriptions={},futuresAccountSubscriptions={},sessions={}",
+                    accountId,sessionId, spotAccountSubscriptions,futuresAccountSubscriptions,SessionUtil.getSessions());
         }
     }
 
@@ -145,149 +306,28 @@ public class SessionUtil {
     public static boolean addClient(String accountId, String symbol,
                                     AliasEnum aliasEnum, String sessionId,
                                     boolean isFutures) {
-        boolean resultBo;
         String symbolKey = SessionUtil.getAccountIdSessionMapKey(symbol,aliasEnum);
         if(isFutures){
-            resultBo = addClient(accountId,symbolKey.toString(), sessionId,futuresAccountSessionsMap);
-            log.info("用户合约账户信息订阅，账户订阅信息为：{}", futuresAccountSessionsMap);
+            futuresAccountSubscriptions.add(accountId, symbolKey, sessionId);
+            log.info("用户合约账户信息订阅，账户订阅信息为：{}", futuresAccountSubscriptions);
         }else {
-            log.info("用户币币当前委托订阅，账户订阅信息为：{}", spotAccountSessionsMap);
-            resultBo = addClient(accountId,symbolKey.toString(), sessionId,spotAccountSessionsMap);
-        }
-        return resultBo;
-    }
-
-    /**
-     * 保存账户订阅信息
-     * @param accountId
-     * @param symbolKey
-     * @param sessionId
-     * @return
-     */
-    private static boolean addClient(String accountId,String symbolKey, String sessionId,
-                                     ConcurrentMap<String, Map<String,Set<String>>> accountSessionsMap){
-        if (accountSessionsMap.containsKey(accountId)) {
-            Map<String,Set<String>> tempMap = accountSessionsMap.get(accountId);
-            if(tempMap.containsKey(symbolKey)){
-                tempMap.get(symbolKey).add(sessionId);
-            }else{
-                Set<String> concurrentSet = new HashSet<>();
-                concurrentSet.add(sessionId);
-                tempMap.put(symbolKey,concurrentSet);
-            }
-        } else {
-            Set<String> concurrentSet = new HashSet<>();
-            concurrentSet.add(sessionId);
-            Map<String,Set<String>> tempMap = Maps.newConcurrentMap();
-            tempMap.put(symbolKey,concurrentSet);
-            accountSessionsMap.put(accountId, tempMap);
+            spotAccountSubscriptions.add(accountId, symbolKey, sessionId);
+            log.info("用户币币当前委托订阅，账户订阅信息为：{}", spotAccountSubscriptions);
         }
         return true;
     }
 
     public static void removeClient(String accountId, String sessionId,boolean isFutures) {
-        if(isFutures){
-            removeFuturesClient(accountId, sessionId);
-        }else{
-            removeSpotClient(accountId, sessionId);
-        }
-    }
-
-    private static boolean removeSpotClient(String accountId, String sessionId) {
         if (StringUtils.isBlank(sessionId)) {//验证当前sessionId是否为空，为空则不处理
-            return false;
+            return;
         }
-
-        log.info("用户当前委托订阅，做用户session移除前，accountId={},sessionId={},spotAccountSessionsMap={}",accountId,sessionId, spotAccountSessionsMap);
-        return removeSessionFromMap(accountId, sessionId,spotAccountSessionsMap);
-    }
-
-    private static boolean removeFuturesClient(String accountId, String sessionId) {
-        if (StringUtils.isBlank(sessionId)) {//验证当前sessionId是否为空，为空则不处理
-            return false;
-        }
-
-        log.info("用户当前委托订阅，做用户session移除前，accountId={},sessionId={},futuresAccountSessionsMap={}",accountId,sessionId, futuresAccountSessionsMap);
-        return removeSessionFromMap(accountId, sessionId,futuresAccountSessionsMap);
-    }
-
-    /**
-     * 从map中移除session
-     * @param accountId
-     * @param sessionId
-     * @param accountSessionsMap
-     * @return
-     */
-    private static boolean removeSessionFromMap(String accountId, String sessionId,
-                                                ConcurrentMap<String, Map<String,Set<String>>> accountSessionsMap){
-        boolean removeBo = false;
+        AccountSubscriptionRegistry accountSubscriptions = getAccountSubscriptions(isFutures);
+        log.info("用户当前委托订阅，做用户session移除前，accountId={},sessionId={},accountSubscriptions={}",accountId,sessionId, accountSubscriptions);
         if (StringUtils.isNotBlank(accountId)) {
-            //客户端正常主动关闭
-            if (accountSessionsMap.containsKey(accountId)) {
-                if (!CollectionUtils.isEmpty(accountSessionsMap.get(accountId))) {
-                    Map<String,Set<String>> sessionsMap = accountSessionsMap.get(accountId);
-
-                    removeBo = removeSessions(sessionId,sessionsMap);
-
-                    if(sessionsMap.isEmpty()){
-                        accountSessionsMap.remove(accountId);
-                    }
-                }
-            }
+            accountSubscriptions.remove(accountId, sessionId);
         } else {
-            //客户端非正常关闭
-            Set<String> keySet = accountSessionsMap.keySet();
-            List<String> keyList = new ArrayList<>(keySet);
-            int keySize = keyList == null?0:keyList.size();
-            Map<String,Set<String>> sessionsMap = null;
-            String tempAccountId = null;
-            for(int i=0;i<keySize;i++){
-                tempAccountId = keyList.get(i);
-                sessionsMap = accountSessionsMap.get(tempAccountId);
-                if(CollectionUtils.isEmpty(sessionsMap)){
-                    sessionsMap.remove(tempAccountId);
-                    continue;
-                }
-
-                removeBo = removeSessions(sessionId,sessionsMap);
-
-                if(sessionsMap.isEmpty()){
-                    accountSessionsMap.remove(tempAccountId);
-                }
-
-                if(removeBo){
-                    break;
-                }
-            }
-        }
-
-        return removeBo;
-    }
-
-    /**
-     * 从map中移除session
-     * @param sessionId
-     * @param sessionsMap
-     * @return
-     */
-    private static boolean removeSessions(String sessionId,Map<String,Set<String>> sessionsMap){
-        Set<String> sessionsSet = null;
-        boolean removeBo = false;
-        for (Map.Entry<String, Set<String>> entry : sessionsMap.entrySet()) {
-            sessionsSet = entry.getValue();
-            if(sessionsSet.contains(sessionId)){
-                sessionsSet.remove(sessionId);
-                removeBo = true;
-            }
-            if(sessionsSet.isEmpty()){
-                sessionsMap.remove(entry.getKey());
-            }
-
-            if(removeBo){
-                break;
-            }
+            accountSubscriptions.removeSession(sessionId);
         }
-        return removeBo;
     }
 
 
@@ -0,0 +1,162 @@
+package com.troy.trade.ws.server;
+
+import com.google.common.collect.Maps;
+import com.troy.trade.ws.streamingexchange.core.StreamingExchange;
+import io.reactivex.Observable;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 上游交易所连接池
+ * 同一个连接key（交易所）只保持一个上游ws连接，按session引用计数，最后一个session释放时断开；
+ * 同一个连接上的同一个频道（交易对+频道+参数）只向交易所订阅一次，多个session共享，最后一个订阅者退出时取消订阅
+ */
+@Slf4j
+public class StreamingExchangePool {
+
+    /**
+     * 连接池<连接key,池化连接>
+     */
+    private static final ConcurrentMap<String, PooledStreamingExchange> exchanges = Maps.newConcurrentMap();
+
+    /**
+     * 池化连接
+     */
+    private static class PooledStreamingExchange {
+        /**
+         * 上游连接，建立连接完成前为未完成状态，同key的其他session等待同一次连接
+         */
+        final CompletableFuture<StreamingExchange> streamingExchange = new CompletableFuture<>();
+        /**
+         * 引用该连接的session数量
+         */
+        final AtomicInteger refCount = new AtomicInteger();
+        /**
+         * 共享频道<频道key,共享被观察者>
+         */
+        final ConcurrentMap<String, Observable<?>> streams = Maps.newConcurrentMap();
+    }
+
+    /**
+     * 获取连接，不存在则创建并建立连接，引用计数+1
+     * 引用计数在compute内增加，与release互斥；建立连接（阻塞）在map外进行，不占用map的锁
+     * @param connectionKey 连接key
+     * @param creator 连接创建（含建立连接）
+     * @return 创建失败返回null
+     */
+    public static StreamingExchange acquire(String connectionKey, Supplier<StreamingExchange> creator) {
+        PooledStreamingExchange[] created = new PooledStreamingExchange[1];
+        PooledStreamingExchange pooled = exchanges.compute(connectionKey, (key, old) -> {
+            PooledStreamingExchange current = old;
+            if (current == null) {
+                current = new PooledStreamingExchange();
+                created[0] = current;
+            }
+            current.refCount.incrementAndGet();
+            return current;
+        });
+        if (created[0] != null) {
+            connect(connectionKey, pooled, creator);
+        }
+        StreamingExchange streamingExchange;
+        try {
+            streamingExchange = pooled.streamingExchange.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        if (streamingExchange == null) {
+            return null;
+        }
+        log.info("上游连接池：获取上游连接，connectionKey={},refCount={}", connectionKey, pooled.refCount.get());
+        return streamingExchange;
+    }
+
+    /**
+     * 建立上游连接，失败时从连接池移除，等待中的session一并失败
+     */
+    private static void connect(String connectionKey, PooledStreamingExchange pooled, Supplier<StreamingExchange> creator) {
+        StreamingExchange streamingExchange;
+        try {
+            streamingExchange = creator.get();
+        } catch (RuntimeException e) {
+            exchanges.remove(connectionKey, pooled);
+            pooled.streamingExchange.completeExceptionally(e);
+            throw e;
+        }
+        if (streamingExchange == null) {
+            exchanges.remove(connectionKey, pooled);
+        } else {
+            log.info("上游连接池：新建上游连接，connectionKey={}", connectionKey);
+        }
+        pooled.streamingExchange.complete(streamingExchange);
+    }
+
+    /**
+     * 释放连接，引用计数-1，为0时断开上游连接
+     * @param connectionKey 连接key
+     */
+    public static void release(String connectionKey) {
+        if (StringUtils.isBlank(connectionKey)) {
+            return;
+        }
+        exchanges.computeIfPresent(connectionKey, (key, pooled) -> {
+            int refCount = pooled.refCount.decrementAndGet();
+            log.info("上游连接池：释放上游连接，connectionKey={},refCount={}", key, refCount);
+            if (refCount > 0) {
+                return pooled;
+            }
+            //引用计数为0说明所有acquire已返回，连接已建立完成
+            StreamingExchange streamingExchange = pooled.streamingExchange.getNow(null);
+            if (streamingExchange != null) {
+                streamingExchange.disconnect().subscribe(
+                        () -> log.info("上游连接池：上游连接已断开，connectionKey={}", key),
+                        throwable -> log.error("上游连接池：断开上游连接异常，connectionKey=" + key + "，异常信息：", throwable));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 获取共享频道，同一连接同一频道只向交易所订阅一次
+     * @param connectionKey 连接key
+     * @param streamKey 频道key
+     * @param source 频道被观察者（首次订阅时调用）
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Observable<T> share(String connectionKey, String streamKey, Supplier<Observable<T>> source) {
+        PooledStreamingExchange pooled = StringUtils.isBlank(connectionKey) ? null : exchanges.get(connectionKey);
+        if (pooled == null) {
+            return source.get();
+        }
+        return (Observable<T>) pooled.streams.computeIfAbsent(streamKey, key -> {
+            AtomicReference<Observable<?>> self = new AtomicReference<>();
+            Observable<T> shared = source.get()
+                    .doFinally(() -> {
+                        pooled.streams.remove(key, self.get());
+                        log.info("上游连接池：共享频道已无订阅者，取消订阅，connectionKey={},streamKey={}", connectionKey, key);
+                    })
+                    .publish()
+                    .refCount();
+            self.set(shared);
+            log.info("上游连接池：新建共享频道，connectionKey={},streamKey={}", connectionKey, key);
+            return shared;
+        });
+    }
+
+    /**
+     * 当前连接数
+     * @return
+     */
+    public static int size() {
+        return exchanges.size();
+    }
+}
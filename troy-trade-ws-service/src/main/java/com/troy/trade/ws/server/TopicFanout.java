@@ -0,0 +1,301 @@
+package com.troy.trade.ws.server;
+
+import com.google.common.collect.Maps;
+import com.troy.trade.ws.constants.Constant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * 公共行情推送
+ * 客户端订阅公共行情路径（盘口、最新成交、上游连接状态）时在此登记，订阅不再交给SimpleBroker（见{@link PresenceChannelInterceptor}）；
+ * 订阅按共享主题（交易所code+公共路径，不含用户key）归并，同一主题的行情只查找一次、同一份字节发给主题下的所有订阅，
+ * 只发给单个客户端的消息（错误、连接状态等）按完整订阅路径查找；
+ * 消息直接交给clientOutboundChannel，同一客户端的多条消息由SubProtocolWebSocketHandler的会话发送缓冲合并写出
+ * 订阅列表为写时复制，推送时无锁遍历；客户端积压时丢弃，见{@link SessionOutboundTracker}，
+ * 积压只在本类发送前检查一次（每次检查都会计入丢弃数），调用方不再重复检查
+ * 用户私有数据（委托、余额）仍走convertAndSendToUser
+ */
+@Slf4j
+@Component
+public class TopicFanout {
+
+    private static final MimeType JSON_UTF8 = new MimeType("application", "json", StandardCharsets.UTF_8);
+
+    private static final String USER_PREFIX = "/user/";
+
+    /**
+     * 走本推送的公共行情路径前缀
+     */
+    private static final String[] PUBLIC_DESTINATION_PREFIXES = {
+            Constant.DEPTH_DESTINATION_PREFIX,
+            Constant.TRADES_DESTINATION_PREFIX,
+            Constant.STATUS_DESTINATION_PREFIX
+    };
+
+    /**
+     * 订阅<完整订阅路径,订阅列表>
+     */
+    private final ConcurrentMap<String, List<Subscription>> subscriptions = Maps.newConcurrentMap();
+
+    /**
+     * 订阅<共享主题,订阅列表>，见{@link #genTopic}
+     */
+    private final ConcurrentMap<String, List<Subscription>> topics = Maps.newConcurrentMap();
+
+    /**
+     * 客户端的订阅<sessionId,<subscriptionId,订阅>>
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Subscription>> sessionSubscriptions = Maps.newConcurrentMap();
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    @Autowired
+    private SessionOutboundTracker sessionOutboundTracker;
+
+    /**
+     * 是否为公共行情路径：/user/{用户key}/topic/depth/...等
+     * @param destination 客户端订阅路径
+     * @return
+     */
+    public static boolean isPublicDestination(String destination) {
+        if (destination == null || !destination.startsWith(USER_PREFIX)) {
+            return false;
+        }
+        int userEnd = destination.indexOf('/', USER_PREFIX.length());
+        return userEnd > 0 && isPublicTopic(destination.substring(userEnd));
+    }
+
+    /**
+     * 是否为公共行情路径（不含用户前缀）：/topic/depth/...等
+     * @param destination
+     * @return
+     */
+    public static boolean isPublicTopic(String destination) {
+        if (destination == null) {
+            return false;
+        }
+        for (String prefix : PUBLIC_DESTINATION_PREFIXES) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 生成共享主题
+     * @param exchCode 交易所code
+     * @param destination 公共路径（不含用户前缀），如：/topic/depth/btc_usdt/20/step0
+     * @return
+     */
+    public static String genTopic(String exchCode, String destination) {
+        return exchCode + ":" + destination;
+    }
+
+    /**
+     * 由客户端订阅路径得到共享主题：用户key为 交易所code_sessionId_交易对，见{@link SessionUtil#genKey}
+     * @param sessionId
+     * @param destination 完整订阅路径
+     * @return 用户key不属于该客户端时返回null
+     */
+    static String toTopic(String sessionId, String destination) {
+        int userEnd = destination.indexOf('/', USER_PREFIX.length());
+        String key = destination.substring(USER_PREFIX.length(), userEnd);
+        int index = key.indexOf("_" + sessionId + "_");
+        if (index <= 0) {
+            return null;
+        }
+        return genTopic(key.substring(0, index), destination.substring(userEnd));
+    }
+
+    /**
+     * 登记订阅（客户端SUBSCRIBE）
+     * @param sessionId
+     * @param subscriptionId
+     * @param destination 完整订阅路径
+     * @return 是否已登记；用户key不属于该客户端时不登记
+     */
+    public boolean subscribe(String sessionId, String subscriptionId, String destination) {
+        if (sessionId == null || subscriptionId == null || !isPublicDestination(destination)) {
+            return false;
+        }
+        String topic = toTopic(sessionId, destination);
+        if (topic == null) {
+            log.warn("公共行情订阅路径与客户端不符，忽略 sessionId:{},destination:{}", sessionId, destination);
+            return false;
+        }
+        Subscription subscription = new Subscription(sessionId, subscriptionId, destination, topic);
+        Subscription old = sessionSubscriptions.computeIfAbsent(sessionId, key -> Maps.newConcurrentMap()).put(subscriptionId, subscription);
+        if (old != null) {
+            remove(old);
+        }
+        add(subscriptions, destination, subscription);
+        add(topics, topic, subscription);
+        log.debug("公共行情订阅登记 sessionId:{},subscriptionId:{},destination:{}", sessionId, subscriptionId, destination);
+        return true;
+    }
+
+    /**
+     * 取消订阅（客户端UNSUBSCRIBE）
+     * @param sessionId
+     * @param subscriptionId
+     * @return 是否为本类登记的订阅
+     */
+    public boolean unsubscribe(String sessionId, String subscriptionId) {
+        if (sessionId == null || subscriptionId == null) {
+            return false;
+        }
+        Map<String, Subscription> sessionMap = sessionSubscriptions.get(sessionId);
+        Subscription subscription = sessionMap == null ? null : sessionMap.remove(subscriptionId);
+        if (subscription == null) {
+            return false;
+        }
+        remove(subscription);
+        return true;
+    }
+
+    /**
+     * 移除客户端的全部订阅（连接断开）
+     * @param sessionId
+     */
+    public void removeSession(String sessionId) {
+        Map<String, Subscription> sessionMap = sessionSubscriptions.remove(sessionId);
+        if (sessionMap == null) {
+            return;
+        }
+        sessionMap.values().forEach(this::remove);
+    }
+
+    /**
+     * 按完整订阅路径推送已序列化的消息
+     * @param destinations 完整订阅路径列表
+     * @param payload 消息内容（json），所有订阅共用
+     * @return 推送的订阅数
+     */
+    public int send(Collection<String> destinations, byte[] payload) {
+        int count = 0;
+        for (String destination : destinations) {
+            List<Subscription> list = subscriptions.get(destination);
+            if (list == null) {
+                continue;
+            }
+            for (Subscription subscription : list) {
+                if (trySend(subscription, payload)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 按共享主题推送已序列化的消息
+     * @param topic 共享主题，见{@link #genTopic}
+     * @param payload 消息内容（json），所有订阅共用
+     * @param sessionFilter 接收消息的客户端（sessionId）
+     * @return 因积压未推送的客户端sessionId
+     */
+    public Set<String> publish(String topic, byte[] payload, Predicate<String> sessionFilter) {
+        List<Subscription> list = topics.get(topic);
+        if (list == null) {
+            return Collections.emptySet();
+        }
+        Set<String> dropped = null;
+        for (Subscription subscription : list) {
+            if (!sessionFilter.test(subscription.sessionId)) {
+                continue;
+            }
+            if (!sessionOutboundTracker.tryMarketData(subscription.sessionId)) {//客户端积压，丢弃
+                if (dropped == null) {
+                    dropped = new HashSet<>();
+                }
+                dropped.add(subscription.sessionId);
+                continue;
+            }
+            send(subscription, payload);
+        }
+        return dropped == null ? Collections.emptySet() : dropped;
+    }
+
+    private boolean trySend(Subscription subscription, byte[] payload) {
+        if (!sessionOutboundTracker.tryMarketData(subscription.sessionId)) {//客户端积压，丢弃
+            return false;
+        }
+        return send(subscription, payload);
+    }
+
+    private boolean send(Subscription subscription, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(subscription.sessionId);
+        accessor.setSubscriptionId(subscription.subscriptionId);
+        accessor.setDestination(subscription.destination);
+        accessor.setContentType(JSON_UTF8);
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+        try {
+            clientOutboundChannel.send(message);
+            return true;
+        } catch (Throwable e) {
+            log.error("公共行情推送异常 sessionId:{},destination:{},异常信息：", subscription.sessionId, subscription.destination, e);
+            return false;
+        }
+    }
+
+    private static void add(ConcurrentMap<String, List<Subscription>> index, String key, Subscription subscription) {
+        index.compute(key, (k, list) -> {
+            List<Subscription> result = list == null ? new CopyOnWriteArrayList<>() : list;
+            result.add(subscription);
+            return result;
+        });
+    }
+
+    private static void remove(ConcurrentMap<String, List<Subscription>> index, String key, Subscription subscription) {
+        index.computeIfPresent(key, (k, list) -> {
+            list.remove(subscription);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private void remove(Subscription subscription) {
+        remove(subscriptions, subscription.destination, subscription);
+        remove(topics, subscription.topic, subscription);
+    }
+
+    private static class Subscription {
+        private final String sessionId;
+        private final String subscriptionId;
+        /**
+         * 完整订阅路径
+         */
+        private final String destination;
+        private final String topic;
+
+        private Subscription(String sessionId, String subscriptionId, String destination, String topic) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.destination = destination;
+            this.topic = topic;
+        }
+    }
+}
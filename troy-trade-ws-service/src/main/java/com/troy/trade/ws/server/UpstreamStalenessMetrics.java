@@ -0,0 +1,38 @@
+package com.troy.trade.ws.server;
+
+import com.troy.trade.ws.netty.StreamWatchdog;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上游频道静默指标
+ * 各受监控频道（盘口）距最近一条消息的毫秒数、最大静默时间，以及看门狗重新订阅、重连次数，
+ * 通过actuator /metrics 输出，统计见{@link StreamWatchdog}
+ */
+@Component
+public class UpstreamStalenessMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "upstream.";
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Map<String, Long> staleness = StreamWatchdog.staleness();
+        List<Metric<?>> metrics = new ArrayList<>(staleness.size() + 4);
+        long max = 0L;
+        for (Map.Entry<String, Long> entry : staleness.entrySet()) {
+            max = Math.max(max, entry.getValue());
+            metrics.add(new Metric<>(METRIC_PREFIX + "channel." + entry.getKey() + ".staleness", entry.getValue()));
+        }
+        metrics.add(new Metric<>(METRIC_PREFIX + "channels", staleness.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "staleness.max", max));
+        metrics.add(new Metric<>(METRIC_PREFIX + "watchdog.resubscribes", StreamWatchdog.getResubscribes()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "watchdog.reconnects", StreamWatchdog.getReconnects()));
+        return metrics;
+    }
+}
@@ -1,5 +1,6 @@
 package com.troy.trade.ws.server;
 
+import com.troy.trade.ws.configurator.properties.OutboundProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -25,8 +26,16 @@ public class WebSocketConfig extends WebSocketMessageBrokerConfigurationSupport
     @Autowired
     private PresenceChannelInterceptor presenceChannelInterceptor;
 
+    @Autowired
+    private SessionOutboundTracker sessionOutboundTracker;
+
+    @Autowired
+    private OutboundProperties outboundProperties;
+
     /**
      * 设置代理消息前缀,服务端与客户端心跳机制开启[30000,30000][服务端每30s发送心跳,客户端每30发送心跳]
+     * SimpleBroker处理用户私有数据（/user/{用户key}/topic/order/...等）和@MessageMapping返回值（默认发到/topic/...）；
+     * 公共行情的订阅由{@link TopicFanout}登记，在{@link PresenceChannelInterceptor}中拦截，不进入SimpleBroker
      * 设置应用前缀,所有@MessageMapping 声明的服务,客户端需要加上app前缀访问
      * 设置用户目的地前缀,主要用于点对点单播模式
      *
@@ -63,9 +72,15 @@ public class WebSocketConfig extends WebSocketMessageBrokerConfigurationSupport
         return new ThreadPoolTaskScheduler();
     }
 
+    /**
+     * 会话发送缓冲及发送超时上限，超过后断开客户端
+     *
+     * @param webSocketTransportRegistration
+     */
     @Override
     public void configureWebSocketTransport(WebSocketTransportRegistration webSocketTransportRegistration) {
-
+        webSocketTransportRegistration.setSendTimeLimit(outboundProperties.getSendTimeLimit())
+                .setSendBufferSizeLimit(outboundProperties.getSendBufferSizeLimit());
     }
 
     @Override
@@ -73,9 +88,14 @@ public class WebSocketConfig extends WebSocketMessageBrokerConfigurationSupport
         channelRegistration.interceptors(presenceChannelInterceptor);
     }
 
+    /**
+     * 统计每个客户端排队中的消息数，见{@link SessionOutboundTracker}
+     *
+     * @param channelRegistration
+     */
     @Override
     public void configureClientOutboundChannel(ChannelRegistration channelRegistration) {
-
+        channelRegistration.interceptors(sessionOutboundTracker);
     }
 
     @Override
@@ -70,7 +70,11 @@ public class WebSocketServer {
         Assert.notNull(exchangeCode, StateTypeSuper.FAIL_PARAMETER,"");
         tradeSubscribe.setExchangeCode(exchangeCode);
         IStreamingExchangeService streamingExchangeService = streamingExchangeServiceFactory.getStreamingExchangeService(exchangeCode);
-        streamingExchangeService.tradeSubscribe(tradeSubscribeRequestBody);
+        //上游连接建立中则缓存订阅，连接就绪后执行
+        Runnable subscribe = () -> streamingExchangeService.tradeSubscribe(tradeSubscribeRequestBody);
+        if (!SessionUtil.queueIfConnecting(tradeSubscribe.getSessionId(), subscribe)) {
+            subscribe.run();
+        }
         logger.info("历史成交记录订阅 exchCode:{},symbol:{}", exchCode, tradeSubscribe.getSymbol());
         ResponseDto responseDto = BusinessMethodsUtil.successResponse(Constant.SUCCESS);
         return responseDto;
@@ -95,7 +99,11 @@ public class WebSocketServer {
         Assert.notNull(exchangeCode, StateTypeSuper.FAIL_PARAMETER,"");
         depthSubscribe.setExchangeCode(exchangeCode);
         IStreamingExchangeService streamingExchangeService = streamingExchangeServiceFactory.getStreamingExchangeService(exchangeCode);
-        streamingExchangeService.depthSubscribe(depthSubscribeRequestBody);
+        //上游连接建立中则缓存订阅，连接就绪后执行
+        Runnable subscribe = () -> streamingExchangeService.depthSubscribe(depthSubscribeRequestBody);
+        if (!SessionUtil.queueIfConnecting(depthSubscribe.getSessionId(), subscribe)) {
+            subscribe.run();
+        }
         logger.info("盘口订阅 exchCode:{},symbol:{},interval:{},limit:{}", exchCode, depthSubscribe.getSymbol(), depthSubscribeRequestBody.getParams().getInterval(), depthSubscribe.getLimit());
         ResponseDto responseDto = BusinessMethodsUtil.successResponse(Constant.SUCCESS);
         return responseDto;
@@ -24,6 +24,7 @@ import com.troy.trade.ws.model.dto.in.BalanceSubscribe;
 import com.troy.trade.ws.model.dto.out.FuturesSessionKeyDecodeDto;
 import com.troy.trade.ws.model.dto.out.ResponseDto;
 import com.troy.trade.ws.model.enums.MethodEnum;
+import com.troy.trade.ws.server.AccountSubscriptionRegistry;
 import com.troy.trade.ws.server.NotificationService;
 import com.troy.trade.ws.server.SessionUtil;
 import com.troy.trade.ws.service.IBalanceService;
@@ -34,13 +35,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * 余额订阅相关处理
@@ -98,42 +95,35 @@ public class BalanceServiceImpl implements IBalanceService {
         /**
          * 验证是否存在用户订阅
          */
-        ConcurrentMap<String, Map<String,Set<String>>> accountSessionsMap = SessionUtil.getAccountSessionsMap(true);
-        if(CollectionUtils.isEmpty(accountSessionsMap)){//当前不存在订阅余额变动信息的用户
-            log.warn("所有订阅用户余额信息变动推送，当前不存在账户订阅，不做余额变动推送，accountSessionsMap={}",accountSessionsMap);
+        AccountSubscriptionRegistry accountSubscriptions = SessionUtil.getAccountSubscriptions(true);
+        if(accountSubscriptions.isEmpty()){//当前不存在订阅余额变动信息的用户
+            log.warn("所有订阅用户余额信息变动推送，当前不存在账户订阅，不做余额变动推送，accountSessionsMap={}",accountSubscriptions);
             return new BalanceResDto(false);
         }
 
         /**
          * 遍历账户及账户下的币对列表，做余额信息查询及推送
          */
-        log.info("所有订阅用户余额信息变动推送，做余额变动推送，accountSessionsMap={}",accountSessionsMap);
+        log.info("所有订阅用户余额信息变动推送，做余额变动推送，accountSessionsMap={}",accountSubscriptions);
         FuturesSessionKeyDecodeDto futuresSessionKeyDecodeDto = null;
         Long tempAccountId = null;
-        for (Map.Entry<String, Map<String,Set<String>>> entry:accountSessionsMap.entrySet()) {
-            Map<String,Set<String>> symbolSessionsMap = entry.getValue();
-            if(CollectionUtils.isEmpty(symbolSessionsMap)){
-                continue;
+        for (AccountSubscriptionRegistry.Subscription subscription:accountSubscriptions.getSubscriptions()) {
+            tempAccountId = Long.parseLong(subscription.getAccountId());
+            futuresSessionKeyDecodeDto = SessionUtil.decodeSessionMapKey(subscription.getSymbolKey());
+            try {
+                log.info("所有订阅用户余额信息变动推送，做余额变动推送，当前futuresSessionKeyDecodeDto={}",objectMapper.writeValueAsString(futuresSessionKeyDecodeDto));
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
             }
 
-            tempAccountId = Long.parseLong(entry.getKey());
-            for (Map.Entry<String,Set<String>> symbolKeyEntry:symbolSessionsMap.entrySet()) {
-                futuresSessionKeyDecodeDto = SessionUtil.decodeSessionMapKey(symbolKeyEntry.getKey());
-                try {
-                    log.info("所有订阅用户余额信息变动推送，做余额变动推送，当前futuresSessionKeyDecodeDto={}",objectMapper.writeValueAsString(futuresSessionKeyDecodeDto));
-                } catch (JsonProcessingException e) {
-                    e.printStackTrace();
-                }
-
-                try {
-                    FuturesBalancePushSyncExecute futuresBalancePushSyncExecute
-                            = FuturesBalancePushSyncExecute.getInstance(tempAccountId,
-                            futuresSessionKeyDecodeDto.getSymbol(), futuresSessionKeyDecodeDto.getAlias());
-                    PushThreadPool.executeFuturesBalanceSync(futuresBalancePushSyncExecute);
-                }catch (Throwable throwable){
-                    log.error("所有订阅用户余额信息变动推送，将任务放入线程池时失败，异常信息：",throwable);
-                    continue;
-                }
+            try {
+                FuturesBalancePushSyncExecute futuresBalancePushSyncExecute
+                        = FuturesBalancePushSyncExecute.getInstance(tempAccountId,
+                        futuresSessionKeyDecodeDto.getSymbol(), futuresSessionKeyDecodeDto.getAlias());
+                PushThreadPool.executeFuturesBalanceSync(futuresBalancePushSyncExecute);
+            }catch (Throwable throwable){
+                log.error("所有订阅用户余额信息变动推送，将任务放入线程池时失败，异常信息：",throwable);
+                continue;
             }
         }
         return new BalanceResDto(true);
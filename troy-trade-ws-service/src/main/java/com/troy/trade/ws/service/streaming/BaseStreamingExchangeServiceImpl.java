@@ -19,38 +19,192 @@ import com.troy.trade.ws.model.dto.out.TradeResponse;
 import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
 import com.troy.trade.ws.model.dto.out.trades.TradeDataResponse;
 import com.troy.trade.ws.model.enums.MethodEnum;
+import com.troy.trade.ws.server.DepthChannel;
+import com.troy.trade.ws.server.DepthPublisher;
+import com.troy.trade.ws.server.DepthSnapshotCache;
 import com.troy.trade.ws.server.NotificationService;
 import com.troy.trade.ws.server.SessionUtil;
+import com.troy.trade.ws.server.StreamingExchangePool;
 import com.troy.trade.ws.streamingexchange.core.StreamingExchange;
+import com.troy.trade.ws.thread.PushThreadPool;
 import com.troy.trade.ws.util.WebSocketErrorCode;
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.function.Supplier;
 
 @Slf4j
 public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExchangeService  {
 
+    /**
+     * 全量盘口推送档数
+     */
+    private static final int ALL_DEPTH_SIZE = 21;
+
+    /**
+     * 建立上游连接
+     * 异步建立，不阻塞STOMP CONNECT；连接建立前收到的订阅缓存，连接就绪后执行，连接结果推送到状态路径
+     * @param connectDto
+     * @return
+     */
     @Override
     public Boolean connect(ConnectDto connectDto) {
-        Boolean resultBo = false;
+        String sessionId = connectDto.getSessionId();
+        if (SessionUtil.getSessions().containsKey(sessionId)) {
+            return true;
+        }
+        if (!SessionUtil.markConnecting(sessionId)) {//已在建立连接中
+            return true;
+        }
+        if (!PushThreadPool.executeUpstreamConnect(() -> this.doConnect(connectDto))) {//连接建立已排满，拒绝本次连接
+            log.warn("上游连接建立繁忙，拒绝连接 exchCode:{},sessionId:{}", this.getExchCode().code(), sessionId);
+            SessionUtil.finishConnecting(sessionId);
+            this.toSendConnectStatus(connectDto, false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 建立上游连接（连接池中已有连接则直接复用）
+     * @param connectDto
+     */
+    private void doConnect(ConnectDto connectDto) {
+        String sessionId = connectDto.getSessionId();
+        boolean connected = false;
         try{
-            String sessionId = connectDto.getSessionId();
-            if (SessionUtil.getSessions().containsKey(sessionId)) {
-                return true;
-            }
-            StreamingExchange streamingExchange = this.getStreamingExchange();
-            return saveStreamingExchange(sessionId, streamingExchange);
+            String connectionKey = this.getConnectionKey(connectDto);
+            StreamingExchange streamingExchange = StreamingExchangePool.acquire(connectionKey, () -> this.createStreamingExchange(connectDto));
+            connected = saveStreamingExchange(sessionId, connectionKey, streamingExchange);
         }catch (Throwable throwable){
             log.error("订阅"+this.getExchCode().desc()+" ws异常，异常信息：",throwable);
         }
-        return resultBo;
+
+        Queue<Runnable> queuedSubscribes = SessionUtil.finishConnecting(sessionId);
+        if (queuedSubscribes == null) {//建立连接期间客户端已断开
+            log.info("建立上游连接完成时客户端已断开，释放连接 sessionId:{}", sessionId);
+            SessionUtil.removeSession(sessionId, null);
+            return;
+        }
+
+        this.toSendConnectStatus(connectDto, connected);
+        if (!connected) {
+            return;
+        }
+        log.info("上游连接就绪 exchCode:{},sessionId:{},缓存订阅数:{}", this.getExchCode().code(), sessionId, queuedSubscribes.size());
+        for (Runnable subscribe : queuedSubscribes) {
+            try {
+                subscribe.run();
+            } catch (Throwable throwable) {
+                log.error("执行缓存订阅异常，异常信息：", throwable);
+            }
+        }
+    }
+
+    /**
+     * 创建上游连接（含建立连接）
+     * @param connectDto
+     * @return
+     */
+    public StreamingExchange createStreamingExchange(ConnectDto connectDto) {
+        return this.getStreamingExchange();
+    }
+
+    /**
+     * 上游连接状态推送
+     * @param connectDto
+     * @param connected
+     */
+    public void toSendConnectStatus(ConnectDto connectDto, boolean connected) {
+        String symbol = connectDto.getSymbol();
+        if (StringUtils.isBlank(symbol)) {
+            return;
+        }
+        NotificationService notificationService = ApplicationContextUtil.getBean(NotificationService.class);
+        String key = SessionUtil.genKey(connectDto.getSessionId(), this.getExchCode().code(), symbol);
+        String destination = NotificationService.getStatusDestination(symbol);
+        ResponseDto responseDto;
+        if (connected) {
+            responseDto = notificationService.turnNotification(WebSocketErrorCode.SUCCESS.getMsg(), MethodEnum.SERVER_STATUS.getType());
+        } else {
+            responseDto = notificationService.turnFailNotification(WebSocketErrorCode.FAIL, MethodEnum.SERVER_STATUS);
+        }
+        notificationService.broadcast(key, destination, responseDto);
     }
 
     public abstract StreamingExchange getStreamingExchange(StreamingExchangeDto... args);
 
+    /**
+     * 上游连接key，相同key的session共享同一个上游连接，默认按交易所共享
+     * @param connectDto
+     * @return
+     */
+    public String getConnectionKey(ConnectDto connectDto) {
+        return this.getExchCode().code();
+    }
+
+    /**
+     * 频道key（频道名:参数1:参数2...）
+     * @param channel
+     * @param args
+     * @return
+     */
+    public String genStreamKey(String channel, Object... args) {
+        StringBuilder streamKey = new StringBuilder(channel);
+        for (Object arg : args) {
+            streamKey.append(":").append(arg);
+        }
+        return streamKey.toString();
+    }
+
+    /**
+     * 订阅共享频道，同一上游连接同一频道只向交易所订阅一次，session断开时释放订阅
+     * @param sessionId
+     * @param streamKey 频道key
+     * @param source 频道被观察者（首次订阅时调用）
+     * @param onNext
+     * @param onError
+     * @param <T>
+     */
+    public <T> void subscribeShared(String sessionId, String streamKey, Supplier<Observable<T>> source,
+                                    Consumer<? super T> onNext, Consumer<? super Throwable> onError) {
+        Disposable disposable = StreamingExchangePool.share(SessionUtil.getConnectionKey(sessionId), streamKey, source)
+                .subscribe(onNext, onError);
+        SessionUtil.holdSubscription(sessionId, streamKey, disposable);
+    }
+
+    /**
+     * 订阅共享盘口频道，推送到客户端所在的盘口推送频道（{@link DepthChannel}）
+     * 推送回调按 频道key+盘口推送频道 只挂一次，由该频道的所有客户端共用：上游每次更新只合并、推送一次，
+     * 不随客户端数增加；回调内的状态（如上次全量推送时间）也按频道共用
+     * @param depthSubscribe
+     * @param streamKey 频道key
+     * @param source 频道被观察者（首次订阅时调用）
+     * @param publisher 推送回调，转换后调用{@link #toSendDepth}（频道首次订阅时的回调生效，后加入的客户端复用）
+     * @param onError
+     * @param <T>
+     */
+    public <T> void subscribeDepth(DepthSubscribe depthSubscribe, String streamKey, Supplier<Observable<T>> source,
+                                   Consumer<? super T> publisher, Consumer<? super Throwable> onError) {
+        String sessionId = depthSubscribe.getSessionId();
+        String connectionKey = SessionUtil.getConnectionKey(sessionId);
+        DepthPublisher depthPublisher = ApplicationContextUtil.getBean(DepthPublisher.class);
+        String feedKey = streamKey + "@" + DepthChannel.genChannelKey(depthSubscribe.getExchangeCode().code(),
+                NotificationService.getDepthDestination(depthSubscribe), depthPublisher.resolveFlushInterval(depthSubscribe.getFlushInterval()));
+        Disposable disposable = StreamingExchangePool.share(connectionKey, feedKey,
+                () -> StreamingExchangePool.share(connectionKey, streamKey, source).doOnNext(publisher))
+                .subscribe(item -> {
+                }, onError);
+        SessionUtil.holdSubscription(sessionId, feedKey, disposable);
+    }
+
     @Override
     public Boolean disconnect(DisconnectDto disconnectDto) {
         log.info("用户断开连接，执行断开操作 入参：{} ", JSONObject.toJSONString(disconnectDto));
@@ -96,12 +250,43 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
 
         String symbol = depthSubscribe.getSymbol();//交易对名称，如：BTC/USDT
 
-        String key = SessionUtil.genKey(depthSubscribe.getSessionId(), exchCode.code(), symbol);
         String destination = NotificationService.getDepthDestination(depthSubscribe);
 
-        NotificationService notificationService = ApplicationContextUtil.getBean(NotificationService.class);
-        ResponseDto responseDto = notificationService.turnNotification(depthResponse, MethodEnum.DEPTH_UPDATE.getType());
-        notificationService.broadcast(key, destination, responseDto);
+        //同一盘口路径的客户端共用频道，合并后按推送间隔推送：首次全量，之后只推送变化的档位
+        DepthPublisher depthPublisher = ApplicationContextUtil.getBean(DepthPublisher.class);
+        DepthChannel channel = SessionUtil.getDepthChannel(exchCode.code(), destination,
+                depthPublisher.resolveFlushInterval(depthSubscribe.getFlushInterval()));
+        if (null == channel) {//客户端已断开
+            log.debug("盘口推送频道不存在 exchCode:{},symbol:{},destination:{}", exchCode, symbol, destination);
+            return;
+        }
+        depthPublisher.publish(channel, depthResponse);
+    }
+
+    /**
+     * 客户端加入盘口推送频道，订阅（含重新订阅）时调用，加入后先收到一次全量快照
+     * @param depthSubscribe
+     */
+    public void joinDepthChannel(DepthSubscribe depthSubscribe) {
+        DepthPublisher depthPublisher = ApplicationContextUtil.getBean(DepthPublisher.class);
+        String sessionId = depthSubscribe.getSessionId();
+        String exchCode = depthSubscribe.getExchangeCode().code();
+        DepthChannel channel = SessionUtil.joinDepthChannel(sessionId, exchCode, NotificationService.getDepthDestination(depthSubscribe),
+                depthPublisher.resolveFlushInterval(depthSubscribe.getFlushInterval()),
+                DepthSnapshotCache.genKey(exchCode, depthSubscribe.getSymbol(), depthSubscribe.getAlias(), depthSubscribe.getInterval()));
+        depthPublisher.schedule(channel);
+    }
+
+    /**
+     * 客户端所在的盘口推送频道是否已有盘口，是则加入时直接从频道获得快照
+     * @param depthSubscribe
+     * @return
+     */
+    private boolean isDepthChannelLive(DepthSubscribe depthSubscribe) {
+        DepthPublisher depthPublisher = ApplicationContextUtil.getBean(DepthPublisher.class);
+        DepthChannel channel = SessionUtil.getDepthChannel(depthSubscribe.getExchangeCode().code(), NotificationService.getDepthDestination(depthSubscribe),
+                depthPublisher.resolveFlushInterval(depthSubscribe.getFlushInterval()));
+        return null != channel && channel.isLive();
     }
 
     /**
@@ -142,7 +327,7 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
 
         NotificationService notificationService = ApplicationContextUtil.getBean(NotificationService.class);
         ResponseDto responseDto = notificationService.turnNotification(tradeResponseList, MethodEnum.TRADE_UPDATE.getType());
-        notificationService.broadcast(key, destination, responseDto);
+        notificationService.broadcast(Collections.singletonList(key), destination, responseDto);
         log.debug("通知客户端-市场最新成交 exit key:{}", key);
     }
 
@@ -168,12 +353,14 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
             return null;
         }
 
+        //上游成交列表为多个客户端共用的同一实例（见StreamingExchangePool#share），不能原地修改
+        List<Trade> trades = new ArrayList<>(tradeList);
         if(size>=25){
-            Collections.reverse(tradeList);
+            Collections.reverse(trades);
         }
 
         List<TradeResponse> tradeResponseList = new ArrayList<>();
-        tradeList.stream().forEach(trade ->{
+        trades.stream().forEach(trade ->{
             OrderSideEnum orderSide = null;
             if(StringUtils.equals(trade.getType().toString(), OrderTypeEnum.BID.toString())){//买
                 orderSide = OrderSideEnum.BID;
@@ -190,9 +377,9 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
         return tradeDataResponse;
     }
 
-    public boolean saveStreamingExchange(String sessionId, StreamingExchange streamingExchange){
+    public boolean saveStreamingExchange(String sessionId, String connectionKey, StreamingExchange streamingExchange){
         if (streamingExchange != null) {
-            SessionUtil.getSessions().put(sessionId, streamingExchange);
+            SessionUtil.saveSession(sessionId, connectionKey, streamingExchange);
             return true;
         }
         return false;
@@ -213,6 +400,16 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
      * @param depthSubscribe
      */
     public void toSendAllDepth(ExchangeCode exchCode, String symbol, DepthSubscribe depthSubscribe){
+        if (this.isDepthChannelLive(depthSubscribe)) {//频道已有盘口，不再查询REST，避免用旧快照覆盖频道盘口
+            return;
+        }
+        //其他频道（推送间隔、条数不同）已有同一盘口，直接使用本地快照
+        DepthResponse snapshot = ApplicationContextUtil.getBean(DepthSnapshotCache.class)
+                .get(exchCode.code(), symbol, depthSubscribe.getAlias(), depthSubscribe.getInterval(), ALL_DEPTH_SIZE);
+        if (snapshot != null) {
+            this.toSendDepth(depthSubscribe, snapshot);
+            return;
+        }
         try {
             //做全量数据查询并发送
             int orderBookRequestSize = Constant.depthDefaultLimit.get(exchCode.code());
@@ -229,7 +426,7 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
                     .getRestExchangeService(exchCode).orderBook(depthSubscribeTemp);
 
             //截串
-            int size = 21;
+            int size = ALL_DEPTH_SIZE;
             List<List<String>> asks = depthResponse.getAsks();
             int askSize = asks == null?0:asks.size();
             if(askSize>size){
@@ -259,6 +456,11 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
      * @param depthSubscribe
      */
     public DepthResponse getAllDepth(ExchangeCode exchCode,String symbol,DepthSubscribe depthSubscribe){
+        DepthResponse snapshot = ApplicationContextUtil.getBean(DepthSnapshotCache.class)
+                .get(exchCode.code(), symbol, depthSubscribe.getAlias(), depthSubscribe.getInterval(), ALL_DEPTH_SIZE);
+        if (snapshot != null) {
+            return snapshot;
+        }
         try {
             //做全量数据查询并发送
             int orderBookRequestSize = Constant.depthDefaultLimit.get(exchCode.code());
@@ -274,7 +476,7 @@ public abstract class BaseStreamingExchangeServiceImpl implements IStreamingExch
                     .getRestExchangeService(exchCode).orderBook(depthSubscribeTemp);
 
             //截串
-            int size = 21;
+            int size = ALL_DEPTH_SIZE;
             List<List<String>> asks = depthResponse.getAsks();
             int askSize = asks == null?0:asks.size();
             if(askSize>size){
@@ -9,7 +9,6 @@ import com.troy.trade.ws.model.dto.in.*;
 import com.troy.trade.ws.model.dto.out.depth.DepthResponse;
 import com.troy.trade.ws.model.dto.out.trades.TradeDataResponse;
 import com.troy.trade.ws.server.SessionUtil;
-import com.troy.trade.ws.streamingexchange.core.ProductSubscription;
 import com.troy.trade.ws.streamingexchange.core.StreamingExchange;
 import com.troy.trade.ws.streamingexchange.core.StreamingExchangeFactory;
 import lombok.extern.slf4j.Slf4j;
@@ -36,46 +35,16 @@ public class BinanceStreamingExchangeServiceImpl extends BaseStreamingExchangeSe
         return resultBo;
     }
 
-    @Override
-    public Boolean connect(ConnectDto connectDto) {
-        Boolean resultBo = false;
-        try{
-            String sessionId = connectDto.getSessionId();
-            boolean valiBo = valiSession(sessionId);
-            if(valiBo){
-                return valiBo;
-            }
-
-            String pair = connectDto.getSymbol();
-            StreamingExchangeDto streamingExchangeDto = new StreamingExchangeDto(pair, connectDto.getRobot());
-            StreamingExchange streamingExchange = this.getStreamingExchange(streamingExchangeDto);
-            return saveStreamingExchange(sessionId, streamingExchange);
-        }catch (Throwable throwable){
-            log.error("订阅 "+this.getExchCode().desc()+" ws异常，异常信息：",throwable);
-        }
-        return resultBo;
-    }
-
+    /**
+     * 币安各交易对的流按需订阅，所有session共享一组上游连接（按流数自动分连接）
+     * @param args
+     * @return
+     */
     @Override
     public StreamingExchange getStreamingExchange(StreamingExchangeDto... args) {
-        int length = args == null?0:args.length;
-        if(length<=0){
-            return null;
-        }
-
-        StreamingExchangeDto streamingExchangeDto = args[0];
-        String symbol = streamingExchangeDto.getSymbol();
-        boolean isRobot = streamingExchangeDto.isRobot();
-
         StreamingExchange binanceStreamingExchange = StreamingExchangeFactory.INSTANCE.createExchange(BinanceStreamingExchange.class
                 .getName());
-        ProductSubscription subscription = ProductSubscription.create()
-                .addOrderbook(new CurrencyPair(symbol))
-                .addTrades(new CurrencyPair(symbol))
-                .addTicker(new CurrencyPair(symbol))
-                .addRobot(isRobot)
-                .build();
-        binanceStreamingExchange.connect(subscription).blockingAwait();
+        binanceStreamingExchange.connect().blockingAwait();
         return binanceStreamingExchange;
     }
 
@@ -91,13 +60,14 @@ public class BinanceStreamingExchangeServiceImpl extends BaseStreamingExchangeSe
             String intervalOld = depthSubscribe.getInterval();//深度
 
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
             if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
 
-                streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol)).subscribe
-                        (
+                this.subscribeDepth(depthSubscribe, genStreamKey("depth", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol)),
                                 orderBook -> {
                                     List<List<String>> asksList = new ArrayList<>();
                                     List<List<String>> bidsList = new ArrayList<>();
@@ -146,7 +116,8 @@ public class BinanceStreamingExchangeServiceImpl extends BaseStreamingExchangeSe
                 }catch (Exception e){
                     log.error("调用 rest 接口查询币安最新成交信息异常，异常信息：",e);
                 }
-                streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)).subscribe(
+                this.subscribeShared(sessionId, genStreamKey("trades", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)),
                         tradeList -> {
                             this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(tradeList));
                         },
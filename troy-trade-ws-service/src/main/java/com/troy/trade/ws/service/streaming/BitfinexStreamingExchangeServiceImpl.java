@@ -45,6 +45,7 @@ public class BitfinexStreamingExchangeServiceImpl extends BaseStreamingExchangeS
 
             String intervalOld = depthSubscribeRequestBody.getParams().getInterval();
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
@@ -52,8 +53,8 @@ public class BitfinexStreamingExchangeServiceImpl extends BaseStreamingExchangeS
                 //做全量数据推送
                 toSendAllDepth(exchCode,symbol,depthSubscribe);
 
-                streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol),"100",false).subscribe
-                        (
+                this.subscribeDepth(depthSubscribe, genStreamKey("depth", symbol, "100"),
+                        () -> streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol),"100",false),
                             orderBook -> {
                                     List<List<String>> asksList = new ArrayList<>();
                                     List<List<String>> bidsList = new ArrayList<>();
@@ -103,7 +104,8 @@ public class BitfinexStreamingExchangeServiceImpl extends BaseStreamingExchangeS
                     log.error("bitfinex最新成交:调用 rest 接口查询 bitfinex 最新成交信息异常，异常信息：",e);
                 }
 
-                streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)).subscribe(
+                this.subscribeShared(sessionId, genStreamKey("trades", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)),
                         tradeList -> {
                             this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(tradeList));
                         },
@@ -1,7 +1,6 @@
 package com.troy.trade.ws.service.streaming;
 
 import com.troy.commons.exchange.model.constant.ExchangeCode;
-import com.troy.redis.RedisUtil;
 import com.troy.streamingexchange.gateio.GateioStreamingExchange;
 import com.troy.streamingexchange.gateio.GateioStreamingMarketDataServiceImpl;
 import com.troy.streamingexchange.gateio.dto.GateioAdapters;
@@ -9,7 +8,6 @@ import com.troy.streamingexchange.gateio.dto.GateioWebSocketOrderBook;
 import com.troy.trade.ws.dto.OrderBook;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
 import com.troy.trade.ws.factory.RestExchangeServiceFactory;
-import com.troy.trade.ws.model.constant.Constant;
 import com.troy.trade.ws.model.domain.StreamingExchangeDto;
 import com.troy.trade.ws.model.dto.in.DepthSubscribe;
 import com.troy.trade.ws.model.dto.in.RequestDto;
@@ -28,17 +26,19 @@ import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Component
 public class GateioStreamingExchangeServiceImpl extends BaseStreamingExchangeServiceImpl  {
 
-    @Autowired
-    RestExchangeServiceFactory restExchangeServiceFactory;
+    /**
+     * 全量盘口推送间隔（毫秒），间隔内推送增量
+     */
+    private static final long FULL_DATA_INTERVAL = 1500L;
 
     @Autowired
-    RedisUtil redisUtil;
+    RestExchangeServiceFactory restExchangeServiceFactory;
 
     @Override
     public Boolean validate(ValidateDto validateDto) {
@@ -57,37 +57,35 @@ public class GateioStreamingExchangeServiceImpl extends BaseStreamingExchangeSer
             String intervalOld = depthSubscribeRequestBody.getParams().getInterval();
 
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
             if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
-                String orderBookRedisKey = Constant.ORDERBOOK_GATEIO_FULLDATA_REDIS_KEY.replace("{sessionId}",sessionId);
-                redisUtil.set(orderBookRedisKey,System.currentTimeMillis());
-                redisUtil.expire(orderBookRedisKey,2880, TimeUnit.MINUTES);
+                //盘口推送频道上次推送全量的时间，推送回调按频道只挂一次（见subscribeDepth），频道内客户端共用
+                AtomicLong lastFullTime = new AtomicLong(System.currentTimeMillis());
 
                 //做全量数据推送
                 toSendAllDepth(exchCode,symbol,depthSubscribe,streamingExchange);
 
                 String intervalNew = DepthInterval.fromDepthIntervalCode(intervalOld).getDepth();
                 CurrencyPair currencyPairEntity = new CurrencyPair(symbol);
-                streamingExchange.getStreamingMarketDataService().getOrderBook(currencyPairEntity, new Object[]{limit, intervalNew,false}).subscribe
-                        (
+                this.subscribeDepth(depthSubscribe, genStreamKey("depth", symbol, limit, intervalNew),
+                        () -> streamingExchange.getStreamingMarketDataService().getOrderBook(currencyPairEntity, new Object[]{limit, intervalNew,false}),
                                 orderBook -> {
-                                    Long thisTime = System.currentTimeMillis();
-                                    String tempOrderBookRedisKey = Constant.ORDERBOOK_GATEIO_FULLDATA_REDIS_KEY.replace("{sessionId}",sessionId);
-                                    Long preTime = (Long) redisUtil.get(tempOrderBookRedisKey);
-                                    Long subtraction = thisTime-preTime;
+                                    long thisTime = System.currentTimeMillis();
+                                    long preTime = lastFullTime.get();
+                                    long subtraction = thisTime-preTime;
 
                                     boolean isFullData = false;
-                                    if(subtraction>=1500){
+                                    if(subtraction>=FULL_DATA_INTERVAL){
                                         isFullData = true;
-                                        log.info(" gateio 全量数据推送exchCode:{},symbol:{},sessionId:{}",exchCode,symbol,sessionId);
+                                        log.info(" gateio 全量数据推送exchCode:{},symbol:{},limit:{}",exchCode,symbol,limit);
                                         GateioStreamingMarketDataServiceImpl gateioStreamingMarketDataService = (GateioStreamingMarketDataServiceImpl)streamingExchange.getStreamingMarketDataService();
                                         GateioWebSocketOrderBook gateioWebSocketOrderBook = gateioStreamingMarketDataService.getOrderbooks().getOrDefault(currencyPairEntity, null);
                                         orderBook = GateioAdapters.adaptOrderBook(gateioWebSocketOrderBook, currencyPairEntity);
-                                        Long temp = System.currentTimeMillis();
-                                        redisUtil.set(orderBookRedisKey,temp);
-                                        redisUtil.expire(orderBookRedisKey,2880, TimeUnit.MINUTES);
+                                        long temp = System.currentTimeMillis();
+                                        lastFullTime.set(temp);
                                         log.info(" gateio 全量数据推送数据准备完毕 time由{}改为{}",preTime,temp);
                                         log.info(" gateio 全量数据 isFullData为{}",isFullData);
                                     }else{
@@ -140,7 +138,8 @@ public class GateioStreamingExchangeServiceImpl extends BaseStreamingExchangeSer
                     log.error("调用 rest 接口查询 gateio 最新成交信息异常，异常信息：",e);
                 }
 
-                streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)).subscribe(
+                this.subscribeShared(sessionId, genStreamKey("trades", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)),
                         tradeList -> {
                             this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(tradeList));
                         },
@@ -176,7 +175,6 @@ public class GateioStreamingExchangeServiceImpl extends BaseStreamingExchangeSer
                                DepthSubscribe depthSubscribe, StreamingExchange streamingExchange){
         String sessionId = depthSubscribe.getSessionId();
         CurrencyPair currencyPairEntity = new CurrencyPair(symbol);
-        log.info(" gateio 全量数据推送exchCode:{},symbol:{},sessionId:{}",exchCode,symbol,sessionId);
         GateioStreamingMarketDataServiceImpl gateioStreamingMarketDataService = (GateioStreamingMarketDataServiceImpl)streamingExchange.getStreamingMarketDataService();
 
         Map<CurrencyPair, GateioWebSocketOrderBook> orderBookMap = gateioStreamingMarketDataService.getOrderbooks();
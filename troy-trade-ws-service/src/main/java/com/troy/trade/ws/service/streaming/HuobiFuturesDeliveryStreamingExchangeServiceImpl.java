@@ -54,14 +54,15 @@ public class HuobiFuturesDeliveryStreamingExchangeServiceImpl extends BaseStream
             AliasEnum aliasEnum = EnumUtils.getEnumByCode(alias,AliasEnum.class);
             String intervalOld = depthSubscribeRequestBody.getParams().getInterval();
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
             if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
 //                String intervalNew = DepthInterval.fromDepthIntervalCode(intervalOld).getCode();
                 if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
-                    streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol), aliasEnum).subscribe
-                            (
+                    this.subscribeDepth(depthSubscribe, genStreamKey("depth", symbol, alias),
+                            () -> streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol), aliasEnum),
                                     orderBook -> {
                                         List<List<String>> asksList = new ArrayList<>();
                                         List<List<String>> bidsList = new ArrayList<>();
@@ -113,7 +114,8 @@ public class HuobiFuturesDeliveryStreamingExchangeServiceImpl extends BaseStream
                     log.error("调用 rest 接口查询 Okex 最新成交信息异常，异常信息：",e);
                 }
 
-                streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol),aliasEnum).subscribe(
+                this.subscribeShared(sessionId, genStreamKey("trades", symbol, alias),
+                        () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol),aliasEnum),
                         tradeList -> {
                             this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(tradeList));
                         },
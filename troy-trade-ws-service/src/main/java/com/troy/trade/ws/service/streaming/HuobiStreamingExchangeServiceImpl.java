@@ -3,6 +3,7 @@ package com.troy.trade.ws.service.streaming;
 import com.alibaba.fastjson.JSONObject;
 import com.troy.commons.exchange.model.constant.ExchangeCode;
 import com.troy.streamingexchange.huobi.HuobiProStreamingExchange;
+import com.troy.trade.ws.dto.Trade;
 import com.troy.trade.ws.dto.currency.CurrencyPair;
 import com.troy.trade.ws.factory.RestExchangeServiceFactory;
 import com.troy.trade.ws.model.domain.StreamingExchangeDto;
@@ -46,15 +47,18 @@ public class HuobiStreamingExchangeServiceImpl extends BaseStreamingExchangeServ
 
             String intervalOld = depthSubscribeRequestBody.getParams().getInterval();
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
             if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
 
+                //火币的step1~step5按各交易对的价格精度聚合（精度*10、*100...），与DepthInterval的固定价格档位不同，
+                //因此只有step0由本地盘口提供，step1~step5仍订阅交易所聚合后的depth.stepN
                 String intervalNew = DepthInterval.fromDepthIntervalCode(intervalOld).getCode();
                 if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
-                    streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol), intervalNew).subscribe
-                            (
+                    this.subscribeDepth(depthSubscribe, genStreamKey("depth", symbol, intervalNew),
+                            () -> streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol), intervalNew),
                                     orderBook -> {
 
                                         List<List<String>> asksList = new ArrayList<>();
@@ -98,7 +102,9 @@ public class HuobiStreamingExchangeServiceImpl extends BaseStreamingExchangeServ
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
             if (streamingExchange != null && streamingExchange.getStreamingMarketDataService() != null) {
 
-                streamingExchange.getStreamingMarketDataService().getTradesOnce(new CurrencyPair(symbol)).subscribe(firstTradeList ->
+                this.subscribeShared(sessionId, genStreamKey("tradesOnce", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getTradesOnce(new CurrencyPair(symbol)).take(1),
+                        firstTradeList ->
                 {
                     this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(firstTradeList));
                     log.info("火币 最新成交首次推送成功 exchCode:{},symbol:{},数据列表:{}", exchCode, symbol, JSONObject.toJSONString(firstTradeList));
@@ -112,8 +118,11 @@ public class HuobiStreamingExchangeServiceImpl extends BaseStreamingExchangeServ
                         firstInfoList.add("-123");
                     }
 
-                    streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)).subscribe(
-                            tradeList -> {
+                    this.subscribeShared(sessionId, genStreamKey("trades", symbol),
+                            () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)),
+                            sharedTradeList -> {
+                                //共用的成交列表复制后再去掉首次推送过的成交，不影响其他客户端
+                                List<Trade> tradeList = sharedTradeList == null ? null : new ArrayList<>(sharedTradeList);
                                 if(null != firstInfoList
                                         && firstInfoList.size()>0
                                         && (Boolean)firstInfoList.get(0)){
@@ -56,6 +56,7 @@ public class OkexFuturesDeliveryStreamingExchangeServiceImpl extends BaseStreami
 
             String intervalOld = depthSubscribeRequestBody.getParams().getInterval();
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
@@ -82,8 +83,8 @@ public class OkexFuturesDeliveryStreamingExchangeServiceImpl extends BaseStreami
                 String result = (String)object;
                 ContractInfoResDto contractInfoResDto = JSONObject.parseObject(result, ContractInfoResDto.class);
                 String instrumentId = contractInfoResDto.getInstrumentId();
-                streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol),false,instrumentId).subscribe
-                        (
+                this.subscribeDepth(depthSubscribe, genStreamKey("depth", instrumentId),
+                        () -> streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol),false,instrumentId),
                                 orderBook -> {
                                     boolean isFullData = false;
                                     List<List<String>> tempAsksList = new ArrayList<>();
@@ -154,7 +155,8 @@ public class OkexFuturesDeliveryStreamingExchangeServiceImpl extends BaseStreami
                 String result = (String)object;
                 ContractInfoResDto contractInfoResDto = JSONObject.parseObject(result, ContractInfoResDto.class);
                 String instrumentId = contractInfoResDto.getInstrumentId();
-                streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol),instrumentId).subscribe(
+                this.subscribeShared(sessionId, genStreamKey("trades", instrumentId),
+                        () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol),instrumentId),
                         tradeList -> {
                             this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(tradeList));
                         },
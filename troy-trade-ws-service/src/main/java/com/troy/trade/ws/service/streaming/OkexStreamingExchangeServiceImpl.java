@@ -44,6 +44,7 @@ public class OkexStreamingExchangeServiceImpl extends BaseStreamingExchangeServi
 
             String intervalOld = depthSubscribeRequestBody.getParams().getInterval();
             String sessionId = depthSubscribe.getSessionId();
+            this.joinDepthChannel(depthSubscribe);
 
             StreamingExchange streamingExchange = SessionUtil.getStreamingExchange(sessionId);
 
@@ -53,8 +54,8 @@ public class OkexStreamingExchangeServiceImpl extends BaseStreamingExchangeServi
 
 //                final Long[] startTime = {System.currentTimeMillis()};//现在时间毫秒
 //                log.debug("okex 行情全量刷新，startTime初始为"+startTime[0]);
-                streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol),false).subscribe
-                        (
+                this.subscribeDepth(depthSubscribe, genStreamKey("depth", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getOrderBook(new CurrencyPair(symbol),false),
                                 orderBook -> {
 //                                    Long thisTime = System.currentTimeMillis();//现在时间毫秒
 //                                    Long sur = (thisTime - startTime[0]);
@@ -119,7 +120,8 @@ public class OkexStreamingExchangeServiceImpl extends BaseStreamingExchangeServi
                     log.error("调用 rest 接口查询 Okex 最新成交信息异常，异常信息：",e);
                 }
 
-                streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)).subscribe(
+                this.subscribeShared(sessionId, genStreamKey("trades", symbol),
+                        () -> streamingExchange.getStreamingMarketDataService().getTrades(new CurrencyPair(symbol)),
                         tradeList -> {
                             this.toSendTrades(tradeSubscribe,turnTradeToTradeDataResponse(tradeList));
                         },
@@ -15,14 +15,12 @@ import com.troy.trade.futures.api.model.dto.out.account.FuturesAccountInfoResDto
 import com.troy.trade.futures.api.model.dto.out.account.FuturesBalanceResDto;
 import com.troy.trade.ws.feign.FuturesAccountClient;
 import com.troy.trade.ws.model.dto.in.BalancePushReqDto;
+import com.troy.trade.ws.server.AccountSubscriptionRegistry;
 import com.troy.trade.ws.server.SessionUtil;
 import com.troy.trade.ws.util.BalancePushUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Date;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * 交易所交易对信息同步
@@ -76,9 +74,9 @@ public class FuturesBalancePushSyncExecute extends Action {
             /**
              * 2、做数据验证，验证当前用户是否订阅
              */
-            ConcurrentMap<String, Map<String,Set<String>>> accountSessionsMap = SessionUtil.getAccountSessionsMap(true);
-            log.info("订阅用户余额信息变动推送，做余额变动推送，accountSessionsMap={}",accountSessionsMap);
-            if(!accountSessionsMap.containsKey(accountIdStr)){//当前用户未订阅
+            AccountSubscriptionRegistry accountSubscriptions = SessionUtil.getAccountSubscriptions(true);
+            log.info("订阅用户余额信息变动推送，做余额变动推送，accountSessionsMap={}",accountSubscriptions);
+            if(!accountSubscriptions.containsAccount(accountIdStr)){//当前用户未订阅
                 log.warn("订阅用户余额信息变动推送，当前用户未订阅，不做余额变动推送，accountId={},symbol={},alias={}",accountId,symbol,alias);
                 return;
             }
@@ -13,11 +13,43 @@ public class PushThreadPool {
         return t;
     }, new ThreadPoolExecutor.CallerRunsPolicy());
 
+    /**
+     * 上游交易所连接建立的最大线程数
+     */
+    private static final int UPSTREAM_CONNECT_THREADS = 30;
+
+    /**
+     * 上游交易所连接建立，避免STOMP CONNECT阻塞clientInboundChannel线程
+     * 核心线程数即最大线程数（空闲回收），排队数按线程数限定；全部占满时拒绝，由调用方推送连接失败，
+     * 不在clientInboundChannel线程上执行阻塞的连接建立
+     */
+    private static final ThreadPoolExecutor EXECUTOR_UPSTREAM_CONNECT = new ThreadPoolExecutor(UPSTREAM_CONNECT_THREADS, UPSTREAM_CONNECT_THREADS, 10L,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(UPSTREAM_CONNECT_THREADS * 4), r -> {
+        Thread t = new Thread(r, "upstream-connect");
+        t.setDaemon(true);
+        return t;
+    }, new ThreadPoolExecutor.AbortPolicy());
+
     static {
         EXECUTOR_FUTURES_BALANCE_SYNC.prestartAllCoreThreads();
+        EXECUTOR_UPSTREAM_CONNECT.allowCoreThreadTimeOut(true);
     }
 
     public static void executeFuturesBalanceSync(FuturesBalancePushSyncExecute futuresBalancePushSyncExecute) throws Throwable {
         EXECUTOR_FUTURES_BALANCE_SYNC.submit(futuresBalancePushSyncExecute);
     }
+
+    /**
+     * 提交上游连接建立
+     * @param upstreamConnect
+     * @return false-线程、队列已满，未提交
+     */
+    public static boolean executeUpstreamConnect(Runnable upstreamConnect) {
+        try {
+            EXECUTOR_UPSTREAM_CONNECT.execute(upstreamConnect);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
 }